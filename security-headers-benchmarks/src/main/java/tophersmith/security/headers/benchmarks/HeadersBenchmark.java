@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.benchmarks;
+
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tophersmith.security.headers.CompiledSecurityHeaders;
+import tophersmith.security.headers.SecurityHeaders;
+
+/**
+ * Measures rendering every header of a SecurityHeaders per response, 
+ * against handing out a compiled snapshot with the nonce spliced in.
+ *
+ * @author Chris Smith
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeadersBenchmark {
+
+	@Param({ Policies.SMALL, Policies.TYPICAL, Policies.PATHOLOGICAL })
+	public String size;
+
+	private SecurityHeaders headers;
+	private CompiledSecurityHeaders compiled;
+
+	@Setup
+	public void setUp() {
+		this.headers = Policies.headers(this.size);
+		this.compiled = this.headers.compile();
+	}
+
+	@Benchmark
+	public List<Entry<String, String>> buildHeaders() {
+		return this.headers.buildHeaders();
+	}
+
+	@Benchmark
+	public List<String> buildHeaderLines() {
+		return this.headers.buildHeaderLines();
+	}
+
+	@Benchmark
+	public List<Entry<String, String>> compiledHeaders() {
+		return this.compiled.getHeaders(Policies.NONCE);
+	}
+
+	@Benchmark
+	public List<String> compiledHeaderLines() {
+		return this.compiled.getHeaderLines(Policies.NONCE);
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tophersmith.security.headers.csp.directives.AbstractUnsafeDirective;
+import tophersmith.security.headers.util.NoncePool;
+import tophersmith.security.headers.util.SecureRandomConfiguration;
+import tophersmith.security.headers.util.SecureRandomUtil;
+
+/**
+ * Measures generating nonces from one and from every available thread, with
+ * a shared or striped SecureRandom, against taking them from a NoncePool. 
+ * Pass e.g. -t 8 to run every benchmark with another thread count.
+ *
+ * @author Chris Smith
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NonceBenchmark {
+
+	private static final int NONCE_SIZE = 16;
+
+	@Param({ "SHARED", "STRIPED" })
+	public SecureRandomConfiguration.Mode mode;
+
+	private NoncePool pool;
+
+	@Setup
+	public void setUp() {
+		SecureRandomUtil.configure(new SecureRandomConfiguration().setMode(this.mode));
+		this.pool = new NoncePool(NONCE_SIZE, 4096);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.pool.shutdown();
+		SecureRandomUtil.configure(new SecureRandomConfiguration());
+	}
+
+	@Benchmark
+	@Threads(1)
+	public String generateNonce() {
+		return AbstractUnsafeDirective.generateNonce(NONCE_SIZE);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public String generateNonceContended() {
+		return AbstractUnsafeDirective.generateNonce(NONCE_SIZE);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public String noncePool() {
+		return this.pool.nextNonce();
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public String noncePoolContended() {
+		return this.pool.nextNonce();
+	}
+}
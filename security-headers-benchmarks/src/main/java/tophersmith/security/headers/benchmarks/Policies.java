@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.benchmarks;
+
+import tophersmith.security.headers.SecurityHeaders;
+import tophersmith.security.headers.csp.CSPHeaderName;
+import tophersmith.security.headers.csp.ContentSecurityPolicy;
+import tophersmith.security.headers.csp.directives.impl.ConnectSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.DefaultSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.FontSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.FrameAncestorsDirective;
+import tophersmith.security.headers.csp.directives.impl.ImgSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.ObjectSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.ScriptSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.StyleSrcDirective;
+import tophersmith.security.headers.impl.ContentSecurityPolicyHeader;
+import tophersmith.security.headers.impl.StrictTransportSecurityHeader;
+import tophersmith.security.headers.impl.XContentTypeOptionsHeader;
+import tophersmith.security.headers.impl.XFrameOptionsHeader;
+import tophersmith.security.headers.impl.XXSSProtectionHeader;
+
+/**
+ * Policies builds the policies the benchmarks run against. Each benchmark 
+ * takes a size parameter with one of these values:
+ * <ul>
+ * <li>small: a single default-src 'self'</li>
+ * <li>typical: the fetch directives of a site using a CDN, analytics and a 
+ * script nonce, about 30 sources</li>
+ * <li>pathological: a script-src with thousands of hosts, each added twice
+ * and most covered by a wildcard host</li>
+ * </ul>
+ *
+ * @author Chris Smith
+ *
+ */
+final class Policies {
+
+	static final String SMALL = "small";
+	static final String TYPICAL = "typical";
+	static final String PATHOLOGICAL = "pathological";
+
+	static final String NONCE = "AbCdEfGh0123456789+/AbCd";
+
+	private static final int PATHOLOGICAL_HOSTS = 5000;
+
+	private Policies() {
+	}
+
+	/**
+	 * @param size small, typical or pathological
+	 * @return a new policy of the given size
+	 */
+	static ContentSecurityPolicy create(String size) {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy();
+		if (SMALL.equals(size)) {
+			policy.addDirective(new DefaultSrcDirective().addSelf());
+		} else if (TYPICAL.equals(size)) {
+			policy.addDirective(new DefaultSrcDirective().addSelf());
+			policy.addDirective(new ScriptSrcDirective().addSelf().addNonce(NONCE)
+					.addSource("https://cdn.example.com").addSource("https://www.google-analytics.com")
+					.addSource("https://www.googletagmanager.com").addSource("https://*.example-cdn.net")
+					.addHash("sha256", "qznLcsROx4GACP2dm0UCKCzCG+HiZ1guq6ZZDob/Tng="));
+			policy.addDirective(new StyleSrcDirective().addSelf().addNonce(NONCE)
+					.addSource("https://cdn.example.com").addSource("https://fonts.googleapis.com"));
+			policy.addDirective(new ImgSrcDirective().addSelf().addSource("data:")
+					.addSource("https://cdn.example.com").addSource("https://*.google-analytics.com")
+					.addSource("https://*.googletagmanager.com").addSource("https://images.example.com:8443"));
+			policy.addDirective(new FontSrcDirective().addSelf().addSource("https://fonts.gstatic.com")
+					.addSource("https://cdn.example.com"));
+			policy.addDirective(new ConnectSrcDirective().addSelf().addSource("https://api.example.com")
+					.addSource("wss://push.example.com").addSource("https://*.google-analytics.com")
+					.addSource("https://*.analytics.google.com"));
+			policy.addDirective(new ObjectSrcDirective().addNone());
+			policy.addDirective(new FrameAncestorsDirective().addSelf().addSource("https://partner.example.org"));
+		} else if (PATHOLOGICAL.equals(size)) {
+			policy.addDirective(new DefaultSrcDirective().addSelf());
+			ScriptSrcDirective script = new ScriptSrcDirective().addSelf().addNonce(NONCE);
+			for (int pass = 0; pass < 2; pass++) {
+				script.addSource("https://*.example.com");
+				for (int i = 0; i < PATHOLOGICAL_HOSTS / 2; i++) {
+					script.addSource("https://host" + i + ".example.com");
+					script.addSource("https://host" + i + ".example" + (i % 50) + ".org:8443/assets/");
+				}
+			}
+			policy.addDirective(script);
+		} else {
+			throw new IllegalArgumentException("Unknown policy size: " + size);
+		}
+		return policy;
+	}
+
+	/**
+	 * @param size small, typical or pathological
+	 * @return new headers holding a policy of the given size and the other
+	 * common security headers
+	 */
+	static SecurityHeaders headers(String size) {
+		return new SecurityHeaders()
+				.addHeader(new StrictTransportSecurityHeader().setMaxAge("31536000").enableIncludeSubDomains())
+				.addHeader(new XFrameOptionsHeader().setDeny())
+				.addHeader(new XXSSProtectionHeader().enableProtection().enableBlock())
+				.addHeader(new XContentTypeOptionsHeader())
+				.addHeader(new ContentSecurityPolicyHeader(CSPHeaderName.CSP).setPolicy(create(size)));
+	}
+}
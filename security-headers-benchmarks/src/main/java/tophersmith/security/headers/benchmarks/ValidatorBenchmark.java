@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import tophersmith.security.headers.util.Validator;
+
+/**
+ * Measures classifying a mix of valid and invalid host sources, with and 
+ * without the shared source cache.
+ *
+ * @author Chris Smith
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidatorBenchmark {
+
+	private static final String[] SOURCES = {
+			"example.com",
+			"https://cdn.example.com",
+			"https://*.example.com:443",
+			"http://images.example.com:8080/assets/",
+			"wss://push.example.com/socket",
+			"https://[::1]",
+			"https://exa mple.com",
+			"https://example.com:port",
+			"'self'",
+			"https:",
+	};
+
+	@Param({ "false", "true" })
+	public boolean cached;
+
+	@Setup
+	public void setUp() {
+		if (this.cached) {
+			Validator.enableSourceCache(1024);
+		} else {
+			Validator.disableSourceCache();
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		Validator.disableSourceCache();
+	}
+
+	@Benchmark
+	public void isValidHostSource(Blackhole blackhole) {
+		for (int i = 0; i < SOURCES.length; i++) {
+			blackhole.consume(Validator.isValidHostSource(SOURCES[i]));
+		}
+	}
+}
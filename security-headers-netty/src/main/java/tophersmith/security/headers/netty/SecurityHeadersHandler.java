@@ -0,0 +1,260 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.netty;
+
+import java.util.List;
+import java.util.Locale;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpStatusClass;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.util.AsciiString;
+
+import tophersmith.security.headers.CompiledSecurityHeaders;
+import tophersmith.security.headers.SecurityHeaders;
+import tophersmith.security.headers.csp.CSPNonceTemplate;
+import tophersmith.security.headers.csp.directives.AbstractUnsafeDirective;
+import tophersmith.security.headers.util.NoncePool;
+
+/**
+ * A SecurityHeadersHandler sets a {@link SecurityHeaders} on every response
+ * written through it: an HTTP/1.x {@link HttpResponse}, or the 
+ * {@link Http2HeadersFrame} that starts an HTTP/2 response when using the 
+ * HTTP/2 frame codec. Informational (1xx) responses and trailers are left 
+ * alone.
+ * <br><br>
+ * Header names and static values are built once, as lower case 
+ * {@link AsciiString}s, so stamping a response never converts a String. If 
+ * the Content-Security-Policy holds nonces, only the nonce is spliced into 
+ * the pre-encoded policy bytes, once per response. A page that renders 
+ * nonces takes one from {@link #nextNonce()} and sets it on its own response 
+ * with {@link #setHeaders(HttpResponse, String)} or 
+ * {@link #setHeaders(Http2Headers, String)}; those headers are kept when the
+ * response is written. Any other response gets a fresh nonce.
+ * <br><br>
+ * The nonce travels on the response itself, so responses may be pipelined 
+ * on an HTTP/1.1 connection, and HTTP/2 streams may share one channel as 
+ * they do with the frame codec alone. The handler keeps no per-channel 
+ * state, so one instance can be shared by every pipeline.
+ * <br><br>
+ * Example:<br>
+ * <code>
+ * SecurityHeadersHandler headers = new SecurityHeadersHandler(makeSecurityHeaders());<br>
+ * pipeline.addLast(new HttpServerCodec(), headers, new MyPageHandler(headers));<br>
+ * <br>
+ * // in MyPageHandler<br>
+ * String nonce = headers.nextNonce();<br>
+ * FullHttpResponse response = render(request, nonce);<br>
+ * headers.setHeaders(response, nonce);<br>
+ * ctx.writeAndFlush(response);
+ * </code>
+ *
+ * @author Chris Smith
+ *
+ */
+@Sharable
+public class SecurityHeadersHandler extends ChannelOutboundHandlerAdapter {
+
+	// 128 bits, as recommended for CSP nonces
+	private static final int NONCE_SIZE = 16;
+
+	private final AsciiString[] names;
+	private final AsciiString[] values; // null where a nonce is spliced in
+	private final byte[][][] segments; // the policy bytes around each nonce slot, or null
+	private final boolean requiresNonce;
+	private final int nonceIndex; // the first header with nonce slots, or -1
+	private final NoncePool pool;
+
+	/**
+	 * Construct a handler that applies the given headers. They are compiled 
+	 * now; later changes to them are not applied.
+	 * @param securityHeaders the headers to apply
+	 */
+	public SecurityHeadersHandler(SecurityHeaders securityHeaders) {
+		this(securityHeaders.compile(), null);
+	}
+
+	/**
+	 * Construct a handler that applies a compiled snapshot
+	 * @param compiled the headers to apply
+	 */
+	public SecurityHeadersHandler(CompiledSecurityHeaders compiled) {
+		this(compiled, null);
+	}
+
+	/**
+	 * Construct a handler that applies a compiled snapshot, taking nonces 
+	 * from a pool
+	 * @param compiled the headers to apply
+	 * @param pool the pool to take nonces from, or null to generate each 
+	 * nonce when it is needed
+	 */
+	public SecurityHeadersHandler(CompiledSecurityHeaders compiled, NoncePool pool) {
+		if (compiled == null) {
+			throw new IllegalArgumentException("compiled headers must be set");
+		}
+		int size = compiled.size();
+		this.names = new AsciiString[size];
+		this.values = new AsciiString[size];
+		this.segments = new byte[size][][];
+		int first = -1;
+		for (int i = 0; i < size; i++) {
+			// HTTP/2 requires lower case names, and HTTP/1.x accepts them
+			this.names[i] = AsciiString.cached(compiled.getHeaderName(i).toLowerCase(Locale.ENGLISH));
+			CSPNonceTemplate template = compiled.getNonceTemplate(i);
+			if (template == null) {
+				this.values[i] = AsciiString.cached(compiled.getHeaderValue(i));
+			} else {
+				if (first < 0) {
+					first = i;
+				}
+				List<String> parts = template.getSegments();
+				this.segments[i] = new byte[parts.size()][];
+				for (int j = 0; j < parts.size(); j++) {
+					this.segments[i][j] = new AsciiString(parts.get(j)).toByteArray();
+				}
+			}
+		}
+		this.requiresNonce = compiled.requiresNonce();
+		this.nonceIndex = first;
+		this.pool = pool;
+	}
+
+	/**
+	 * Generate a nonce for a page to put on its script and style tags and 
+	 * then pass to {@link #setHeaders(HttpResponse, String)}
+	 * @return the nonce
+	 */
+	public String nextNonce() {
+		return this.pool != null ? this.pool.nextNonce() : AbstractUnsafeDirective.generateNonce(NONCE_SIZE);
+	}
+
+	/**
+	 * Set every header on a response now, with the nonce its page was 
+	 * rendered with. The headers are kept when the response is written 
+	 * through this handler.
+	 * @param response the response
+	 * @param nonce the nonce from {@link #nextNonce()}, ignored if no header
+	 * needs one
+	 * @throws IllegalArgumentException if a nonce is required but is not base64
+	 */
+	public void setHeaders(HttpResponse response, String nonce) {
+		setHeaders(response.headers(), nonce, false);
+	}
+
+	/**
+	 * Set every header on the headers that start an HTTP/2 response now, 
+	 * with the nonce its page was rendered with. The headers are kept when
+	 * the frame is written through this handler.
+	 * @param headers the response headers
+	 * @param nonce the nonce from {@link #nextNonce()}, ignored if no header
+	 * needs one
+	 * @throws IllegalArgumentException if a nonce is required but is not base64
+	 */
+	public void setHeaders(Http2Headers headers, String nonce) {
+		setHeaders(headers, nonce, false);
+	}
+
+	/**
+	 * @return true if every response needs a fresh nonce
+	 */
+	public boolean requiresNonce() {
+		return this.requiresNonce;
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		if (msg instanceof HttpResponse) {
+			HttpResponse response = (HttpResponse) msg;
+			if (response.status().codeClass() != HttpStatusClass.INFORMATIONAL) {
+				setHeaders(response.headers(), null, true);
+			}
+		} else if (msg instanceof Http2HeadersFrame) {
+			Http2Headers headers = ((Http2HeadersFrame) msg).headers();
+			// trailers carry no status
+			CharSequence status = headers.status();
+			if (status != null && (status.length() == 0 || status.charAt(0) != '1')) {
+				setHeaders(headers, null, true);
+			}
+		}
+		ctx.write(msg, promise);
+	}
+
+	/**
+	 * set every header, keeping the nonce headers a page already set
+	 */
+	private void setHeaders(HttpHeaders headers, String nonce, boolean keepNonce) {
+		boolean kept = keepNonce && this.nonceIndex >= 0 && headers.contains(this.names[this.nonceIndex]);
+		if (keepNonce && !kept && this.requiresNonce) {
+			nonce = nextNonce();
+		}
+		for (int i = 0; i < this.names.length; i++) {
+			if (!kept || this.segments[i] == null) {
+				headers.set(this.names[i], value(i, nonce));
+			}
+		}
+	}
+
+	/**
+	 * set every header, keeping the nonce headers a page already set
+	 */
+	private void setHeaders(Http2Headers headers, String nonce, boolean keepNonce) {
+		boolean kept = keepNonce && this.nonceIndex >= 0 && headers.contains(this.names[this.nonceIndex]);
+		if (keepNonce && !kept && this.requiresNonce) {
+			nonce = nextNonce();
+		}
+		for (int i = 0; i < this.names.length; i++) {
+			if (!kept || this.segments[i] == null) {
+				headers.set(this.names[i], value(i, nonce));
+			}
+		}
+	}
+
+	/**
+	 * @return the static value of a header, or its policy bytes with the 
+	 * nonce spliced into each slot
+	 */
+	private AsciiString value(int index, String nonce) {
+		byte[][] parts = this.segments[index];
+		if (parts == null) {
+			return this.values[index];
+		}
+		int nonceLength = CSPNonceTemplate.checkNonce(nonce);
+		int length = (parts.length - 1) * nonceLength;
+		for (int i = 0; i < parts.length; i++) {
+			length += parts[i].length;
+		}
+		byte[] value = new byte[length];
+		int pos = 0;
+		for (int i = 0; i < parts.length; i++) {
+			if (i > 0) {
+				// checkNonce only lets base64 through, so each char is one byte
+				for (int j = 0; j < nonceLength; j++) {
+					value[pos++] = (byte) nonce.charAt(j);
+				}
+			}
+			System.arraycopy(parts[i], 0, value, pos, parts[i].length);
+			pos += parts[i].length;
+		}
+		return new AsciiString(value, false);
+	}
+}
@@ -0,0 +1,150 @@
+package tophersmith.security.headers.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+
+import org.junit.Test;
+
+import tophersmith.security.headers.CompiledSecurityHeaders;
+import tophersmith.security.headers.SecurityHeaders;
+import tophersmith.security.headers.csp.CSPHeaderName;
+import tophersmith.security.headers.csp.ContentSecurityPolicy;
+import tophersmith.security.headers.csp.directives.impl.ScriptSrcDirective;
+import tophersmith.security.headers.impl.ContentSecurityPolicyHeader;
+import tophersmith.security.headers.impl.XFrameOptionsHeader;
+import tophersmith.security.headers.util.NoncePool;
+
+public class SecurityHeadersHandlerTest {
+
+	@Test
+	public void testStaticHeaders() {
+		SecurityHeadersHandler handler = new SecurityHeadersHandler(staticHeaders());
+		assertTrue(!handler.requiresNonce());
+		EmbeddedChannel channel = new EmbeddedChannel(handler);
+		channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+		FullHttpResponse response = channel.readOutbound();
+		assertEquals("DENY", response.headers().get("X-Frame-Options"));
+		response.release();
+		channel.finish();
+	}
+
+	@Test
+	public void testNonceFromPage() {
+		SecurityHeadersHandler handler = new SecurityHeadersHandler(nonceHeaders().compile(), new NoncePool(12, 4));
+		EmbeddedChannel channel = new EmbeddedChannel(handler);
+		String nonce = handler.nextNonce();
+		HttpResponse page = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+		handler.setHeaders(page, nonce);
+		channel.writeOutbound(page);
+		HttpResponse response = channel.readOutbound();
+		assertEquals("DENY", response.headers().get("X-Frame-Options"));
+		assertEquals("script-src 'self' 'nonce-" + nonce + "'", response.headers().get("content-security-policy"));
+
+		// the next response on the connection does not reuse the nonce
+		channel.writeOutbound(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+		HttpResponse next = channel.readOutbound();
+		String policy = next.headers().get("content-security-policy");
+		assertTrue(policy.startsWith("script-src 'self' 'nonce-"));
+		assertTrue(!policy.contains(nonce));
+		channel.finish();
+
+		try {
+			handler.setHeaders(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK), "bad nonce");
+			fail("the nonce must be base64");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testPipelinedResponses() {
+		SecurityHeadersHandler handler = new SecurityHeadersHandler(nonceHeaders());
+		EmbeddedChannel channel = new EmbeddedChannel(handler);
+		// both pages are rendered before either response is written
+		String first = handler.nextNonce();
+		String second = handler.nextNonce();
+		HttpResponse firstPage = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+		HttpResponse secondPage = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+		handler.setHeaders(secondPage, second);
+		handler.setHeaders(firstPage, first);
+		channel.writeOutbound(firstPage, secondPage);
+		HttpResponse response = channel.readOutbound();
+		assertEquals("script-src 'self' 'nonce-" + first + "'", response.headers().get("content-security-policy"));
+		response = channel.readOutbound();
+		assertEquals("script-src 'self' 'nonce-" + second + "'", response.headers().get("content-security-policy"));
+		channel.finish();
+	}
+
+	@Test
+	public void testInformationalResponse() {
+		EmbeddedChannel channel = new EmbeddedChannel(new SecurityHeadersHandler(staticHeaders()));
+		channel.writeOutbound(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE));
+		HttpResponse response = channel.readOutbound();
+		assertTrue(response.headers().isEmpty());
+		channel.finish();
+	}
+
+	@Test
+	public void testHttp2Frames() {
+		SecurityHeadersHandler handler = new SecurityHeadersHandler(nonceHeaders());
+		EmbeddedChannel channel = new EmbeddedChannel(handler);
+		// with the frame codec alone every stream shares this channel
+		String nonce = handler.nextNonce();
+		Http2Headers page = new DefaultHttp2Headers().status("200");
+		handler.setHeaders(page, nonce);
+		channel.writeOutbound(new DefaultHttp2HeadersFrame(new DefaultHttp2Headers().status("200")), 
+				new DefaultHttp2HeadersFrame(page));
+		Http2HeadersFrame other = channel.readOutbound();
+		assertTrue(!other.headers().get("content-security-policy").toString().contains(nonce));
+		Http2HeadersFrame frame = channel.readOutbound();
+		assertEquals("DENY", frame.headers().get("x-frame-options").toString());
+		assertEquals("script-src 'self' 'nonce-" + nonce + "'", frame.headers().get("content-security-policy").toString());
+
+		channel.writeOutbound(new DefaultHttp2HeadersFrame(new DefaultHttp2Headers().add("grpc-status", "0"), true));
+		Http2HeadersFrame trailers = channel.readOutbound();
+		assertNull(trailers.headers().get("x-frame-options"));
+
+		channel.writeOutbound(new DefaultHttp2HeadersFrame(new DefaultHttp2Headers().status("103")));
+		Http2HeadersFrame early = channel.readOutbound();
+		assertNull(early.headers().get("x-frame-options"));
+		channel.finish();
+	}
+
+	@Test
+	public void testOtherMessages() {
+		EmbeddedChannel channel = new EmbeddedChannel(new SecurityHeadersHandler(staticHeaders()));
+		channel.writeOutbound("not a response");
+		assertEquals("not a response", channel.readOutbound());
+		channel.finish();
+		try {
+			new SecurityHeadersHandler((CompiledSecurityHeaders) null);
+			fail("compiled headers are required");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static SecurityHeaders staticHeaders() {
+		return new SecurityHeaders().addHeader(new XFrameOptionsHeader().setDeny());
+	}
+
+	private static SecurityHeaders nonceHeaders() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy();
+		policy.addDirective(new ScriptSrcDirective().addSelf().addNonce("cGxhY2Vob2xkZXI="));
+		return staticHeaders().addHeader(new ContentSecurityPolicyHeader(CSPHeaderName.CSP).setPolicy(policy));
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.servlet;
+
+import java.util.List;
+import java.util.Map.Entry;
+
+import tophersmith.security.headers.CompiledSecurityHeaders;
+import tophersmith.security.headers.csp.directives.AbstractUnsafeDirective;
+import tophersmith.security.headers.util.NoncePool;
+
+/**
+ * FilterHeaders holds the work a security headers filter does once, at 
+ * init, for both the javax and jakarta servlet APIs: the compiled headers, 
+ * the init parameters, and the nonce source, which is only created when the
+ * policy needs a nonce.
+ *
+ * @author Chris Smith
+ *
+ */
+final class FilterHeaders {
+
+	static final String DEFAULT_NONCE_ATTRIBUTE = "tophersmith.security.headers.nonce";
+	static final String NONCE_SIZE_PARAM = "nonceSize";
+	static final String NONCE_POOL_PARAM = "noncePoolCapacity";
+	static final String NONCE_ATTRIBUTE_PARAM = "nonceAttribute";
+
+	// 128 bits, as recommended for CSP nonces
+	private static final int DEFAULT_NONCE_SIZE = 16;
+
+	private final CompiledSecurityHeaders compiled;
+	private final int nonceSize;
+	private final NoncePool pool; // null when nonces are generated per request
+	private final String nonceAttribute;
+
+	/**
+	 * @param compiled the headers to apply
+	 * @param nonceSize the number of random bytes in each nonce, or null for
+	 * the default of 16
+	 * @param poolCapacity the number of nonces to generate ahead in a 
+	 * {@link NoncePool}, or null to generate each nonce on its request
+	 * @param nonceAttribute the request attribute to expose the nonce as, or
+	 * null for the default
+	 * @throws IllegalArgumentException if a parameter is not a valid value
+	 */
+	FilterHeaders(CompiledSecurityHeaders compiled, String nonceSize, String poolCapacity, String nonceAttribute) {
+		this.compiled = compiled;
+		this.nonceSize = nonceSize == null ? DEFAULT_NONCE_SIZE : parse(NONCE_SIZE_PARAM, nonceSize);
+		if (this.nonceSize < 1) {
+			throw new IllegalArgumentException(NONCE_SIZE_PARAM + " must be at least 1");
+		}
+		int capacity = poolCapacity == null ? 0 : parse(NONCE_POOL_PARAM, poolCapacity);
+		this.pool = capacity > 0 && compiled.requiresNonce() ? new NoncePool(this.nonceSize, capacity) : null;
+		this.nonceAttribute = nonceAttribute == null ? DEFAULT_NONCE_ATTRIBUTE : nonceAttribute;
+	}
+
+	private static int parse(String name, String value) {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(name + " must be a number, but was " + value, e);
+		}
+	}
+
+	/**
+	 * @return true if every response needs a fresh nonce
+	 */
+	boolean requiresNonce() {
+		return this.compiled.requiresNonce();
+	}
+
+	/**
+	 * @return a nonce for one response
+	 */
+	String nextNonce() {
+		return this.pool != null ? this.pool.nextNonce() : AbstractUnsafeDirective.generateNonce(this.nonceSize);
+	}
+
+	/**
+	 * @return the request attribute the nonce is exposed as
+	 */
+	String getNonceAttribute() {
+		return this.nonceAttribute;
+	}
+
+	/**
+	 * @param nonce the nonce for this response, or null if none is required
+	 * @return the header names and values for this response
+	 */
+	List<Entry<String, String>> getHeaders(String nonce) {
+		return this.compiled.getHeaders(nonce);
+	}
+
+	/**
+	 * stop refilling the nonce pool, if there is one
+	 */
+	void shutdown() {
+		if (this.pool != null) {
+			this.pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.servlet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map.Entry;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletResponse;
+
+import tophersmith.security.headers.SecurityHeaders;
+
+/**
+ * A JakartaSecurityHeadersFilter sets a {@link SecurityHeaders} on every 
+ * HTTP response, for containers using the jakarta.servlet API. It behaves 
+ * exactly as {@link SecurityHeadersFilter} does for javax.servlet, and takes
+ * the same init parameters.
+ *
+ * @author Chris Smith
+ *
+ */
+public class JakartaSecurityHeadersFilter implements Filter {
+
+	/**
+	 * The default request attribute holding the response's nonce
+	 */
+	public static final String NONCE_ATTRIBUTE = FilterHeaders.DEFAULT_NONCE_ATTRIBUTE;
+
+	private final SecurityHeaders securityHeaders;
+	private volatile FilterHeaders headers = null;
+
+	/**
+	 * Construct a filter whose headers are created by 
+	 * {@link #createSecurityHeaders(FilterConfig)}
+	 */
+	public JakartaSecurityHeadersFilter() {
+		this(null);
+	}
+
+	/**
+	 * Construct a filter that applies the given headers. They are compiled 
+	 * at init; later changes to them are not applied.
+	 * @param securityHeaders the headers to apply
+	 */
+	public JakartaSecurityHeadersFilter(SecurityHeaders securityHeaders) {
+		this.securityHeaders = securityHeaders;
+	}
+
+	/**
+	 * Create the headers this filter applies, when none were passed to the
+	 * constructor. By default, there are none.
+	 * @param config the filter's configuration
+	 * @return the headers to apply
+	 * @throws ServletException if the headers cannot be created
+	 */
+	protected SecurityHeaders createSecurityHeaders(FilterConfig config) throws ServletException {
+		return null;
+	}
+
+	@Override
+	public void init(FilterConfig config) throws ServletException {
+		SecurityHeaders source = this.securityHeaders != null ? this.securityHeaders : createSecurityHeaders(config);
+		if (source == null) {
+			throw new ServletException("No SecurityHeaders were given to the constructor or created by createSecurityHeaders");
+		}
+		try {
+			this.headers = new FilterHeaders(source.compile(), 
+					config.getInitParameter(FilterHeaders.NONCE_SIZE_PARAM), 
+					config.getInitParameter(FilterHeaders.NONCE_POOL_PARAM), 
+					config.getInitParameter(FilterHeaders.NONCE_ATTRIBUTE_PARAM));
+		} catch (IllegalArgumentException e) {
+			throw new ServletException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) 
+			throws IOException, ServletException {
+		FilterHeaders current = this.headers;
+		if (current == null) {
+			throw new IllegalStateException("The filter has not been initialized");
+		}
+		if (response instanceof HttpServletResponse) {
+			HttpServletResponse httpResponse = (HttpServletResponse) response;
+			String nonce = null;
+			if (current.requiresNonce()) {
+				nonce = current.nextNonce();
+				request.setAttribute(current.getNonceAttribute(), nonce);
+			}
+			List<Entry<String, String>> list = current.getHeaders(nonce);
+			for (int i = 0; i < list.size(); i++) {
+				httpResponse.setHeader(list.get(i).getKey(), list.get(i).getValue());
+			}
+		}
+		chain.doFilter(request, response);
+	}
+
+	@Override
+	public void destroy() {
+		FilterHeaders current = this.headers;
+		if (current != null) {
+			current.shutdown();
+		}
+	}
+}
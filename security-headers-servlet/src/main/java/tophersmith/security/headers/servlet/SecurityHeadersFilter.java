@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.servlet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map.Entry;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import tophersmith.security.headers.SecurityHeaders;
+
+/**
+ * A SecurityHeadersFilter sets a {@link SecurityHeaders} on every HTTP 
+ * response, for containers using the javax.servlet API. The headers are 
+ * compiled once, at init, so each request only copies the pre-built values
+ * onto the response. See {@link JakartaSecurityHeadersFilter} for 
+ * jakarta.servlet containers.
+ * <br><br>
+ * If the Content-Security-Policy holds nonces, each request gets a fresh 
+ * nonce, spliced into the policy and exposed as the request attribute 
+ * {@link #NONCE_ATTRIBUTE} for pages to put on their script and style tags.
+ * Otherwise no nonce is generated.
+ * <br><br>
+ * The headers are passed to the constructor, or created by overriding 
+ * {@link #createSecurityHeaders(FilterConfig)} when the filter is declared in
+ * web.xml. Init parameters:
+ * <ul>
+ * <li>nonceSize: the number of random bytes in each nonce, 16 by default</li>
+ * <li>noncePoolCapacity: if set, nonces are generated ahead of time in a 
+ * {@link tophersmith.security.headers.util.NoncePool} of this size</li>
+ * <li>nonceAttribute: the request attribute name of the nonce</li>
+ * </ul>
+ * Example:<br>
+ * <code>
+ * servletContext.addFilter("securityHeaders", new SecurityHeadersFilter(makeSecurityHeaders()))<br>
+ * &nbsp;&nbsp;.addMappingForUrlPatterns(null, false, "/*");
+ * </code>
+ *
+ * @author Chris Smith
+ *
+ */
+public class SecurityHeadersFilter implements Filter {
+
+	/**
+	 * The default request attribute holding the response's nonce
+	 */
+	public static final String NONCE_ATTRIBUTE = FilterHeaders.DEFAULT_NONCE_ATTRIBUTE;
+
+	private final SecurityHeaders securityHeaders;
+	private volatile FilterHeaders headers = null;
+
+	/**
+	 * Construct a filter whose headers are created by 
+	 * {@link #createSecurityHeaders(FilterConfig)}
+	 */
+	public SecurityHeadersFilter() {
+		this(null);
+	}
+
+	/**
+	 * Construct a filter that applies the given headers. They are compiled 
+	 * at init; later changes to them are not applied.
+	 * @param securityHeaders the headers to apply
+	 */
+	public SecurityHeadersFilter(SecurityHeaders securityHeaders) {
+		this.securityHeaders = securityHeaders;
+	}
+
+	/**
+	 * Create the headers this filter applies, when none were passed to the
+	 * constructor. By default, there are none.
+	 * @param config the filter's configuration
+	 * @return the headers to apply
+	 * @throws ServletException if the headers cannot be created
+	 */
+	protected SecurityHeaders createSecurityHeaders(FilterConfig config) throws ServletException {
+		return null;
+	}
+
+	@Override
+	public void init(FilterConfig config) throws ServletException {
+		SecurityHeaders source = this.securityHeaders != null ? this.securityHeaders : createSecurityHeaders(config);
+		if (source == null) {
+			throw new ServletException("No SecurityHeaders were given to the constructor or created by createSecurityHeaders");
+		}
+		try {
+			this.headers = new FilterHeaders(source.compile(), 
+					config.getInitParameter(FilterHeaders.NONCE_SIZE_PARAM), 
+					config.getInitParameter(FilterHeaders.NONCE_POOL_PARAM), 
+					config.getInitParameter(FilterHeaders.NONCE_ATTRIBUTE_PARAM));
+		} catch (IllegalArgumentException e) {
+			throw new ServletException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) 
+			throws IOException, ServletException {
+		FilterHeaders current = this.headers;
+		if (current == null) {
+			throw new IllegalStateException("The filter has not been initialized");
+		}
+		if (response instanceof HttpServletResponse) {
+			HttpServletResponse httpResponse = (HttpServletResponse) response;
+			String nonce = null;
+			if (current.requiresNonce()) {
+				nonce = current.nextNonce();
+				request.setAttribute(current.getNonceAttribute(), nonce);
+			}
+			List<Entry<String, String>> list = current.getHeaders(nonce);
+			for (int i = 0; i < list.size(); i++) {
+				httpResponse.setHeader(list.get(i).getKey(), list.get(i).getValue());
+			}
+		}
+		chain.doFilter(request, response);
+	}
+
+	@Override
+	public void destroy() {
+		FilterHeaders current = this.headers;
+		if (current != null) {
+			current.shutdown();
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package tophersmith.security.headers.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import tophersmith.security.headers.SecurityHeaders;
+import tophersmith.security.headers.csp.CSPHeaderName;
+import tophersmith.security.headers.csp.ContentSecurityPolicy;
+import tophersmith.security.headers.csp.directives.impl.ScriptSrcDirective;
+import tophersmith.security.headers.impl.ContentSecurityPolicyHeader;
+import tophersmith.security.headers.impl.XFrameOptionsHeader;
+
+public class SecurityHeadersFilterTest {
+
+	@Test
+	public void testStaticHeaders() throws Exception {
+		SecurityHeadersFilter filter = new SecurityHeadersFilter(staticHeaders());
+		filter.init(fake(javax.servlet.FilterConfig.class, new Fake()));
+		Fake request = new Fake();
+		Fake response = new Fake();
+		Fake chain = new Fake();
+		filter.doFilter(fake(javax.servlet.ServletRequest.class, request), 
+				fake(javax.servlet.http.HttpServletResponse.class, response), 
+				fake(javax.servlet.FilterChain.class, chain));
+		assertEquals("DENY", response.values.get("X-Frame-Options"));
+		assertTrue(request.values.isEmpty());
+		assertTrue(chain.calls.containsKey("doFilter"));
+		filter.destroy();
+	}
+
+	@Test
+	public void testNonceHeaders() throws Exception {
+		SecurityHeadersFilter filter = new SecurityHeadersFilter(nonceHeaders());
+		Fake config = new Fake();
+		config.values.put("nonceSize", "12");
+		config.values.put("noncePoolCapacity", "8");
+		filter.init(fake(javax.servlet.FilterConfig.class, config));
+		String first = null;
+		for (int i = 0; i < 3; i++) {
+			Fake request = new Fake();
+			Fake response = new Fake();
+			filter.doFilter(fake(javax.servlet.ServletRequest.class, request), 
+					fake(javax.servlet.http.HttpServletResponse.class, response), 
+					fake(javax.servlet.FilterChain.class, new Fake()));
+			String nonce = (String) request.values.get(SecurityHeadersFilter.NONCE_ATTRIBUTE);
+			assertEquals(16, nonce.length());
+			assertEquals("script-src 'self' 'nonce-" + nonce + "'", response.values.get("Content-Security-Policy"));
+			assertTrue(!nonce.equals(first));
+			first = nonce;
+		}
+		filter.destroy();
+	}
+
+	@Test
+	public void testJakartaFilter() throws Exception {
+		JakartaSecurityHeadersFilter filter = new JakartaSecurityHeadersFilter() {
+			@Override
+			protected SecurityHeaders createSecurityHeaders(jakarta.servlet.FilterConfig config) {
+				return nonceHeaders();
+			}
+		};
+		Fake config = new Fake();
+		config.values.put("nonceAttribute", "cspNonce");
+		filter.init(fake(jakarta.servlet.FilterConfig.class, config));
+		Fake request = new Fake();
+		Fake response = new Fake();
+		Fake chain = new Fake();
+		filter.doFilter(fake(jakarta.servlet.ServletRequest.class, request), 
+				fake(jakarta.servlet.http.HttpServletResponse.class, response), 
+				fake(jakarta.servlet.FilterChain.class, chain));
+		String nonce = (String) request.values.get("cspNonce");
+		assertNotNull(nonce);
+		assertEquals(24, nonce.length());
+		assertEquals("script-src 'self' 'nonce-" + nonce + "'", response.values.get("Content-Security-Policy"));
+		assertTrue(chain.calls.containsKey("doFilter"));
+		filter.destroy();
+	}
+
+	@Test
+	public void testNonHttpResponse() throws Exception {
+		SecurityHeadersFilter filter = new SecurityHeadersFilter(nonceHeaders());
+		filter.init(fake(javax.servlet.FilterConfig.class, new Fake()));
+		Fake request = new Fake();
+		Fake chain = new Fake();
+		filter.doFilter(fake(javax.servlet.ServletRequest.class, request), 
+				fake(javax.servlet.ServletResponse.class, new Fake()), 
+				fake(javax.servlet.FilterChain.class, chain));
+		assertNull(request.values.get(SecurityHeadersFilter.NONCE_ATTRIBUTE));
+		assertTrue(chain.calls.containsKey("doFilter"));
+	}
+
+	@Test
+	public void testInitErrors() throws Exception {
+		try {
+			new SecurityHeadersFilter().init(fake(javax.servlet.FilterConfig.class, new Fake()));
+			fail("headers are required");
+		} catch (javax.servlet.ServletException e) {
+			// expected
+		}
+		Fake config = new Fake();
+		config.values.put("nonceSize", "lots");
+		try {
+			new SecurityHeadersFilter(staticHeaders()).init(fake(javax.servlet.FilterConfig.class, config));
+			fail("the nonce size must be a number");
+		} catch (javax.servlet.ServletException e) {
+			// expected
+		}
+		try {
+			new SecurityHeadersFilter(staticHeaders()).doFilter(null, null, null);
+			fail("the filter must be initialized");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private static SecurityHeaders staticHeaders() {
+		return new SecurityHeaders().addHeader(new XFrameOptionsHeader().setDeny());
+	}
+
+	private static SecurityHeaders nonceHeaders() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy();
+		policy.addDirective(new ScriptSrcDirective().addSelf().addNonce("cGxhY2Vob2xkZXI="));
+		return staticHeaders().addHeader(new ContentSecurityPolicyHeader(CSPHeaderName.CSP).setPolicy(policy));
+	}
+
+	private static <T> T fake(Class<T> type, Fake handler) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+	}
+
+	/**
+	 * records attributes, headers and init parameters as plain values
+	 */
+	private static final class Fake implements InvocationHandler {
+		final Map<String, Object> values = new HashMap<String, Object>();
+		final Map<String, Object[]> calls = new HashMap<String, Object[]>();
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			this.calls.put(name, args);
+			if (name.equals("setAttribute") || name.equals("setHeader")) {
+				this.values.put((String) args[0], args[1]);
+			} else if (name.equals("getAttribute") || name.equals("getInitParameter") || name.equals("getHeader")) {
+				return this.values.get(args[0]);
+			} else if (method.getReturnType() == boolean.class) {
+				return false;
+			} else if (method.getReturnType() == int.class) {
+				return 0;
+			} else if (method.getReturnType() == long.class) {
+				return 0L;
+			}
+			return null;
+		}
+	}
+}
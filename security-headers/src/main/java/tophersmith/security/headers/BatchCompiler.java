@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import tophersmith.security.headers.csp.CSPNonceTemplate;
+import tophersmith.security.headers.csp.CSPValidationReport;
+import tophersmith.security.headers.csp.ContentSecurityPolicy;
+import tophersmith.security.headers.impl.AbstractHeader;
+import tophersmith.security.headers.impl.ContentSecurityPolicyHeader;
+import tophersmith.security.headers.util.InvalidHeaderException;
+import tophersmith.security.headers.util.ParallelRange;
+
+/**
+ * A BatchCompiler validates and compiles many policies or header sets at 
+ * once, e.g. one per tenant, spreading the items across a fork-join pool. 
+ * Each item is validated into its own report, leaving the reports attached
+ * to the policies untouched, and only valid items are compiled. A failure 
+ * in one item is recorded in its result and does not stop the batch.
+ * <br><br>
+ * Items may share directives and policies as long as nothing changes them 
+ * during the batch. Policies whose header has reduction enabled are reduced
+ * while compiling, so such a policy should be frozen before it is shared
+ * between items, see {@link ContentSecurityPolicy#freeze()}.
+ * <br><br>
+ * Example:<br>
+ * <code>
+ * BatchReport&lt;CompiledSecurityHeaders&gt; report = new BatchCompiler().compileHeaders(tenantHeaders);<br>
+ * CompiledSecurityHeaders compiled = report.getResults().get(0).getCompiled();
+ * </code>
+ *
+ * @author Chris Smith
+ *
+ */
+public class BatchCompiler {
+
+	// items are coarse, so split down to small ranges
+	private static final int THRESHOLD = 4;
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Construct a compiler that shares one fork-join pool of daemon threads,
+	 * sized to the number of available processors, with every other default
+	 * compiler
+	 */
+	public BatchCompiler() {
+		this(ParallelRange.defaultPool());
+	}
+
+	/**
+	 * Construct a compiler that runs batches on the given pool
+	 * @param pool the pool to run batches on
+	 */
+	public BatchCompiler(ForkJoinPool pool) {
+		if (pool == null) {
+			throw new IllegalArgumentException("pool must be set");
+		}
+		this.pool = pool;
+	}
+
+	/**
+	 * Validate every header of each item, and compile the valid items with 
+	 * {@link SecurityHeaders#compile()}
+	 * @param items the header sets to compile
+	 * @return the result of every item and the aggregate counts
+	 */
+	public BatchReport<CompiledSecurityHeaders> compileHeaders(List<SecurityHeaders> items) {
+		return run(items, new ItemCompiler<SecurityHeaders, CompiledSecurityHeaders>() {
+			@Override
+			CompiledSecurityHeaders compile(SecurityHeaders item, List<String> errors, List<String> warnings) {
+				List<AbstractHeader> headers = item.getHeaders();
+				for (int i = 0; i < headers.size(); i++) {
+					AbstractHeader header = headers.get(i);
+					if (header instanceof ContentSecurityPolicyHeader) {
+						CSPValidationReport report = ((ContentSecurityPolicyHeader) header).validatePolicy();
+						if (report == null) {
+							errors.add("ContentSecurityPolicy must be set on the header");
+						} else {
+							errors.addAll(report.getErrorReports());
+							warnings.addAll(report.getWarningReports());
+						}
+					} else {
+						try {
+							header.validate();
+						} catch (InvalidHeaderException e) {
+							errors.add(e.getMessage());
+						}
+					}
+				}
+				return errors.isEmpty() ? item.compile() : null;
+			}
+		});
+	}
+
+	/**
+	 * Validate each policy, and compile the valid ones with 
+	 * {@link ContentSecurityPolicy#buildNonceTemplate()}. Policies are not
+	 * reduced.
+	 * @param policies the policies to compile
+	 * @return the result of every policy and the aggregate counts
+	 */
+	public BatchReport<CSPNonceTemplate> compilePolicies(List<ContentSecurityPolicy> policies) {
+		return run(policies, new ItemCompiler<ContentSecurityPolicy, CSPNonceTemplate>() {
+			@Override
+			CSPNonceTemplate compile(ContentSecurityPolicy item, List<String> errors, List<String> warnings) {
+				CSPValidationReport report = item.validate();
+				errors.addAll(report.getErrorReports());
+				warnings.addAll(report.getWarningReports());
+				return errors.isEmpty() ? item.buildNonceTemplate() : null;
+			}
+		});
+	}
+
+	private <S, T> BatchReport<T> run(List<S> items, final ItemCompiler<S, T> compiler) {
+		if (items == null) {
+			throw new IllegalArgumentException("items must be set");
+		}
+		long start = System.nanoTime();
+		final List<S> source = new ArrayList<S>(items);
+		final Object[] results = new Object[source.size()];
+		ParallelRange.invoke(this.pool, source.size(), THRESHOLD, new ParallelRange.Body() {
+			@Override
+			public void run(int index) {
+				results[index] = compiler.result(index, source.get(index));
+			}
+		});
+		@SuppressWarnings("unchecked")
+		List<BatchResult<T>> list = (List<BatchResult<T>>) (List<?>) Arrays.asList(results);
+		return new BatchReport<T>(list, System.nanoTime() - start);
+	}
+
+	/**
+	 * validates and compiles one item, adding any issues to the given lists
+	 */
+	private static abstract class ItemCompiler<S, T> {
+		abstract T compile(S item, List<String> errors, List<String> warnings);
+
+		BatchResult<T> result(int index, S item) {
+			List<String> errors = new ArrayList<String>();
+			List<String> warnings = new ArrayList<String>();
+			T compiled = null;
+			if (item == null) {
+				errors.add("Item " + index + " is null");
+			} else {
+				try {
+					compiled = compile(item, errors, warnings);
+				} catch (RuntimeException e) {
+					errors.add("Item " + index + " could not be compiled: " + e);
+					compiled = null;
+				}
+			}
+			return new BatchResult<T>(index, compiled, errors, warnings);
+		}
+	}
+}
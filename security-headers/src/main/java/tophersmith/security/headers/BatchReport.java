@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The aggregate outcome of validating and compiling a batch, see 
+ * {@link BatchCompiler}. Results are in the same order as the items.
+ *
+ * @param <T> the type an item compiles to
+ *
+ * @author Chris Smith
+ *
+ */
+public final class BatchReport<T> {
+
+	private final List<BatchResult<T>> results;
+	private final int validCount;
+	private final int errorCount;
+	private final int warningCount;
+	private final long elapsedNanos;
+
+	BatchReport(List<BatchResult<T>> results, long elapsedNanos) {
+		int valid = 0;
+		int errors = 0;
+		int warnings = 0;
+		for (int i = 0; i < results.size(); i++) {
+			BatchResult<T> result = results.get(i);
+			if (result.isValid()) {
+				valid++;
+			}
+			errors += result.getErrors().size();
+			warnings += result.getWarnings().size();
+		}
+		this.results = Collections.unmodifiableList(results);
+		this.validCount = valid;
+		this.errorCount = errors;
+		this.warningCount = warnings;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * @return the result of every item, in batch order
+	 */
+	public List<BatchResult<T>> getResults() {
+		return this.results;
+	}
+
+	/**
+	 * @return the results of the items with validation errors, in batch order
+	 */
+	public List<BatchResult<T>> getInvalidResults() {
+		List<BatchResult<T>> invalid = new ArrayList<BatchResult<T>>(this.results.size() - this.validCount);
+		for (int i = 0; i < this.results.size(); i++) {
+			if (!this.results.get(i).isValid()) {
+				invalid.add(this.results.get(i));
+			}
+		}
+		return invalid;
+	}
+
+	/**
+	 * @return the number of items in the batch
+	 */
+	public int size() {
+		return this.results.size();
+	}
+
+	/**
+	 * @return the number of items without validation errors
+	 */
+	public int getValidCount() {
+		return this.validCount;
+	}
+
+	/**
+	 * @return the number of items with validation errors
+	 */
+	public int getInvalidCount() {
+		return this.results.size() - this.validCount;
+	}
+
+	/**
+	 * @return the number of validation errors across all items
+	 */
+	public int getErrorCount() {
+		return this.errorCount;
+	}
+
+	/**
+	 * @return the number of validation warnings across all items
+	 */
+	public int getWarningCount() {
+		return this.warningCount;
+	}
+
+	/**
+	 * @return true if every item was valid
+	 */
+	public boolean isAllValid() {
+		return this.validCount == this.results.size();
+	}
+
+	/**
+	 * @return the wall-clock time the batch took, in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return this.elapsedNanos;
+	}
+}
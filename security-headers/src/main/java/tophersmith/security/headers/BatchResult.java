@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of validating and compiling one item of a batch, see 
+ * {@link BatchCompiler}
+ *
+ * @param <T> the type an item compiles to
+ *
+ * @author Chris Smith
+ *
+ */
+public final class BatchResult<T> {
+
+	private final int index;
+	private final T compiled;
+	private final List<String> errors;
+	private final List<String> warnings;
+
+	BatchResult(int index, T compiled, List<String> errors, List<String> warnings) {
+		this.index = index;
+		this.compiled = compiled;
+		this.errors = Collections.unmodifiableList(errors);
+		this.warnings = Collections.unmodifiableList(warnings);
+	}
+
+	/**
+	 * @return the position of the item in the batch
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * @return the compiled item, or null if the item is not valid
+	 */
+	public T getCompiled() {
+		return this.compiled;
+	}
+
+	/**
+	 * @return the validation errors of the item
+	 */
+	public List<String> getErrors() {
+		return this.errors;
+	}
+
+	/**
+	 * @return the validation warnings of the item
+	 */
+	public List<String> getWarnings() {
+		return this.warnings;
+	}
+
+	/**
+	 * @return true if the item had no validation errors and was compiled
+	 */
+	public boolean isValid() {
+		return this.errors.isEmpty();
+	}
+}
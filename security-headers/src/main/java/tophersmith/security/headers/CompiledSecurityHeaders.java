@@ -0,0 +1,397 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+
+import tophersmith.security.headers.csp.CSPNonceTemplate;
+import tophersmith.security.headers.impl.AbstractHeader;
+import tophersmith.security.headers.impl.ContentSecurityPolicyHeader;
+
+/**
+ * CompiledSecurityHeaders is an immutable snapshot of a {@link SecurityHeaders}
+ * object. Every header value is built and sanitized exactly once, when the
+ * snapshot is created, and the resulting names, values and header lines are
+ * shared by every caller afterwards.
+ * <br><br>
+ * A Content-Security-Policy whose script-src or style-src holds nonces is 
+ * compiled into a {@link CSPNonceTemplate} instead, see 
+ * {@link #requiresNonce()}. Those snapshots only hand out headers for a given
+ * nonce, which is spliced into the pre-built policy text.
+ * <br><br>
+ * The headers are also kept as a pre-encoded US-ASCII HTTP/1.1 header block,
+ * one <code>Name: value\r\n</code> line per header, which 
+ * {@link #writeTo(ByteBuffer)} and {@link #writeTo(OutputStream)} copy out 
+ * without building or encoding any Strings. Characters outside US-ASCII 
+ * are written as ?. For HTTP/2, {@link #getHpackBlock()} holds the same 
+ * headers encoded with HPACK.
+ * <br><br>
+ * Changes made to the SecurityHeaders or its headers after
+ * {@link SecurityHeaders#compile()} are not reflected in the snapshot;
+ * compile again to pick them up. Instances are safe to share between threads.
+ *
+ * @author Chris Smith
+ *
+ */
+public final class CompiledSecurityHeaders {
+
+	private static final Charset US_ASCII = Charset.forName("US-ASCII");
+	private static final String CRLF = "\r\n";
+
+	private final List<Entry<String, String>> headers;
+	private final List<String> headerLines;
+	private final CSPNonceTemplate[] templates; // null when no header needs a nonce
+	private final byte[][] wireSegments; // the header block around each nonce slot
+	private final int wireLength; // the length of the header block without nonces
+	private volatile HpackHeaderBlock hpackBlock = null; // encoded on first use
+
+	/**
+	 * Builds and sanitizes every given header
+	 * @param source the headers to snapshot
+	 */
+	CompiledSecurityHeaders(List<AbstractHeader> source) {
+		List<Entry<String, String>> entries = new ArrayList<Entry<String, String>>(source.size());
+		List<String> lines = new ArrayList<String>(source.size());
+		CSPNonceTemplate[] nonceTemplates = null;
+		List<byte[]> segments = new ArrayList<byte[]>();
+		StringBuilder wire = new StringBuilder();
+		for (int i = 0; i < source.size(); i++) {
+			AbstractHeader header = source.get(i);
+			String headerName = SecurityHeaders.sanitizeHeaderData(header.getHeaderName());
+			CSPNonceTemplate template = buildTemplate(header);
+			if (template != null) {
+				if (nonceTemplates == null) {
+					nonceTemplates = new CSPNonceTemplate[source.size()];
+				}
+				nonceTemplates[i] = template;
+				entries.add(new SimpleImmutableEntry<String, String>(headerName, null));
+				lines.add(null);
+				List<String> templateSegments = template.getSegments();
+				wire.append(headerName).append(": ").append(templateSegments.get(0));
+				for (int j = 1; j < templateSegments.size(); j++) {
+					segments.add(wire.toString().getBytes(US_ASCII));
+					wire.setLength(0);
+					wire.append(templateSegments.get(j));
+				}
+				wire.append(CRLF);
+			} else {
+				String headerValue = SecurityHeaders.sanitizeHeaderData(header.buildHeaderValue());
+				entries.add(new SimpleImmutableEntry<String, String>(headerName, headerValue));
+				lines.add(new StringBuilder(headerName.length() + headerValue.length() + 2)
+						.append(headerName).append(": ").append(headerValue).toString());
+				wire.append(lines.get(i)).append(CRLF);
+			}
+		}
+		segments.add(wire.toString().getBytes(US_ASCII));
+		this.headers = Collections.unmodifiableList(entries);
+		this.headerLines = Collections.unmodifiableList(lines);
+		this.templates = nonceTemplates;
+		this.wireSegments = segments.toArray(new byte[segments.size()][]);
+		int length = 0;
+		for (int i = 0; i < this.wireSegments.length; i++) {
+			length += this.wireSegments[i].length;
+		}
+		this.wireLength = length;
+	}
+
+	/**
+	 * build a sanitized nonce template for the given header if it is a CSP 
+	 * header whose policy contains nonces
+	 * @return the template or null if the header's value is static
+	 */
+	private static CSPNonceTemplate buildTemplate(AbstractHeader header) {
+		if (!(header instanceof ContentSecurityPolicyHeader)) {
+			return null;
+		}
+		CSPNonceTemplate template = ((ContentSecurityPolicyHeader) header).buildHeaderValueTemplate();
+		if (template == null || !template.hasNonceSlots()) {
+			return null;
+		}
+		if (template.isClean()) {
+			return template;
+		}
+		List<String> segments = template.getSegments();
+		List<String> sanitized = new ArrayList<String>(segments.size());
+		for (int i = 0; i < segments.size(); i++) {
+			sanitized.add(SecurityHeaders.sanitizeHeaderData(segments.get(i)));
+		}
+		return new CSPNonceTemplate(sanitized);
+	}
+
+	/**
+	 * does any header in this snapshot need a per-response nonce
+	 * @return true if headers must be retrieved with a nonce
+	 */
+	public boolean requiresNonce() {
+		return this.templates != null;
+	}
+
+	/**
+	 * Get the header names and values captured by this snapshot. The same
+	 * unmodifiable list is returned on every call.
+	 *
+	 * @return an unmodifiable list of header names and values
+	 * @throws IllegalStateException if this snapshot requires a nonce
+	 * @see SecurityHeaders#buildHeaders()
+	 */
+	public List<Entry<String, String>> getHeaders() {
+		checkNoNonceRequired();
+		return this.headers;
+	}
+
+	/**
+	 * Get the header names and values captured by this snapshot, splicing the
+	 * given nonce into any CSP header that has nonce slots. Headers without
+	 * slots are shared between calls; if no header needs a nonce the nonce is
+	 * ignored and the same list as {@link #getHeaders()} is returned.
+	 *
+	 * @param nonce the nonce for this response
+	 * @return an unmodifiable list of header names and values
+	 * @throws IllegalArgumentException if a nonce is required but is not base64
+	 */
+	public List<Entry<String, String>> getHeaders(String nonce) {
+		if (this.templates == null) {
+			return this.headers;
+		}
+		List<Entry<String, String>> entries = new ArrayList<Entry<String, String>>(this.headers);
+		for (int i = 0; i < this.templates.length; i++) {
+			if (this.templates[i] != null) {
+				entries.set(i, new SimpleImmutableEntry<String, String>(
+						this.headers.get(i).getKey(), this.templates[i].render(nonce)));
+			}
+		}
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * Get the complete header lines captured by this snapshot. The same
+	 * unmodifiable list is returned on every call.
+	 * <br>
+	 * e.g. Header-Name: HeaderValue(s)
+	 *
+	 * @return an unmodifiable list of full header lines
+	 * @throws IllegalStateException if this snapshot requires a nonce
+	 * @see SecurityHeaders#buildHeaderLines()
+	 */
+	public List<String> getHeaderLines() {
+		checkNoNonceRequired();
+		return this.headerLines;
+	}
+
+	/**
+	 * Get the complete header lines captured by this snapshot, splicing the
+	 * given nonce into any CSP header that has nonce slots. If no header needs
+	 * a nonce the nonce is ignored and the same list as 
+	 * {@link #getHeaderLines()} is returned.
+	 *
+	 * @param nonce the nonce for this response
+	 * @return an unmodifiable list of full header lines
+	 * @throws IllegalArgumentException if a nonce is required but is not base64
+	 */
+	public List<String> getHeaderLines(String nonce) {
+		if (this.templates == null) {
+			return this.headerLines;
+		}
+		List<String> lines = new ArrayList<String>(this.headerLines);
+		for (int i = 0; i < this.templates.length; i++) {
+			CSPNonceTemplate template = this.templates[i];
+			if (template != null) {
+				String headerName = this.headers.get(i).getKey();
+				StringBuilder sb = new StringBuilder(
+						headerName.length() + 2 + template.getRenderedLength(nonce == null ? 0 : nonce.length()));
+				sb.append(headerName).append(": ");
+				lines.set(i, template.renderTo(sb, nonce).toString());
+			}
+		}
+		return Collections.unmodifiableList(lines);
+	}
+
+	/**
+	 * compute the exact length of the encoded header block
+	 * @param nonceLength the length of the nonce that will be spliced in, 
+	 * ignored if no header needs a nonce
+	 * @return the number of bytes {@link #writeTo(ByteBuffer, CharSequence)} 
+	 * writes
+	 */
+	public int getWireLength(int nonceLength) {
+		return this.wireLength + (this.wireSegments.length - 1) * nonceLength;
+	}
+
+	/**
+	 * Get the encoded header block captured by this snapshot, so that it can
+	 * be written with a single put. The buffer shares the cached bytes and 
+	 * is read-only.
+	 *
+	 * @return a read-only buffer of every header line, each ending in CRLF
+	 * @throws IllegalStateException if this snapshot requires a nonce
+	 */
+	public ByteBuffer getWireBlock() {
+		checkNoNonceRequired();
+		return ByteBuffer.wrap(this.wireSegments[0]).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Write every header line, each ending in CRLF, as US-ASCII bytes. The 
+	 * blank line that ends an HTTP/1.1 header section is not written.
+	 *
+	 * @param dst the buffer to write into, at its position
+	 * @throws IllegalStateException if this snapshot requires a nonce
+	 * @throws BufferOverflowException if dst has too little space, in which 
+	 * case nothing is written
+	 */
+	public void writeTo(ByteBuffer dst) {
+		checkNoNonceRequired();
+		writeTo(dst, null);
+	}
+
+	/**
+	 * Write every header line, each ending in CRLF, as US-ASCII bytes, 
+	 * splicing the given nonce into any CSP header that has nonce slots. If 
+	 * no header needs a nonce the nonce is ignored.
+	 *
+	 * @param dst the buffer to write into, at its position
+	 * @param nonce the nonce for this response
+	 * @throws IllegalArgumentException if a nonce is required but is not base64
+	 * @throws BufferOverflowException if dst has too little space, in which 
+	 * case nothing is written
+	 */
+	public void writeTo(ByteBuffer dst, CharSequence nonce) {
+		int nonceLength = this.templates == null ? 0 : CSPNonceTemplate.checkNonce(nonce);
+		if (dst.remaining() < getWireLength(nonceLength)) {
+			throw new BufferOverflowException();
+		}
+		for (int i = 0; i < this.wireSegments.length; i++) {
+			if (i > 0) {
+				// checkNonce only lets base64 through, so each char is one byte
+				for (int j = 0; j < nonceLength; j++) {
+					dst.put((byte) nonce.charAt(j));
+				}
+			}
+			dst.put(this.wireSegments[i]);
+		}
+	}
+
+	/**
+	 * Write every header line, each ending in CRLF, as US-ASCII bytes. The 
+	 * blank line that ends an HTTP/1.1 header section is not written.
+	 *
+	 * @param out the stream to write to
+	 * @throws IOException if out cannot be written to
+	 * @throws IllegalStateException if this snapshot requires a nonce
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		checkNoNonceRequired();
+		out.write(this.wireSegments[0]);
+	}
+
+	/**
+	 * Write every header line, each ending in CRLF, as US-ASCII bytes, 
+	 * splicing the given nonce into any CSP header that has nonce slots. If 
+	 * no header needs a nonce the nonce is ignored.
+	 *
+	 * @param out the stream to write to
+	 * @param nonce the nonce for this response
+	 * @throws IOException if out cannot be written to
+	 * @throws IllegalArgumentException if a nonce is required but is not base64
+	 */
+	public void writeTo(OutputStream out, CharSequence nonce) throws IOException {
+		if (this.templates == null) {
+			out.write(this.wireSegments[0]);
+			return;
+		}
+		int nonceLength = CSPNonceTemplate.checkNonce(nonce);
+		byte[] nonceBytes = new byte[nonceLength];
+		for (int j = 0; j < nonceLength; j++) {
+			nonceBytes[j] = (byte) nonce.charAt(j);
+		}
+		for (int i = 0; i < this.wireSegments.length; i++) {
+			if (i > 0) {
+				out.write(nonceBytes);
+			}
+			out.write(this.wireSegments[i]);
+		}
+	}
+
+	/**
+	 * Get the headers captured by this snapshot encoded for HTTP/2. The 
+	 * block is encoded on first use and the same block is returned 
+	 * afterwards.
+	 *
+	 * @return the HPACK encoding of these headers
+	 */
+	public HpackHeaderBlock getHpackBlock() {
+		HpackHeaderBlock block = this.hpackBlock;
+		if (block == null) {
+			// encoding is deterministic, so a race only encodes twice
+			block = new HpackHeaderBlock(this.headers, this.templates);
+			this.hpackBlock = block;
+		}
+		return block;
+	}
+
+	/**
+	 * @param index the index of a header, in the order it was added
+	 * @return the sanitized name of the header
+	 */
+	public String getHeaderName(int index) {
+		return this.headers.get(index).getKey();
+	}
+
+	/**
+	 * @param index the index of a header, in the order it was added
+	 * @return the sanitized value of the header, or null if a nonce is 
+	 * spliced into it, see {@link #getNonceTemplate(int)}
+	 */
+	public String getHeaderValue(int index) {
+		return this.headers.get(index).getValue();
+	}
+
+	/**
+	 * Get the template a header's nonce is spliced into, e.g. to render it 
+	 * into a framework's own header type
+	 * @param index the index of a header, in the order it was added
+	 * @return the sanitized template of the header, or null if its value is
+	 * static
+	 */
+	public CSPNonceTemplate getNonceTemplate(int index) {
+		if (index < 0 || index >= this.headers.size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.headers.size());
+		}
+		return this.templates == null ? null : this.templates[index];
+	}
+
+	/**
+	 * @return the number of headers captured by this snapshot
+	 */
+	public int size() {
+		return this.headers.size();
+	}
+
+	private void checkNoNonceRequired() {
+		if (this.templates != null) {
+			throw new IllegalStateException("These headers contain nonce slots, a nonce must be supplied");
+		}
+	}
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+
+import tophersmith.security.headers.csp.CSPNonceTemplate;
+import tophersmith.security.headers.util.Hpack;
+
+/**
+ * HpackHeaderBlock is a {@link CompiledSecurityHeaders} snapshot encoded as
+ * HPACK (RFC 7541) header field representations for HTTP/2, see 
+ * {@link CompiledSecurityHeaders#getHpackBlock()}. Names are lower case and
+ * strings are Huffman encoded whenever that is shorter.
+ * <br><br>
+ * Every representation is stateless, so the bytes can be written on any 
+ * stream of any connection, whatever the state of its dynamic table. Headers
+ * without a nonce are the same on every stream, so they are encoded once as 
+ * literals without indexing. A CSP header with nonce slots changes on every
+ * response, so it is encoded per call as a never-indexed literal, which also
+ * keeps the nonce out of any intermediary's table. Only the nonce header's 
+ * value is encoded per call; its name is pre-encoded.
+ * <br><br>
+ * An HTTP/2 encoder that tracks the peer's dynamic table can do better by 
+ * indexing the stable headers itself, see {@link Field#isIndexable()}. 
+ * Instances are safe to share between threads.
+ *
+ * @author Chris Smith
+ *
+ */
+public final class HpackHeaderBlock {
+
+	/**
+	 * One encoded header field
+	 */
+	public static final class Field {
+		private final String name;
+		private final String value;
+		private final byte[] encoded;
+
+		private Field(String name, String value, byte[] encoded) {
+			this.name = name;
+			this.value = value;
+			this.encoded = encoded;
+		}
+
+		/**
+		 * @return the lower case header name
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * @return the header value, or null if a nonce is spliced into it
+		 */
+		public String getValue() {
+			return this.value;
+		}
+
+		/**
+		 * is this field the same on every response, so that an encoder which
+		 * tracks the peer's dynamic table may send it with incremental 
+		 * indexing and reference it on later streams, as long as 
+		 * {@link #getEntrySize()} fits the table size the peer advertised. 
+		 * The pre-encoded bytes never index it.
+		 * @return true if this field may be added to the dynamic table
+		 */
+		public boolean isIndexable() {
+			return this.value != null;
+		}
+
+		/**
+		 * is this field encoded as a never-indexed literal because its value
+		 * holds the per-response nonce
+		 * @return true if this field must never be indexed
+		 */
+		public boolean isNeverIndexed() {
+			return this.value == null;
+		}
+
+		/**
+		 * @return the size this field takes in a dynamic table, in octets, 
+		 * or -1 if it holds a nonce
+		 */
+		public int getEntrySize() {
+			return this.value == null ? -1 : this.name.length() + this.value.length() + Hpack.ENTRY_OVERHEAD;
+		}
+
+		/**
+		 * Get the pre-encoded representation of this field. The buffer 
+		 * shares the cached bytes and is read-only.
+		 * @return a read-only buffer of the encoded field
+		 * @throws IllegalStateException if a nonce is spliced into this field
+		 */
+		public ByteBuffer getEncoded() {
+			if (this.encoded == null) {
+				throw new IllegalStateException("This field contains nonce slots, it is encoded per response");
+			}
+			return ByteBuffer.wrap(this.encoded).asReadOnlyBuffer();
+		}
+	}
+
+	private final List<Field> fields;
+	private final byte[][] chunks; // the pre-encoded fields around each nonce field
+	private final byte[][] noncePrefixes; // the representation and name of each nonce field
+	private final String[][] nonceSegments; // the value of each nonce field around its slots
+	private final int fixedLength;
+
+	/**
+	 * Encode the fields of a snapshot
+	 * @param headers the sanitized header names and values, with a null 
+	 * value for each header that has a template
+	 * @param templates the sanitized nonce template of each header, or null
+	 */
+	HpackHeaderBlock(List<Entry<String, String>> headers, CSPNonceTemplate[] templates) {
+		List<Field> list = new ArrayList<Field>(headers.size());
+		List<byte[]> chunkList = new ArrayList<byte[]>();
+		List<byte[]> prefixList = new ArrayList<byte[]>();
+		List<String[]> segmentList = new ArrayList<String[]>();
+		List<byte[]> pending = new ArrayList<byte[]>();
+		for (int i = 0; i < headers.size(); i++) {
+			String name = headers.get(i).getKey().toLowerCase(Locale.ENGLISH);
+			CSPNonceTemplate template = templates == null ? null : templates[i];
+			if (template != null) {
+				list.add(new Field(name, null, null));
+				chunkList.add(concat(pending));
+				pending.clear();
+				prefixList.add(encodeName(0x10, 4, name));
+				segmentList.add(template.getSegments().toArray(new String[0]));
+			} else {
+				String value = headers.get(i).getValue();
+				byte[] encoded = encodeValue(encodeName(0x00, 4, name), value);
+				list.add(new Field(name, value, encoded));
+				pending.add(encoded);
+			}
+		}
+		chunkList.add(concat(pending));
+		this.fields = Collections.unmodifiableList(list);
+		this.chunks = chunkList.toArray(new byte[chunkList.size()][]);
+		this.noncePrefixes = prefixList.toArray(new byte[prefixList.size()][]);
+		this.nonceSegments = segmentList.toArray(new String[segmentList.size()][]);
+		int length = 0;
+		for (int i = 0; i < this.chunks.length; i++) {
+			length += this.chunks[i].length;
+		}
+		for (int i = 0; i < this.noncePrefixes.length; i++) {
+			length += this.noncePrefixes[i].length;
+		}
+		this.fixedLength = length;
+	}
+
+	/**
+	 * encode the first octet of a literal representation and its name, 
+	 * indexed from the static table if it is there
+	 */
+	private static byte[] encodeName(int flags, int prefixBits, String name) {
+		int index = Hpack.staticNameIndex(name);
+		ByteBuffer buffer = ByteBuffer.allocate(Hpack.integerLength(index, prefixBits) + 
+				(index == 0 ? Hpack.stringLength(name) : 0));
+		Hpack.writeInteger(buffer, flags, prefixBits, index);
+		if (index == 0) {
+			Hpack.writeString(buffer, name);
+		}
+		return buffer.array();
+	}
+
+	private static byte[] encodeValue(byte[] prefix, String value) {
+		ByteBuffer buffer = ByteBuffer.allocate(prefix.length + Hpack.stringLength(value));
+		buffer.put(prefix);
+		Hpack.writeString(buffer, value);
+		return buffer.array();
+	}
+
+	private static byte[] concat(List<byte[]> arrays) {
+		int length = 0;
+		for (int i = 0; i < arrays.size(); i++) {
+			length += arrays.get(i).length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		for (int i = 0; i < arrays.size(); i++) {
+			buffer.put(arrays.get(i));
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * @return every field of this block, in order
+	 */
+	public List<Field> getFields() {
+		return this.fields;
+	}
+
+	/**
+	 * does any field in this block need a per-response nonce
+	 * @return true if the block must be written with a nonce
+	 */
+	public boolean requiresNonce() {
+		return this.noncePrefixes.length > 0;
+	}
+
+	/**
+	 * Get the encoded block, so that it can be written with a single put. 
+	 * The buffer shares the cached bytes and is read-only.
+	 * @return a read-only buffer of every encoded field
+	 * @throws IllegalStateException if this block requires a nonce
+	 */
+	public ByteBuffer getEncoded() {
+		checkNoNonceRequired();
+		return ByteBuffer.wrap(this.chunks[0]).asReadOnlyBuffer();
+	}
+
+	/**
+	 * compute the exact length of the encoded block
+	 * @param nonce the nonce that will be spliced in, ignored if no field 
+	 * needs a nonce
+	 * @return the number of octets {@link #writeTo(ByteBuffer, CharSequence)} 
+	 * writes
+	 * @throws IllegalArgumentException if a nonce is required but is not base64
+	 */
+	public int getEncodedLength(CharSequence nonce) {
+		if (!requiresNonce()) {
+			return this.fixedLength;
+		}
+		CSPNonceTemplate.checkNonce(nonce);
+		int length = this.fixedLength;
+		for (int i = 0; i < this.nonceSegments.length; i++) {
+			length += Hpack.stringLength(value(this.nonceSegments[i], nonce));
+		}
+		return length;
+	}
+
+	/**
+	 * Write every field of this block
+	 * @param dst the buffer to write into, at its position
+	 * @throws IllegalStateException if this block requires a nonce
+	 * @throws BufferOverflowException if dst has too little space, in which 
+	 * case nothing is written
+	 */
+	public void writeTo(ByteBuffer dst) {
+		checkNoNonceRequired();
+		writeTo(dst, null);
+	}
+
+	/**
+	 * Write every field of this block, splicing the given nonce into any 
+	 * field with nonce slots. If no field needs a nonce the nonce is ignored.
+	 * @param dst the buffer to write into, at its position
+	 * @param nonce the nonce for this response
+	 * @throws IllegalArgumentException if a nonce is required but is not base64
+	 * @throws BufferOverflowException if dst has too little space, in which 
+	 * case nothing is written
+	 */
+	public void writeTo(ByteBuffer dst, CharSequence nonce) {
+		if (!requiresNonce()) {
+			if (dst.remaining() < this.fixedLength) {
+				throw new BufferOverflowException();
+			}
+			dst.put(this.chunks[0]);
+			return;
+		}
+		CSPNonceTemplate.checkNonce(nonce);
+		CharSequence[][] values = new CharSequence[this.nonceSegments.length][];
+		int length = this.fixedLength;
+		for (int i = 0; i < values.length; i++) {
+			values[i] = value(this.nonceSegments[i], nonce);
+			length += Hpack.stringLength(values[i]);
+		}
+		if (dst.remaining() < length) {
+			throw new BufferOverflowException();
+		}
+		for (int i = 0; i < this.chunks.length; i++) {
+			dst.put(this.chunks[i]);
+			if (i < values.length) {
+				dst.put(this.noncePrefixes[i]);
+				Hpack.writeString(dst, values[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return the segments of a value with the nonce between each pair
+	 */
+	private static CharSequence[] value(String[] segments, CharSequence nonce) {
+		CharSequence[] parts = new CharSequence[segments.length * 2 - 1];
+		for (int i = 0; i < segments.length; i++) {
+			if (i > 0) {
+				parts[i * 2 - 1] = nonce;
+			}
+			parts[i * 2] = segments[i];
+		}
+		return parts;
+	}
+
+	private void checkNoNonceRequired() {
+		if (requiresNonce()) {
+			throw new IllegalStateException("These headers contain nonce slots, a nonce must be supplied");
+		}
+	}
+}
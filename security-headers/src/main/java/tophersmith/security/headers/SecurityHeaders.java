@@ -21,6 +21,7 @@ import java.util.List;
 import java.util.Map.Entry;
 
 import tophersmith.security.headers.impl.AbstractHeader;
+import tophersmith.security.headers.util.HeaderSanitizer;
 import tophersmith.security.headers.util.InvalidHeaderException;
 
 /**
@@ -41,7 +42,6 @@ import tophersmith.security.headers.util.InvalidHeaderException;
 public class SecurityHeaders {
 
 	private final List<AbstractHeader> headers;
-	private static final Character[] ILLEGAL_CHARS = new Character[] { '\r', '\n' };
 
 	public SecurityHeaders() {
 		this.headers = new ArrayList<AbstractHeader>();
@@ -114,37 +114,30 @@ public class SecurityHeaders {
 	}
 
 	/**
-	 * a helper method to see if a given target character is in an array of 
-	 * characters
+	 * Build every attached header once and freeze the results into an 
+	 * immutable snapshot that can be shared between requests and threads.
+	 * Headers added or changed after this call are not reflected in the 
+	 * returned snapshot.
+	 * 
+	 * @return an immutable snapshot of the current header names and values
 	 */
-	private static boolean charContains(char target, Character... test) {
-		for (int i = 0; i < test.length; i++) {
-			if (test[i].equals(target)) {
-				return true;
-			}
-		}
-		return false;
+	public CompiledSecurityHeaders compile() {
+		return new CompiledSecurityHeaders(this.headers);
 	}
 
 	/**
-	 * given a String and an array of characters to remove from the String,
-	 * return a String with the specified characters removed
+	 * @return the attached headers, in the order they were added
 	 */
-	private static String remove(String text, Character... characters) {
-		StringBuilder sb = new StringBuilder(text.length());
-		for (int i = 0; i < text.length(); i++) {
-			char c = text.charAt(i);
-			if (!charContains(c, characters)) {
-				sb.append(c);
-			}
-		}
-		return sb.toString();
+	List<AbstractHeader> getHeaders() {
+		return this.headers;
 	}
 
 	/**
-	 * removes Illegal header characters from the supplied String data 
+	 * removes Illegal header characters from the supplied String data, 
+	 * returning data itself when it holds none
+	 * @see HeaderSanitizer#sanitize(String)
 	 */
-	private static String sanitizeHeaderData(String data) {
-		return remove(data, SecurityHeaders.ILLEGAL_CHARS);
+	static String sanitizeHeaderData(String data) {
+		return HeaderSanitizer.sanitize(data);
 	}
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.csp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import tophersmith.security.headers.util.HeaderSanitizer;
+
+/**
+ * A CSPNonceTemplate is a pre-built Content Security Policy with reserved
+ * slots where a per-response nonce is spliced in. The policy text around the
+ * slots is built once, so rendering a response's policy is a single copy of
+ * the fixed segments and the nonce into an exactly sized buffer.
+ * <br><br>
+ * A template holds <i>n + 1</i> segments for <i>n</i> nonce slots. The same
+ * nonce is written into every slot, which lets script-src and style-src share
+ * one nonce per response. Templates are immutable and safe to share between
+ * threads.
+ * <br><br>
+ * Example:<br>
+ * <code>
+ * CSPNonceTemplate template = policy.buildNonceTemplate();<br>
+ * String nonce = ScriptSrcDirective.generateNonce(12);<br>
+ * String value = template.render(nonce);
+ * </code>
+ *
+ * @author Chris Smith
+ *
+ */
+public final class CSPNonceTemplate {
+
+	private final char[][] segments;
+	private final int segmentsLength;
+	private final boolean clean; // no segment holds a CR or LF
+
+	/**
+	 * Construct a template from the fixed text between nonce slots
+	 * @param segments the text around the slots; a nonce slot lies between
+	 * each pair of consecutive segments
+	 */
+	public CSPNonceTemplate(List<String> segments) {
+		if (segments == null || segments.isEmpty()) {
+			throw new IllegalArgumentException("A template requires at least one segment");
+		}
+		this.segments = new char[segments.size()][];
+		int length = 0;
+		boolean noneIllegal = true;
+		for (int i = 0; i < this.segments.length; i++) {
+			String segment = segments.get(i);
+			noneIllegal = noneIllegal && HeaderSanitizer.isClean(segment);
+			this.segments[i] = segment.toCharArray();
+			length += this.segments[i].length;
+		}
+		this.segmentsLength = length;
+		this.clean = noneIllegal;
+	}
+
+	/**
+	 * @return the number of nonce slots in this template
+	 */
+	public int getSlotCount() {
+		return this.segments.length - 1;
+	}
+
+	/**
+	 * @return true if this template has at least one nonce slot
+	 */
+	public boolean hasNonceSlots() {
+		return this.segments.length > 1;
+	}
+
+	/**
+	 * is this template known to render a valid header value; checked once 
+	 * when the template is built, since nonces cannot hold CR or LF either
+	 * @return true if no segment holds a carriage return or line feed
+	 */
+	public boolean isClean() {
+		return this.clean;
+	}
+
+	/**
+	 * get the fixed text of this template
+	 * @return an unmodifiable list of the segments around the nonce slots
+	 */
+	public List<String> getSegments() {
+		List<String> list = new ArrayList<String>(this.segments.length);
+		for (int i = 0; i < this.segments.length; i++) {
+			list.add(new String(this.segments[i]));
+		}
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * compute the exact length of a rendered policy
+	 * @param nonceLength the length of the nonce that will be spliced in
+	 * @return the number of characters {@link #render(CharSequence)} produces
+	 */
+	public int getRenderedLength(int nonceLength) {
+		return this.segmentsLength + getSlotCount() * nonceLength;
+	}
+
+	/**
+	 * Splice the nonce into every slot of this template
+	 * @param nonce a base64 value, e.g. from
+	 * {@link tophersmith.security.headers.csp.directives.AbstractUnsafeDirective#generateNonce(int)}
+	 * @return the complete policy for this response
+	 * @throws IllegalArgumentException if the nonce is empty or not base64
+	 */
+	public String render(CharSequence nonce) {
+		int nonceLength = checkNonce(nonce);
+		char[] out = new char[getRenderedLength(nonceLength)];
+		copySegments(out, 0, nonce, nonceLength);
+		return new String(out);
+	}
+
+	/**
+	 * Splice the nonce into every slot of this template, writing the result
+	 * into the given buffer
+	 * @param dst the buffer to write into
+	 * @param offset the index in dst to start writing at
+	 * @param nonce a base64 value, which may wrap a char[] filled by
+	 * {@link tophersmith.security.headers.util.Base64Util} to avoid a String
+	 * @return the number of characters written
+	 * @throws IllegalArgumentException if the nonce is empty or not base64
+	 * @throws IndexOutOfBoundsException if dst is too small, see
+	 * {@link #getRenderedLength(int)}
+	 */
+	public int renderTo(char[] dst, int offset, CharSequence nonce) {
+		return copySegments(dst, offset, nonce, checkNonce(nonce));
+	}
+
+	/**
+	 * copy every segment, and the nonce between them, into dst
+	 */
+	private int copySegments(char[] dst, int offset, CharSequence nonce, int nonceLength) {
+		int pos = offset;
+		for (int i = 0; i < this.segments.length; i++) {
+			if (i > 0) {
+				if (nonce instanceof String) {
+					((String) nonce).getChars(0, nonceLength, dst, pos);
+				} else {
+					for (int j = 0; j < nonceLength; j++) {
+						dst[pos + j] = nonce.charAt(j);
+					}
+				}
+				pos += nonceLength;
+			}
+			char[] segment = this.segments[i];
+			System.arraycopy(segment, 0, dst, pos, segment.length);
+			pos += segment.length;
+		}
+		return pos - offset;
+	}
+
+	/**
+	 * Splice the nonce into every slot of this template, appending the result
+	 * to the given builder
+	 * @param sb the builder to append to
+	 * @param nonce a base64 value
+	 * @return a reference to the builder
+	 * @throws IllegalArgumentException if the nonce is empty or not base64
+	 */
+	public StringBuilder renderTo(StringBuilder sb, CharSequence nonce) {
+		sb.ensureCapacity(sb.length() + getRenderedLength(checkNonce(nonce)));
+		for (int i = 0; i < this.segments.length; i++) {
+			if (i > 0) {
+				sb.append(nonce);
+			}
+			sb.append(this.segments[i]);
+		}
+		return sb;
+	}
+
+	/**
+	 * A nonce ends up inside a response header, so only the base64 alphabet
+	 * (standard or URL-safe) is allowed through
+	 * @param nonce the nonce to check
+	 * @return the length of the nonce
+	 * @throws IllegalArgumentException if the nonce is empty or not base64
+	 */
+	public static int checkNonce(CharSequence nonce) {
+		if (nonce == null || nonce.length() == 0) {
+			throw new IllegalArgumentException("A nonce value is required");
+		}
+		int length = nonce.length();
+		for (int i = 0; i < length; i++) {
+			char c = nonce.charAt(i);
+			if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') ||
+					c == '+' || c == '/' || c == '=' || c == '-' || c == '_')) {
+				throw new IllegalArgumentException("Nonce contains a non-base64 character at index " + i);
+			}
+		}
+		return length;
+	}
+}
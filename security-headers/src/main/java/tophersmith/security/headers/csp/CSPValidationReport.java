@@ -97,6 +97,15 @@ public class CSPValidationReport {
 		return Collections.unmodifiableList(this.errors);
 	}
 
+	/**
+	 * copy every error and warning of another report into this one
+	 * @param other the report to copy from
+	 */
+	void addAll(CSPValidationReport other) {
+		this.errors.addAll(other.errors);
+		this.warnings.addAll(other.warnings);
+	}
+
 	/**
 	 * remove all errors and warnings from this report so that the report
 	 * may be run again
@@ -15,13 +15,16 @@
  */
 package tophersmith.security.headers.csp;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import tophersmith.security.headers.csp.directives.AbstractCSPDirective;
+import tophersmith.security.headers.csp.directives.AbstractUnsafeDirective;
 
 /**
  * A Content Security Policy defines several directives that indicate from 
@@ -47,9 +50,21 @@ import tophersmith.security.headers.csp.directives.AbstractCSPDirective;
  */
 public class ContentSecurityPolicy {
 
-	private final Map<String, AbstractCSPDirective> directiveMap;
+	/**
+	 * directives that fall back to default-src and nothing else when they are
+	 * absent; child-src and frame-src have longer chains, see 
+	 * {@link #removeDefaultFallbacks()}
+	 */
+	private static final DirectiveType[] DEFAULT_SRC_FALLBACKS = {
+		DirectiveType.CONNECT_SRC, DirectiveType.FONT_SRC, 
+		DirectiveType.IMG_SRC, DirectiveType.MEDIA_SRC, DirectiveType.OBJECT_SRC, 
+		DirectiveType.SCRIPT_SRC, DirectiveType.STYLE_SRC };
+
+	private final AtomicReferenceArray<AbstractCSPDirective> knownDirectives; // by DirectiveType ordinal
+	private final ConcurrentSkipListMap<String, AbstractCSPDirective> otherDirectives;
 	private final CSPValidationReport validationReport;
 	private final PolicyLevel level;
+	private volatile FrozenPolicy frozen = null;
 	
 	/**
 	 * Creates a new ContentSecurityPolicy with a PolicyLevel of CSPv2
@@ -63,7 +78,8 @@ public class ContentSecurityPolicy {
 	 * @param level a PolicyLevel to validate against
 	 */
 	public ContentSecurityPolicy(PolicyLevel level) {
-		this.directiveMap = new ConcurrentHashMap<String, AbstractCSPDirective>();
+		this.knownDirectives = new AtomicReferenceArray<AbstractCSPDirective>(DirectiveType.values().length);
+		this.otherDirectives = new ConcurrentSkipListMap<String, AbstractCSPDirective>();
 		this.validationReport = new CSPValidationReport();
 		this.level = level;
 	}
@@ -75,7 +91,13 @@ public class ContentSecurityPolicy {
 	 * @return a reference to this object
 	 */
 	public ContentSecurityPolicy addDirective(AbstractCSPDirective directive) {
-		this.directiveMap.put(directive.getDirectiveName(), directive);
+		checkNotFrozen();
+		DirectiveType type = directive.getDirectiveType();
+		if (type != null) {
+			this.knownDirectives.set(type.ordinal(), directive);
+		} else {
+			this.otherDirectives.put(directive.getDirectiveName(), directive);
+		}
 		return this;
 	}
 
@@ -86,48 +108,171 @@ public class ContentSecurityPolicy {
 	 */
 	public AbstractCSPDirective getDirective(String directiveName){
 		AbstractCSPDirective dir = null;
-		if(directiveName != null && this.directiveMap.containsKey(directiveName)){
-			dir = this.directiveMap.get(directiveName);
+		DirectiveType type = DirectiveType.fromName(directiveName);
+		if(type != null){
+			dir = this.knownDirectives.get(type.ordinal());
+		} else if(directiveName != null){
+			dir = this.otherDirectives.get(directiveName);
 		}
 		return dir;
 	}
+
+	/**
+	 * the directives of this policy in canonical order, see {@link DirectiveType}
+	 */
+	private List<AbstractCSPDirective> orderedDirectives() {
+		List<AbstractCSPDirective> ordered = new ArrayList<AbstractCSPDirective>(
+				this.knownDirectives.length() + this.otherDirectives.size());
+		for (int i = 0; i < this.knownDirectives.length(); i++) {
+			AbstractCSPDirective directive = this.knownDirectives.get(i);
+			if (directive != null) {
+				ordered.add(directive);
+			}
+		}
+		ordered.addAll(this.otherDirectives.values());
+		return ordered;
+	}
 	
 	/**
 	 * Attempts to reduce a policy to its most compressed version. This
 	 * transformation occurs in place, therefore post-compression some data 
-	 * may be lost
+	 * may be lost. A frozen policy is already reduced and is left as is.
 	 * @return a reference to this object
 	 */
 	public ContentSecurityPolicy reduce() {
-		for (Entry<String, AbstractCSPDirective> entry  : this.directiveMap.entrySet()) {
-			AbstractCSPDirective directive = entry.getValue();
+		if (this.frozen != null) {
+			return this;
+		}
+		for (AbstractCSPDirective directive : orderedDirectives()) {
 			directive.removeInternalDuplicates();
 		}
 		removeEmptyDirectives();
 		return this;
 	}
 	
+	/**
+	 * Minimize this policy to a shorter policy that allows exactly the same
+	 * content. Beyond {@link #reduce()}, this removes sources made redundant
+	 * by another source of the same directive (see 
+	 * {@link tophersmith.security.headers.util.SourceListMinimizer}), and 
+	 * fetch directives holding the same sources as the default-src they 
+	 * would fall back to. This transformation occurs in place. A frozen 
+	 * policy is left as is, so minimize before {@link #freeze()}.
+	 * @return a reference to this object
+	 */
+	public ContentSecurityPolicy minimize() {
+		if (this.frozen != null) {
+			return this;
+		}
+		for (AbstractCSPDirective directive : orderedDirectives()) {
+			directive.minimizeValues();
+		}
+		removeEmptyDirectives();
+		removeDefaultFallbacks();
+		return this;
+	}
+
+	/**
+	 * removes fetch directives that match default-src. In CSP3 worker-src 
+	 * falls back to child-src, then script-src, so child-src is only removed
+	 * when script-src is absent or matches default-src as well. frame-src 
+	 * falls back to child-src in CSP2 and to default-src in CSP1, so it is 
+	 * only removed when child-src is absent or matches default-src as well.
+	 */
+	private void removeDefaultFallbacks() {
+		AbstractCSPDirective defaultSrc = this.knownDirectives.get(DirectiveType.DEFAULT_SRC.ordinal());
+		if (defaultSrc == null) {
+			return;
+		}
+		AbstractCSPDirective scriptSrc = this.knownDirectives.get(DirectiveType.SCRIPT_SRC.ordinal());
+		boolean workersFallBack = scriptSrc == null || isDefaultFallback(scriptSrc, defaultSrc);
+		AbstractCSPDirective childSrc = this.knownDirectives.get(DirectiveType.CHILD_SRC.ordinal());
+		boolean framesFallBack = childSrc == null || isDefaultFallback(childSrc, defaultSrc);
+		for (int i = 0; i < DEFAULT_SRC_FALLBACKS.length; i++) {
+			int index = DEFAULT_SRC_FALLBACKS[i].ordinal();
+			AbstractCSPDirective directive = this.knownDirectives.get(index);
+			if (directive != null && isDefaultFallback(directive, defaultSrc)) {
+				this.knownDirectives.compareAndSet(index, directive, null);
+			}
+		}
+		if (workersFallBack && childSrc != null && isDefaultFallback(childSrc, defaultSrc)) {
+			this.knownDirectives.compareAndSet(DirectiveType.CHILD_SRC.ordinal(), childSrc, null);
+		}
+		AbstractCSPDirective frameSrc = this.knownDirectives.get(DirectiveType.FRAME_SRC.ordinal());
+		if (framesFallBack && frameSrc != null && isDefaultFallback(frameSrc, defaultSrc)) {
+			this.knownDirectives.compareAndSet(DirectiveType.FRAME_SRC.ordinal(), frameSrc, null);
+		}
+	}
+
+	/**
+	 * a directive with nonces is kept, since its nonces are replaced per 
+	 * response by {@link #buildNonceTemplate()}
+	 */
+	private static boolean isDefaultFallback(AbstractCSPDirective directive, AbstractCSPDirective defaultSrc) {
+		if (directive instanceof AbstractUnsafeDirective && ((AbstractUnsafeDirective) directive).hasNonces()) {
+			return false;
+		}
+		return directive.hasSameValues(defaultSrc);
+	}
+
 	/**
 	 * searches all directives for any that do not define values and removes
 	 * them from this policy
 	 */
 	private void removeEmptyDirectives() {
-		Iterator<Entry<String,AbstractCSPDirective>> iter = this.directiveMap.entrySet().iterator();
+		for (int i = 0; i < this.knownDirectives.length(); i++) {
+			AbstractCSPDirective directive = this.knownDirectives.get(i);
+			if(directive != null && directive.isEmpty()){
+				this.knownDirectives.compareAndSet(i, directive, null);
+			}
+		}
+		Iterator<AbstractCSPDirective> iter = this.otherDirectives.values().iterator();
 		while (iter.hasNext()) {
-			Entry<String,AbstractCSPDirective> entry = iter.next();
-			AbstractCSPDirective directive = entry.getValue();
-			if(directive.getDirectiveValues().size() == 0){
-				this.directiveMap.remove(directive.getDirectiveName());
+			if(iter.next().isEmpty()){
+				iter.remove();
 			}
 		}
 	}
 
+	/**
+	 * Reduce this policy once, then render and validate it once and keep the
+	 * results. Afterwards the policy can no longer be changed, and 
+	 * {@link #build()}, {@link #buildNonceTemplate()} and validation only 
+	 * return the kept results, so a frozen policy may be rendered from any 
+	 * number of threads at once without locking. Freeze a policy before 
+	 * sharing it. Changes made to its directives afterwards are ignored.
+	 * @return a reference to this object
+	 */
+	public ContentSecurityPolicy freeze() {
+		if (this.frozen == null) {
+			reduce();
+			this.frozen = new FrozenPolicy(buildPolicy(), buildTemplate(), 
+					this.level, validateLevels(PolicyLevel.values()));
+		}
+		return this;
+	}
+
+	/**
+	 * @return true if {@link #freeze()} has been called on this policy
+	 */
+	public boolean isFrozen() {
+		return this.frozen != null;
+	}
+
+	private void checkNotFrozen() {
+		if (this.frozen != null) {
+			throw new IllegalStateException("A frozen ContentSecurityPolicy cannot be changed");
+		}
+	}
+
 	/**
 	 * clears the validation report attached to this policy so that validation
-	 * may be re-run
+	 * may be re-run. A frozen policy keeps the report made when it was frozen.
 	 */
 	public void resetValidationReport() {
-		this.validationReport.reset();
+		if (this.frozen == null) {
+			this.validationReport.reset();
+		}
 	}
 
 	/**
@@ -137,18 +282,99 @@ public class ContentSecurityPolicy {
 	 * @return true if no validation <u>errors</u> occurred.
 	 */
 	public boolean isValid() {
-		for (Entry<String, AbstractCSPDirective> entry  : this.directiveMap.entrySet()) {
-			String key = entry.getKey();
-			AbstractCSPDirective directive = entry.getValue();
-			directive.validateAndReport(this.validationReport);
-			if(!this.level.isDefined(directive)){
-				this.validationReport.addWarning(directive, this.level.name() + " does not define directive " + key);			
+		FrozenPolicy frozenPolicy = this.frozen;
+		if (frozenPolicy != null) {
+			return frozenPolicy.report.isErrorsEmpty();
+		}
+		validateInto(this.validationReport);
+		return this.validationReport.isErrorsEmpty();
+	}
+
+	/**
+	 * Validate each directive defined on this policy into a new report. 
+	 * Unlike {@link #isValid()}, the report attached to this policy is left
+	 * untouched, so several threads may validate the same policy at once.
+	 * @return a new report holding any validation issues discovered
+	 */
+	public CSPValidationReport validate() {
+		CSPValidationReport report = new CSPValidationReport();
+		FrozenPolicy frozenPolicy = this.frozen;
+		if (frozenPolicy != null) {
+			report.addAll(frozenPolicy.report);
+		} else {
+			validateInto(report);
+		}
+		return report;
+	}
+
+	/**
+	 * Validate this policy against several policy levels at once, e.g. to 
+	 * see whether it may also be sent to CSP1 browsers. Each directive is 
+	 * validated once, and only the level checks are repeated per level. The
+	 * level this policy was created with is not used.
+	 * @param levels the levels to validate against
+	 * @return a new report for each given level
+	 */
+	public Map<PolicyLevel, CSPValidationReport> validate(PolicyLevel... levels) {
+		if (levels == null) {
+			throw new IllegalArgumentException("levels must be set");
+		}
+		FrozenPolicy frozenPolicy = this.frozen;
+		if (frozenPolicy == null) {
+			return validateLevels(levels);
+		}
+		Map<PolicyLevel, CSPValidationReport> reports = new EnumMap<PolicyLevel, CSPValidationReport>(PolicyLevel.class);
+		for (int i = 0; i < levels.length; i++) {
+			CSPValidationReport report = new CSPValidationReport();
+			report.addAll(frozenPolicy.reports.get(levels[i]));
+			reports.put(levels[i], report);
+		}
+		return reports;
+	}
+
+	private Map<PolicyLevel, CSPValidationReport> validateLevels(PolicyLevel... levels) {
+		Map<PolicyLevel, CSPValidationReport> reports = new EnumMap<PolicyLevel, CSPValidationReport>(PolicyLevel.class);
+		for (int i = 0; i < levels.length; i++) {
+			reports.put(levels[i], new CSPValidationReport());
+		}
+		validateInto(reports.keySet().toArray(new PolicyLevel[reports.size()]), 
+				reports.values().toArray(new CSPValidationReport[reports.size()]));
+		return reports;
+	}
+
+	private void validateInto(CSPValidationReport report) {
+		validateInto(new PolicyLevel[]{this.level}, new CSPValidationReport[]{report});
+	}
+
+	/**
+	 * validate each directive once, copying its issues into the report of 
+	 * every level before adding that level's own warnings
+	 */
+	private void validateInto(PolicyLevel[] levels, CSPValidationReport[] reports) {
+		if (levels.length == 0) {
+			return;
+		}
+		CSPValidationReport directiveReport = levels.length == 1 ? reports[0] : new CSPValidationReport();
+		for (AbstractCSPDirective directive : orderedDirectives()) {
+			String key = directive.getDirectiveName();
+			if (directiveReport != reports[0]) {
+				directiveReport.reset();
 			}
-			if(this.level.isDeprecated(directive)){
-				this.validationReport.addWarning(directive, this.level.name() + " has deprecated directive " + key);
+			directive.validateAndReport(directiveReport);
+			for (int i = 0; i < levels.length; i++) {
+				PolicyLevel level = levels[i];
+				CSPValidationReport report = reports[i];
+				if (report != directiveReport) {
+					report.addAll(directiveReport);
+				}
+				if(!level.isDefined(directive)){
+					report.addWarning(directive, level.name() + " does not define directive " + key);			
+				}
+				if(level.isDeprecated(directive)){
+					report.addWarning(directive, level.name() + " has deprecated directive " + key);
+				}
 			}
 		}
-		return this.validationReport.isErrorsEmpty();
 	}
 
 	/**
@@ -156,6 +382,10 @@ public class ContentSecurityPolicy {
 	 * @return a List of errors encountered during validation
 	 */
 	public List<String> getValidationErrorReports() {
+		FrozenPolicy frozenPolicy = this.frozen;
+		if (frozenPolicy != null) {
+			return frozenPolicy.report.getErrorReports();
+		}
 		return this.validationReport.getErrorReports();
 	}
 	
@@ -164,19 +394,30 @@ public class ContentSecurityPolicy {
 	 * @return a List of warnings encountered during validation
 	 */
 	public List<String> getValidationWarningReports(){
+		FrozenPolicy frozenPolicy = this.frozen;
+		if (frozenPolicy != null) {
+			return frozenPolicy.report.getWarningReports();
+		}
 		return this.validationReport.getWarningReports();
 	}
 
 	/**
 	 * Construct a String representation of the policy using the defined
-	 * CSP directives
+	 * CSP directives, in the canonical order of {@link DirectiveType}
 	 * @return a String representation of this policy
 	 */
 	public String build() {
+		FrozenPolicy frozenPolicy = this.frozen;
+		if (frozenPolicy != null) {
+			return frozenPolicy.value;
+		}
+		return buildPolicy();
+	}
+
+	private String buildPolicy() {
 		StringBuilder sb = new StringBuilder();
 		boolean first = true;
-		for (Entry<String, AbstractCSPDirective> entry  : this.directiveMap.entrySet()) {
-			AbstractCSPDirective directive = entry.getValue();
+		for (AbstractCSPDirective directive : orderedDirectives()) {
 			if(first){
 				first = false;
 			} else{
@@ -186,4 +427,62 @@ public class ContentSecurityPolicy {
 		}
 		return sb.toString();
 	}
+
+	/**
+	 * Construct a template of this policy with a nonce slot in place of the 
+	 * nonces of each directive that has any (script-src and style-src). The 
+	 * policy text is built once here; each response then only splices its 
+	 * nonce in with {@link CSPNonceTemplate#render(CharSequence)}. A policy without
+	 * nonces produces a template without slots that renders {@link #build()}.
+	 * @return a template of this policy
+	 */
+	public CSPNonceTemplate buildNonceTemplate() {
+		FrozenPolicy frozenPolicy = this.frozen;
+		if (frozenPolicy != null) {
+			return frozenPolicy.template;
+		}
+		return buildTemplate();
+	}
+
+	private CSPNonceTemplate buildTemplate() {
+		List<String> segments = new ArrayList<String>();
+		StringBuilder sb = new StringBuilder();
+		boolean first = true;
+		for (AbstractCSPDirective directive : orderedDirectives()) {
+			if(first){
+				first = false;
+			} else{
+				sb.append("; ");
+			}
+			if(directive instanceof AbstractUnsafeDirective && ((AbstractUnsafeDirective) directive).hasNonces()){
+				String[] split = ((AbstractUnsafeDirective) directive).buildNonceSegments();
+				sb.append(split[0]);
+				segments.add(sb.toString());
+				sb.setLength(0);
+				sb.append(split[1]);
+			} else{
+				sb.append(directive.buildDirective());
+			}
+		}
+		segments.add(sb.toString());
+		return new CSPNonceTemplate(segments);
+	}
+
+	/**
+	 * the results kept by {@link ContentSecurityPolicy#freeze()}
+	 */
+	private static final class FrozenPolicy {
+		private final String value;
+		private final CSPNonceTemplate template;
+		private final CSPValidationReport report;
+		private final Map<PolicyLevel, CSPValidationReport> reports;
+
+		FrozenPolicy(String value, CSPNonceTemplate template, PolicyLevel level, 
+				Map<PolicyLevel, CSPValidationReport> reports) {
+			this.value = value;
+			this.template = template;
+			this.report = reports.get(level);
+			this.reports = reports;
+		}
+	}
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.csp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import tophersmith.security.headers.csp.directives.impl.BaseUriDirective;
+import tophersmith.security.headers.csp.directives.impl.ChildSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.ConnectSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.DefaultSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.FontSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.FormActionDirective;
+import tophersmith.security.headers.csp.directives.impl.FrameAncestorsDirective;
+import tophersmith.security.headers.csp.directives.impl.FrameSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.ImgSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.MediaSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.ObjectSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.PluginTypesDirective;
+import tophersmith.security.headers.csp.directives.impl.ReportUriDirective;
+import tophersmith.security.headers.csp.directives.impl.SandboxDirective;
+import tophersmith.security.headers.csp.directives.impl.ScriptSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.StyleSrcDirective;
+
+/**
+ * The known CSP directives, declared in the canonical order in which a 
+ * {@link ContentSecurityPolicy} builds them: default-src first, the 
+ * remaining directives by name, and report-uri last. Directives without a
+ * type, such as experimental ones, are built after all known directives, 
+ * ordered by name. This makes the built policy identical for identical
+ * directives on every JVM.
+ * 
+ * @author Chris Smith
+ *
+ */
+public enum DirectiveType {
+	/**
+	 * default-src
+	 */
+	DEFAULT_SRC(DefaultSrcDirective.NAME),
+	/**
+	 * base-uri
+	 */
+	BASE_URI(BaseUriDirective.NAME),
+	/**
+	 * child-src
+	 */
+	CHILD_SRC(ChildSrcDirective.NAME),
+	/**
+	 * connect-src
+	 */
+	CONNECT_SRC(ConnectSrcDirective.NAME),
+	/**
+	 * font-src
+	 */
+	FONT_SRC(FontSrcDirective.NAME),
+	/**
+	 * form-action
+	 */
+	FORM_ACTION(FormActionDirective.NAME),
+	/**
+	 * frame-ancestors
+	 */
+	FRAME_ANCESTORS(FrameAncestorsDirective.NAME),
+	/**
+	 * frame-src
+	 */
+	FRAME_SRC(FrameSrcDirective.NAME),
+	/**
+	 * img-src
+	 */
+	IMG_SRC(ImgSrcDirective.NAME),
+	/**
+	 * media-src
+	 */
+	MEDIA_SRC(MediaSrcDirective.NAME),
+	/**
+	 * object-src
+	 */
+	OBJECT_SRC(ObjectSrcDirective.NAME),
+	/**
+	 * plugin-types
+	 */
+	PLUGIN_TYPES(PluginTypesDirective.NAME),
+	/**
+	 * sandbox
+	 */
+	SANDBOX(SandboxDirective.NAME),
+	/**
+	 * script-src
+	 */
+	SCRIPT_SRC(ScriptSrcDirective.NAME),
+	/**
+	 * style-src
+	 */
+	STYLE_SRC(StyleSrcDirective.NAME),
+	/**
+	 * report-uri
+	 */
+	REPORT_URI(ReportUriDirective.NAME),
+	;
+
+	private static final Map<String, DirectiveType> BY_NAME = new HashMap<String, DirectiveType>();
+	static {
+		for (DirectiveType type : values()) {
+			BY_NAME.put(type.directiveName, type);
+		}
+	}
+
+	private final String directiveName;
+
+	private DirectiveType(String directiveName) {
+		this.directiveName = directiveName;
+	}
+
+	/**
+	 * @return the RFC-compliant directive name, e.g. default-src
+	 */
+	public String getDirectiveName() {
+		return this.directiveName;
+	}
+
+	/**
+	 * find the type of a directive by its name
+	 * @param directiveName a directive name, e.g. default-src
+	 * @return the matching type, or null if the directive is not a known one
+	 */
+	public static DirectiveType fromName(String directiveName) {
+		if (directiveName == null) {
+			return null;
+		}
+		return BY_NAME.get(directiveName);
+	}
+}
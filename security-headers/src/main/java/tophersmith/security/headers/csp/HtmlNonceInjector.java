@@ -0,0 +1,270 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.csp;
+
+/**
+ * HtmlNonceInjector is the tokenizer shared by {@link NonceInjectingWriter}
+ * and {@link NonceInjectingOutputStream}. It is fed one character at a time
+ * and reports where a nonce value belongs: inside the empty 
+ * <code>nonce=""</code> marker attribute of a script or style start tag. 
+ * Tags without the marker are left alone, as are comments, other markup 
+ * declarations and the raw text of script and style elements.
+ * <br><br>
+ * Attributes are tokenized as browsers do, so a quote only opens a value 
+ * directly after <code>=</code>, and a quote inside an unquoted value is 
+ * part of that value.
+ * <br><br>
+ * All state lives in this object, so input may be split anywhere, even 
+ * inside a tag name. Only ASCII is ever matched, which lets a byte stream in
+ * an ASCII-compatible encoding such as UTF-8 be fed byte by byte.
+ *
+ * @author Chris Smith
+ *
+ */
+final class HtmlNonceInjector {
+
+	private static final char[] SCRIPT = { 's', 'c', 'r', 'i', 'p', 't' };
+	private static final char[] STYLE = { 's', 't', 'y', 'l', 'e' };
+	private static final char[] NONCE = { 'n', 'o', 'n', 'c', 'e' };
+
+	private static final int TEXT = 0;
+	private static final int TAG_OPEN = 1; // after <
+	private static final int TAG_NAME = 2; // in the name of a start tag
+	private static final int BEFORE_ATTRIBUTE = 3; // between attributes, until >
+	private static final int ATTRIBUTE_NAME = 4;
+	private static final int AFTER_ATTRIBUTE_NAME = 5; // before = or the next attribute
+	private static final int BEFORE_VALUE = 6; // after =
+	private static final int QUOTED_VALUE = 7;
+	private static final int UNQUOTED_VALUE = 8;
+	private static final int AFTER_QUOTED_VALUE = 9;
+	private static final int BANG = 10; // after <!
+	private static final int BANG_DASH = 11; // after <!-
+	private static final int COMMENT = 12; // after <!--, until -->
+	private static final int BOGUS = 13; // in a declaration or end tag, until >
+	private static final int RAW_TEXT = 14; // in a script or style body
+
+	private int state = TEXT;
+	private int index; // characters of the tag name, or the closing tag, matched so far
+	private boolean script; // is the tag name so far a prefix of script
+	private boolean style; // is the tag name so far a prefix of style
+	private char[] rawText; // the element whose body follows the current tag
+	private int attributeIndex; // characters of the attribute name seen so far
+	private boolean nonceName; // is the attribute name so far a prefix of nonce
+	private boolean filled; // has this tag's marker been filled
+	private int valueLength;
+	private char quote;
+	private int dashes;
+	private long injected = 0;
+
+	/**
+	 * Advance past one character
+	 * @param c the next character of the document
+	 * @return true if the nonce value must be written before c
+	 */
+	boolean next(int c) {
+		switch (this.state) {
+		case TAG_OPEN:
+			if (c == '!') {
+				this.state = BANG;
+			} else if (c == '/') {
+				this.state = BOGUS;
+			} else if (isLetter(c)) {
+				this.state = TAG_NAME;
+				this.index = 0;
+				this.script = true;
+				this.style = true;
+				this.filled = false;
+				return name(c);
+			} else if (c != '<') {
+				this.state = TEXT;
+			}
+			return false;
+		case TAG_NAME:
+			return name(c);
+		case BEFORE_ATTRIBUTE:
+			if (c == '>') {
+				endTag();
+			} else if (!isSpace(c) && c != '/') {
+				startAttribute(c);
+			}
+			return false;
+		case ATTRIBUTE_NAME:
+			if (c == '=') {
+				this.state = BEFORE_VALUE;
+			} else if (c == '>' || c == '/' || isSpace(c)) {
+				this.state = AFTER_ATTRIBUTE_NAME;
+				return next(c);
+			} else {
+				this.nonceName = this.nonceName && this.attributeIndex < NONCE.length && 
+						NONCE[this.attributeIndex] == toLower(c);
+				this.attributeIndex++;
+			}
+			return false;
+		case AFTER_ATTRIBUTE_NAME:
+			if (c == '=') {
+				this.state = BEFORE_VALUE;
+			} else if (c == '>') {
+				endTag();
+			} else if (c == '/') {
+				this.state = BEFORE_ATTRIBUTE;
+			} else if (!isSpace(c)) {
+				startAttribute(c);
+			}
+			return false;
+		case BEFORE_VALUE:
+			if (c == '"' || c == '\'') {
+				this.state = QUOTED_VALUE;
+				this.quote = (char) c;
+				this.valueLength = 0;
+			} else if (c == '>') {
+				endTag();
+			} else if (!isSpace(c)) {
+				this.state = UNQUOTED_VALUE;
+			}
+			return false;
+		case QUOTED_VALUE:
+			if (c != this.quote) {
+				this.valueLength++;
+				return false;
+			}
+			this.state = AFTER_QUOTED_VALUE;
+			if (isMarker()) {
+				this.filled = true;
+				this.injected++;
+				return true;
+			}
+			return false;
+		case UNQUOTED_VALUE:
+			if (c == '>') {
+				endTag();
+			} else if (isSpace(c)) {
+				this.state = BEFORE_ATTRIBUTE;
+			}
+			return false;
+		case AFTER_QUOTED_VALUE:
+			this.state = BEFORE_ATTRIBUTE;
+			return next(c);
+		case BANG:
+			this.state = c == '-' ? BANG_DASH : c == '>' ? TEXT : BOGUS;
+			return false;
+		case BANG_DASH:
+			if (c == '-') {
+				this.state = COMMENT;
+				this.dashes = 0;
+			} else {
+				this.state = c == '>' ? TEXT : BOGUS;
+			}
+			return false;
+		case COMMENT:
+			if (c == '>' && this.dashes >= 2) {
+				this.state = TEXT;
+			}
+			this.dashes = c == '-' ? this.dashes + 1 : 0;
+			return false;
+		case BOGUS:
+			if (c == '>') {
+				this.state = TEXT;
+			}
+			return false;
+		case RAW_TEXT:
+			rawText(c);
+			return false;
+		default:
+			if (c == '<') {
+				this.state = TAG_OPEN;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * @return the number of nonce markers filled
+	 */
+	long getInjectedCount() {
+		return this.injected;
+	}
+
+	/**
+	 * match a start tag name against script and style
+	 */
+	private boolean name(int c) {
+		if (c == '>' || c == '/' || isSpace(c)) {
+			this.rawText = this.script && this.index == SCRIPT.length ? SCRIPT :
+					this.style && this.index == STYLE.length ? STYLE : null;
+			this.state = BEFORE_ATTRIBUTE;
+			return next(c);
+		}
+		int lower = toLower(c);
+		this.script = this.script && this.index < SCRIPT.length && SCRIPT[this.index] == lower;
+		this.style = this.style && this.index < STYLE.length && STYLE[this.index] == lower;
+		this.index++;
+		return false;
+	}
+
+	/**
+	 * begin an attribute name with its first character, which may be = 
+	 */
+	private void startAttribute(int c) {
+		this.state = ATTRIBUTE_NAME;
+		this.nonceName = NONCE[0] == toLower(c);
+		this.attributeIndex = 1;
+	}
+
+	/**
+	 * is the value just closed the first empty nonce attribute of a script 
+	 * or style tag
+	 */
+	private boolean isMarker() {
+		return this.rawText != null && !this.filled && this.valueLength == 0 && 
+				this.nonceName && this.attributeIndex == NONCE.length;
+	}
+
+	private void endTag() {
+		this.state = this.rawText == null ? TEXT : RAW_TEXT;
+		this.index = 0;
+	}
+	/**
+	 * look for the &lt;/name that ends a raw text body
+	 */
+	private void rawText(int c) {
+		if (this.index == 0) {
+			this.index = c == '<' ? 1 : 0;
+		} else if (this.index == 1) {
+			this.index = c == '/' ? 2 : c == '<' ? 1 : 0;
+		} else if (this.index - 2 < this.rawText.length) {
+			this.index = toLower(c) == this.rawText[this.index - 2] ? this.index + 1 : c == '<' ? 1 : 0;
+		} else if (c == '>' || c == '/' || isSpace(c)) {
+			// the end tag is skipped like any other
+			this.rawText = null;
+			this.state = BOGUS;
+			next(c);
+		} else {
+			this.index = c == '<' ? 1 : 0;
+		}
+	}
+
+	private static boolean isLetter(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isSpace(int c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+	}
+
+	private static int toLower(int c) {
+		return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.csp;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A NonceInjectingOutputStream fills in the empty <code>nonce=""</code> 
+ * markers of script and style start tags in an encoded HTML document as it 
+ * is written, exactly as {@link NonceInjectingWriter} does for characters.
+ * Tags are matched byte by byte, so the document must use an 
+ * ASCII-compatible encoding such as UTF-8 or ISO-8859-1. Nothing is buffered.
+ * <br><br>
+ * Warning: markers reflected from untrusted input are filled too, so such 
+ * input must still be escaped before it reaches this stream.
+ *
+ * @author Chris Smith
+ *
+ */
+public class NonceInjectingOutputStream extends FilterOutputStream {
+
+	private final HtmlNonceInjector injector = new HtmlNonceInjector();
+	private final byte[] nonce;
+
+	/**
+	 * Construct a stream that injects the given nonce
+	 * @param out the stream to write the document to
+	 * @param nonce a base64 value, e.g. from
+	 * {@link tophersmith.security.headers.csp.directives.AbstractUnsafeDirective#generateNonce(int)}
+	 * @throws IllegalArgumentException if the nonce is empty or not base64
+	 */
+	public NonceInjectingOutputStream(OutputStream out, String nonce) {
+		super(out);
+		CSPNonceTemplate.checkNonce(nonce);
+		this.nonce = new byte[nonce.length()];
+		for (int i = 0; i < this.nonce.length; i++) {
+			// base64 is all ASCII
+			this.nonce[i] = (byte) nonce.charAt(i);
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (this.injector.next(b & 0xff)) {
+			this.out.write(this.nonce);
+		}
+		this.out.write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		int start = off;
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			if (this.injector.next(b[i] & 0xff)) {
+				this.out.write(b, start, i - start);
+				this.out.write(this.nonce);
+				start = i;
+			}
+		}
+		this.out.write(b, start, end - start);
+	}
+
+	/**
+	 * @return the number of nonce markers filled
+	 */
+	public long getInjectedCount() {
+		return this.injector.getInjectedCount();
+	}
+}
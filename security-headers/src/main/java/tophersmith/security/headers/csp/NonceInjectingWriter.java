@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.csp;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A NonceInjectingWriter fills in the nonce of script and style start tags 
+ * as an HTML document is written. Only tags the page template marks with an
+ * empty nonce attribute are filled, e.g. 
+ * <code>&lt;script nonce="" src="app.js"&gt;</code> is written as 
+ * <code>&lt;script nonce="..." src="app.js"&gt;</code>, while 
+ * <code>&lt;script src="app.js"&gt;</code> is written unchanged. Nothing is
+ * buffered: text is passed straight through, and a tag split across several
+ * writes is still found.
+ * <br><br>
+ * The nonce should be the one placed in this response's Content Security 
+ * Policy, e.g. the value passed to 
+ * {@link tophersmith.security.headers.CompiledSecurityHeaders#getHeaders(String)}.
+ * <br><br>
+ * Warning: a nonce only protects a page if an attacker cannot get it onto 
+ * their own markup. This writer cannot tell a marker the template wrote from
+ * one reflected from a request, so untrusted data must still be escaped 
+ * before it is written here; a reflected <code>&lt;script nonce=""&gt;</code>
+ * would be filled like any other.
+ * <br><br>
+ * Example:<br>
+ * <code>
+ * String nonce = ScriptSrcDirective.generateNonce(12);<br>
+ * List&lt;Entry&lt;String, String&gt;&gt; headers = compiled.getHeaders(nonce);<br>
+ * Writer writer = new NonceInjectingWriter(response.getWriter(), nonce);
+ * </code>
+ *
+ * @author Chris Smith
+ *
+ */
+public class NonceInjectingWriter extends FilterWriter {
+
+	private final HtmlNonceInjector injector = new HtmlNonceInjector();
+	private final char[] nonce;
+
+	/**
+	 * Construct a writer that injects the given nonce
+	 * @param out the writer to write the document to
+	 * @param nonce a base64 value, e.g. from
+	 * {@link tophersmith.security.headers.csp.directives.AbstractUnsafeDirective#generateNonce(int)}
+	 * @throws IllegalArgumentException if the nonce is empty or not base64
+	 */
+	public NonceInjectingWriter(Writer out, String nonce) {
+		super(out);
+		CSPNonceTemplate.checkNonce(nonce);
+		this.nonce = nonce.toCharArray();
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		if (this.injector.next(c)) {
+			this.out.write(this.nonce);
+		}
+		this.out.write(c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		int start = off;
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			if (this.injector.next(cbuf[i])) {
+				this.out.write(cbuf, start, i - start);
+				this.out.write(this.nonce);
+				start = i;
+			}
+		}
+		this.out.write(cbuf, start, end - start);
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		int start = off;
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			if (this.injector.next(str.charAt(i))) {
+				this.out.write(str, start, i - start);
+				this.out.write(this.nonce);
+				start = i;
+			}
+		}
+		this.out.write(str, start, end - start);
+	}
+
+	/**
+	 * @return the number of nonce markers filled
+	 */
+	public long getInjectedCount() {
+		return this.injector.getInjectedCount();
+	}
+}
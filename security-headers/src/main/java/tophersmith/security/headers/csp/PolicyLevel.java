@@ -15,30 +15,12 @@
  */
 package tophersmith.security.headers.csp;
 
-import java.util.Arrays;
-import java.util.List;
-
 import tophersmith.security.headers.csp.directives.AbstractCSPDirective;
-import tophersmith.security.headers.csp.directives.impl.BaseUriDirective;
-import tophersmith.security.headers.csp.directives.impl.ChildSrcDirective;
-import tophersmith.security.headers.csp.directives.impl.ConnectSrcDirective;
-import tophersmith.security.headers.csp.directives.impl.DefaultSrcDirective;
-import tophersmith.security.headers.csp.directives.impl.FontSrcDirective;
-import tophersmith.security.headers.csp.directives.impl.FormActionDirective;
-import tophersmith.security.headers.csp.directives.impl.FrameAncestorsDirective;
-import tophersmith.security.headers.csp.directives.impl.FrameSrcDirective;
-import tophersmith.security.headers.csp.directives.impl.ImgSrcDirective;
-import tophersmith.security.headers.csp.directives.impl.MediaSrcDirective;
-import tophersmith.security.headers.csp.directives.impl.ObjectSrcDirective;
-import tophersmith.security.headers.csp.directives.impl.PluginTypesDirective;
-import tophersmith.security.headers.csp.directives.impl.ReportUriDirective;
-import tophersmith.security.headers.csp.directives.impl.SandboxDirective;
-import tophersmith.security.headers.csp.directives.impl.ScriptSrcDirective;
-import tophersmith.security.headers.csp.directives.impl.StyleSrcDirective;
 
 /**
  * A helper enum, the PolicyLevel defines Allowed and Deprecated directives for
- * each level of CSP.
+ * each level of CSP. Membership is a bit per {@link DirectiveType}, so a 
+ * directive is checked against a level with a single mask test.
  * 
  * @author Chris Smith
  *
@@ -49,35 +31,61 @@ public enum PolicyLevel{
 	 * CSP 1.0
 	 * <a href="http://www.w3.org/TR/2012/CR-CSP-20121115/">http://www.w3.org/TR/2012/CR-CSP-20121115/</a>
 	 */
-	CSP1(new String[]{ConnectSrcDirective.NAME, 	DefaultSrcDirective.NAME, 	
-					  FontSrcDirective.NAME,		FrameSrcDirective.NAME, 	
-					  ImgSrcDirective.NAME, 		MediaSrcDirective.NAME, 
-					  ObjectSrcDirective.NAME, 		ReportUriDirective.NAME, 	
-					  SandboxDirective.NAME,		ScriptSrcDirective.NAME, 	
-					  StyleSrcDirective.NAME},
-		 new String[]{}), 
+	CSP1(new DirectiveType[]{DirectiveType.CONNECT_SRC, 	DirectiveType.DEFAULT_SRC, 	
+					  DirectiveType.FONT_SRC,		DirectiveType.FRAME_SRC, 	
+					  DirectiveType.IMG_SRC, 		DirectiveType.MEDIA_SRC, 
+					  DirectiveType.OBJECT_SRC, 	DirectiveType.REPORT_URI, 	
+					  DirectiveType.SANDBOX,		DirectiveType.SCRIPT_SRC, 	
+					  DirectiveType.STYLE_SRC},
+		 new DirectiveType[]{}), 
 	
 	/**
 	 * CSP 2.0
 	 * <a href="http://www.w3.org/TR/CSP2/">http://www.w3.org/TR/CSP2/</a>
 	 */
-	CSP2(new String[]{BaseUriDirective.NAME, 		ChildSrcDirective.NAME, 	
-					  ConnectSrcDirective.NAME,   	DefaultSrcDirective.NAME, 	
-					  FontSrcDirective.NAME,		FormActionDirective.NAME,
-					  FrameAncestorsDirective.NAME, FrameSrcDirective.NAME, 	
-					  ImgSrcDirective.NAME,			MediaSrcDirective.NAME, 		
-					  ObjectSrcDirective.NAME, 		PluginTypesDirective.NAME,
-					  ReportUriDirective.NAME,		SandboxDirective.NAME, 		
-					  ScriptSrcDirective.NAME, 		StyleSrcDirective.NAME},
-		 new String[]{FrameSrcDirective.NAME}),
+	CSP2(new DirectiveType[]{DirectiveType.BASE_URI, 		DirectiveType.CHILD_SRC, 	
+					  DirectiveType.CONNECT_SRC,   	DirectiveType.DEFAULT_SRC, 	
+					  DirectiveType.FONT_SRC,		DirectiveType.FORM_ACTION,
+					  DirectiveType.FRAME_ANCESTORS, DirectiveType.FRAME_SRC, 	
+					  DirectiveType.IMG_SRC,		DirectiveType.MEDIA_SRC, 		
+					  DirectiveType.OBJECT_SRC, 	DirectiveType.PLUGIN_TYPES,
+					  DirectiveType.REPORT_URI,		DirectiveType.SANDBOX, 		
+					  DirectiveType.SCRIPT_SRC, 	DirectiveType.STYLE_SRC},
+		 new DirectiveType[]{DirectiveType.FRAME_SRC}),
 	;
 	
-	private final List<String> definedNames;
-	private final List<String> deprecatedNames;
+	private final long definedMask;
+	private final long deprecatedMask;
+	
+	private PolicyLevel(DirectiveType[] definedTypes, DirectiveType[] deprecatedTypes){
+		this.definedMask = mask(definedTypes);
+		this.deprecatedMask = mask(deprecatedTypes);
+	}
+	
+	private static long mask(DirectiveType[] types){
+		long mask = 0L;
+		for (int i = 0; i < types.length; i++) {
+			mask |= 1L << types[i].ordinal();
+		}
+		return mask;
+	}
 	
-	private PolicyLevel(String[] definedNames, String[] deprecatedNames){
-		this.definedNames = Arrays.asList(definedNames);
-		this.deprecatedNames = Arrays.asList(deprecatedNames);
+	/**
+	 * is the given directive type defined for this policy level
+	 * @param type the directive type to check for
+	 * @return true if the directive type is defined for this level
+	 */
+	public boolean isDefined(DirectiveType type){
+		return type != null && (this.definedMask & (1L << type.ordinal())) != 0;
+	}
+	
+	/**
+	 * is the given directive type deprecated in this policy level
+	 * @param type the directive type to check for
+	 * @return true if the directive type is deprecated in this level
+	 */
+	public boolean isDeprecated(DirectiveType type){
+		return type != null && (this.deprecatedMask & (1L << type.ordinal())) != 0;
 	}
 	
 	/**
@@ -86,7 +94,7 @@ public enum PolicyLevel{
 	 * @return true if the directive is defined for this level
 	 */
 	boolean isDefined(AbstractCSPDirective directive){
-		return this.definedNames.contains(directive.getDirectiveName());
+		return isDefined(directive.getDirectiveType());
 	}
 	
 	/**
@@ -95,6 +103,6 @@ public enum PolicyLevel{
 	 * @return true if the directive is a deprecated directive
 	 */
 	boolean isDeprecated(AbstractCSPDirective directive){
-		return this.deprecatedNames.contains(directive.getDirectiveName());
+		return isDeprecated(directive.getDirectiveType());
 	}
 }
@@ -0,0 +1,513 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.csp;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import tophersmith.security.headers.util.ContentHasher;
+import tophersmith.security.headers.util.ParallelRange;
+
+/**
+ * A StaticAssetHasher finds the inline script and style elements in a tree
+ * of static templates and computes their hash-sources, so that they can be
+ * allowed with {@link StaticAssetHashes#applyTo(tophersmith.security.headers.csp.directives.impl.ScriptSrcDirective, 
+ * tophersmith.security.headers.csp.directives.impl.StyleSrcDirective)}
+ * instead of 'unsafe-inline'. Script elements with a src attribute are 
+ * skipped.
+ * <br><br>
+ * Files are memory-mapped and hashed as they are stored, which should be 
+ * UTF-8, except that line endings are normalized to LF as a browser does,
+ * and are spread across a fork-join pool. When a cache file is set,
+ * the hashes of each file are kept in it by path, modification time and 
+ * size, so a later run only reads the files that changed.
+ * <br><br>
+ * Example:<br>
+ * <code>
+ * StaticAssetHashes hashes = new StaticAssetHasher().setCacheFile(new File("hashes.cache")).hash(templateDir);<br>
+ * hashes.applyTo(scriptSrc, styleSrc);
+ * </code>
+ *
+ * @author Chris Smith
+ *
+ */
+public class StaticAssetHasher {
+
+	// files are small, so split down to small ranges
+	private static final int THRESHOLD = 8;
+
+	// bump the version whenever the hashes of unchanged files would differ
+	private static final String CACHE_HEADER = "# static asset hashes v2: path, modified, size, algorithms, script hashes, style hashes";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final byte[] SCRIPT = { 's', 'c', 'r', 'i', 'p', 't' };
+	private static final byte[] STYLE = { 's', 't', 'y', 'l', 'e' };
+	private static final byte[] SRC = { 's', 'r', 'c' };
+
+	private final ForkJoinPool pool;
+	private ContentHasher.Algorithm[] algorithms = { ContentHasher.Algorithm.SHA256 };
+	private String[] extensions = { "html", "htm" };
+	private File cacheFile = null;
+
+	/**
+	 * Construct a hasher that shares one fork-join pool of daemon threads,
+	 * sized to the number of available processors, with every other default
+	 * hasher
+	 */
+	public StaticAssetHasher() {
+		this(ParallelRange.defaultPool());
+	}
+
+	/**
+	 * Construct a hasher that hashes files on the given pool
+	 * @param pool the pool to hash files on
+	 */
+	public StaticAssetHasher(ForkJoinPool pool) {
+		if (pool == null) {
+			throw new IllegalArgumentException("pool must be set");
+		}
+		this.pool = pool;
+	}
+
+	/**
+	 * sets the algorithms each inline element is hashed with. By default, 
+	 * this is sha256 only.
+	 * @param algorithms one or more digest algorithms
+	 * @return a reference to this object
+	 */
+	public StaticAssetHasher setAlgorithms(ContentHasher.Algorithm... algorithms) {
+		if (algorithms == null || algorithms.length == 0 || Arrays.asList(algorithms).contains(null)) {
+			throw new IllegalArgumentException("at least one algorithm must be set");
+		}
+		this.algorithms = algorithms.clone();
+		return this;
+	}
+
+	/**
+	 * sets the extensions of the files to read. By default, these are html 
+	 * and htm.
+	 * @param extensions file extensions without the dot, e.g. "html"
+	 * @return a reference to this object
+	 */
+	public StaticAssetHasher setExtensions(String... extensions) {
+		if (extensions == null || extensions.length == 0 || Arrays.asList(extensions).contains(null)) {
+			throw new IllegalArgumentException("at least one extension must be set");
+		}
+		this.extensions = new String[extensions.length];
+		for (int i = 0; i < extensions.length; i++) {
+			this.extensions[i] = extensions[i].toLowerCase(Locale.ENGLISH);
+		}
+		return this;
+	}
+
+	/**
+	 * sets the file the hashes of each file are kept in between runs
+	 * @param cacheFile a writable file, or null to hash every file each run
+	 * @return a reference to this object
+	 */
+	public StaticAssetHasher setCacheFile(File cacheFile) {
+		this.cacheFile = cacheFile;
+		return this;
+	}
+
+	/**
+	 * Hash the inline elements of every matching file below a directory, 
+	 * reusing cached hashes of unchanged files and then updating the cache 
+	 * file. A file that cannot be read is recorded in the result and does 
+	 * not stop the others.
+	 * @param root the directory to search
+	 * @return the hash-sources found and the counts of files read
+	 * @throws IOException if the directory cannot be searched or the cache 
+	 * file cannot be written
+	 */
+	public StaticAssetHashes hash(File root) throws IOException {
+		if (root == null || !root.isDirectory()) {
+			throw new IllegalArgumentException("root must be a directory");
+		}
+		long start = System.nanoTime();
+		final List<File> files = findFiles(root);
+		final Map<String, FileHashes> cached = readCache();
+		final FileHashes[] results = new FileHashes[files.size()];
+		ParallelRange.invoke(this.pool, files.size(), THRESHOLD, new ParallelRange.Body() {
+			@Override
+			public void run(int index) {
+				results[index] = hashFile(files.get(index), cached);
+			}
+		});
+		writeCache(results);
+		return new StaticAssetHashes(Arrays.asList(results), System.nanoTime() - start);
+	}
+
+	private List<File> findFiles(File root) throws IOException {
+		final List<File> files = new ArrayList<File>();
+		Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (attrs.isRegularFile() && hasExtension(file.getFileName().toString())) {
+					files.add(file.toFile().getAbsoluteFile());
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		Collections.sort(files);
+		return files;
+	}
+
+	private boolean hasExtension(String name) {
+		String lower = name.toLowerCase(Locale.ENGLISH);
+		for (int i = 0; i < this.extensions.length; i++) {
+			if (lower.endsWith("." + this.extensions[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the algorithms as stored in the cache file, e.g. sha256,sha384
+	 */
+	private String algorithmKey() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < this.algorithms.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(this.algorithms[i].getSourceName());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * hash one file, or reuse its cached hashes if it has not changed
+	 */
+	private FileHashes hashFile(File file, Map<String, FileHashes> cached) {
+		String path = file.getPath();
+		long modified = file.lastModified();
+		long size = file.length();
+		String algorithmKey = algorithmKey();
+		FileHashes previous = cached.get(path);
+		if (previous != null && previous.modified == modified && previous.size == size && 
+				previous.algorithms.equals(algorithmKey)) {
+			return new FileHashes(path, modified, size, algorithmKey, previous.scripts, previous.styles, true, null);
+		}
+		List<String> scripts = new ArrayList<String>();
+		List<String> styles = new ArrayList<String>();
+		try {
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			try {
+				long length = channel.size();
+				if (length > Integer.MAX_VALUE) {
+					throw new IOException("file is too large to map");
+				}
+				if (length > 0) {
+					extract(channel.map(FileChannel.MapMode.READ_ONLY, 0, length), scripts, styles);
+				}
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			return new FileHashes(path, modified, size, algorithmKey, null, null, false, 
+					"File " + path + " could not be read: " + e);
+		}
+		return new FileHashes(path, modified, size, algorithmKey, scripts, styles, false, null);
+	}
+
+	/**
+	 * find each inline script and style element and hash its body
+	 */
+	private void extract(ByteBuffer buffer, List<String> scripts, List<String> styles) {
+		int limit = buffer.limit();
+		int i = 0;
+		while (i < limit) {
+			if (buffer.get(i) != '<') {
+				i++;
+				continue;
+			}
+			byte[] name = null;
+			if (matches(buffer, i + 1, limit, SCRIPT) && isNameEnd(buffer, i + 1 + SCRIPT.length, limit)) {
+				name = SCRIPT;
+			} else if (matches(buffer, i + 1, limit, STYLE) && isNameEnd(buffer, i + 1 + STYLE.length, limit)) {
+				name = STYLE;
+			}
+			if (name == null) {
+				i++;
+				continue;
+			}
+			int attributes = i + 1 + name.length;
+			int tagEnd = indexOf(buffer, (byte) '>', attributes, limit);
+			if (tagEnd < 0) {
+				return;
+			}
+			int bodyEnd = findClosingTag(buffer, tagEnd + 1, limit, name);
+			if (bodyEnd < 0) {
+				return;
+			}
+			if (name == STYLE || !hasAttribute(buffer, attributes, tagEnd, SRC)) {
+				List<String> hashes = name == SCRIPT ? scripts : styles;
+				byte[] normalized = ContentHasher.normalizeNewlines(buffer, tagEnd + 1, bodyEnd);
+				for (int a = 0; a < this.algorithms.length; a++) {
+					ByteBuffer body;
+					if (normalized == null) {
+						body = buffer.duplicate();
+						body.limit(bodyEnd);
+						body.position(tagEnd + 1);
+					} else {
+						body = ByteBuffer.wrap(normalized);
+					}
+					hashes.add(this.algorithms[a].getSourceName() + "-" + ContentHasher.hashBytes(this.algorithms[a], body));
+				}
+			}
+			i = bodyEnd + 2 + name.length;
+		}
+	}
+
+	/**
+	 * compare against a lower case ASCII name without regard to case
+	 */
+	private static boolean matches(ByteBuffer buffer, int offset, int limit, byte[] lower) {
+		if (offset + lower.length > limit) {
+			return false;
+		}
+		for (int i = 0; i < lower.length; i++) {
+			int b = buffer.get(offset + i);
+			if (b >= 'A' && b <= 'Z') {
+				b += 'a' - 'A';
+			}
+			if (b != lower[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isNameEnd(ByteBuffer buffer, int offset, int limit) {
+		if (offset >= limit) {
+			return false;
+		}
+		byte b = buffer.get(offset);
+		return b == '>' || b == '/' || isSpace(b);
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+	}
+
+	private static int indexOf(ByteBuffer buffer, byte value, int from, int limit) {
+		for (int i = from; i < limit; i++) {
+			if (buffer.get(i) == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the index of the &lt;/name that ends an element body, or -1
+	 */
+	private static int findClosingTag(ByteBuffer buffer, int from, int limit, byte[] name) {
+		for (int i = from; i + 1 < limit; i++) {
+			if (buffer.get(i) == '<' && buffer.get(i + 1) == '/' && matches(buffer, i + 2, limit, name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * is the attribute name within the attributes of a tag, followed by =
+	 */
+	private static boolean hasAttribute(ByteBuffer buffer, int from, int to, byte[] name) {
+		for (int i = from; i + name.length < to; i++) {
+			if (isSpace(buffer.get(i)) && matches(buffer, i + 1, to, name)) {
+				int j = i + 1 + name.length;
+				while (j < to && isSpace(buffer.get(j))) {
+					j++;
+				}
+				if (j < to && buffer.get(j) == '=') {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private Map<String, FileHashes> readCache() throws IOException {
+		Map<String, FileHashes> cached = new HashMap<String, FileHashes>();
+		if (this.cacheFile == null || !this.cacheFile.isFile()) {
+			return cached;
+		}
+		BufferedReader reader = new BufferedReader(reader(this.cacheFile));
+		try {
+			String line = reader.readLine();
+			if (!CACHE_HEADER.equals(line)) {
+				// written by another version, so hash every file again
+				return cached;
+			}
+			while ((line = reader.readLine()) != null) {
+				FileHashes hashes = FileHashes.parse(line);
+				if (hashes != null) {
+					cached.put(hashes.path, hashes);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return cached;
+	}
+
+	/**
+	 * write the cache to a temporary file, then move it into place so that
+	 * a failed run never leaves a partial cache
+	 */
+	private void writeCache(FileHashes[] results) throws IOException {
+		if (this.cacheFile == null) {
+			return;
+		}
+		File temp = new File(this.cacheFile.getPath() + ".tmp");
+		BufferedWriter writer = new BufferedWriter(writer(temp));
+		try {
+			writer.write(CACHE_HEADER);
+			writer.newLine();
+			for (int i = 0; i < results.length; i++) {
+				String line = results[i].format();
+				if (line != null) {
+					writer.write(line);
+					writer.newLine();
+				}
+			}
+		} finally {
+			writer.close();
+		}
+		try {
+			Files.move(temp.toPath(), this.cacheFile.toPath(), 
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), this.cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static Reader reader(File file) throws IOException {
+		return new InputStreamReader(new FileInputStream(file), UTF_8);
+	}
+
+	private static Writer writer(File file) throws IOException {
+		return new OutputStreamWriter(new FileOutputStream(file), UTF_8);
+	}
+
+	/**
+	 * the hashes found in one file, as hash-sources without quotes
+	 */
+	static final class FileHashes {
+		final String path;
+		final long modified;
+		final long size;
+		final String algorithms;
+		final List<String> scripts;
+		final List<String> styles;
+		final boolean cached;
+		final String error;
+
+		FileHashes(String path, long modified, long size, String algorithms, 
+				List<String> scripts, List<String> styles, boolean cached, String error) {
+			this.path = path;
+			this.modified = modified;
+			this.size = size;
+			this.algorithms = algorithms;
+			this.scripts = scripts;
+			this.styles = styles;
+			this.cached = cached;
+			this.error = error;
+		}
+
+		/**
+		 * @return a tab separated cache line, or null if this file failed or
+		 * its path cannot be stored on one line
+		 */
+		String format() {
+			if (this.error != null || this.path.indexOf('\t') >= 0 || 
+					this.path.indexOf('\n') >= 0 || this.path.indexOf('\r') >= 0) {
+				return null;
+			}
+			return this.path + '\t' + this.modified + '\t' + this.size + '\t' + this.algorithms + '\t' + 
+					join(this.scripts) + '\t' + join(this.styles);
+		}
+
+		/**
+		 * @return the hashes of a cache line, or null if it is not one
+		 */
+		static FileHashes parse(String line) {
+			if (line.startsWith("#")) {
+				return null;
+			}
+			String[] fields = line.split("\t", -1);
+			if (fields.length != 6) {
+				return null;
+			}
+			try {
+				return new FileHashes(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]), 
+						fields[3], split(fields[4]), split(fields[5]), true, null);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		private static String join(List<String> hashes) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < hashes.size(); i++) {
+				if (i > 0) {
+					sb.append(' ');
+				}
+				sb.append(hashes.get(i));
+			}
+			return sb.toString();
+		}
+
+		private static List<String> split(String hashes) {
+			if (hashes.isEmpty()) {
+				return Collections.emptyList();
+			}
+			return Arrays.asList(hashes.split(" "));
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.csp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import tophersmith.security.headers.csp.directives.impl.ScriptSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.StyleSrcDirective;
+
+/**
+ * StaticAssetHashes holds the hash-sources found by a 
+ * {@link StaticAssetHasher}, in the order the files and elements were found
+ * and without duplicates.
+ *
+ * @author Chris Smith
+ *
+ */
+public class StaticAssetHashes {
+
+	private final Set<String> scriptHashes = new LinkedHashSet<String>();
+	private final Set<String> styleHashes = new LinkedHashSet<String>();
+	private final List<String> errors = new ArrayList<String>();
+	private final int fileCount;
+	private int cachedCount = 0;
+	private final long elapsedNanos;
+
+	StaticAssetHashes(List<StaticAssetHasher.FileHashes> files, long elapsedNanos) {
+		for (StaticAssetHasher.FileHashes file : files) {
+			if (file.error != null) {
+				this.errors.add(file.error);
+				continue;
+			}
+			if (file.cached) {
+				this.cachedCount++;
+			}
+			this.scriptHashes.addAll(file.scripts);
+			this.styleHashes.addAll(file.styles);
+		}
+		this.fileCount = files.size();
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * add every hash-source to the given directives
+	 * @param scriptSrc the directive to add script hashes to, or null to 
+	 * skip them
+	 * @param styleSrc the directive to add style hashes to, or null to skip
+	 * them
+	 */
+	public void applyTo(ScriptSrcDirective scriptSrc, StyleSrcDirective styleSrc) {
+		if (scriptSrc != null) {
+			for (String hash : this.scriptHashes) {
+				int dash = hash.indexOf('-');
+				scriptSrc.addHash(hash.substring(0, dash), hash.substring(dash + 1));
+			}
+		}
+		if (styleSrc != null) {
+			for (String hash : this.styleHashes) {
+				int dash = hash.indexOf('-');
+				styleSrc.addHash(hash.substring(0, dash), hash.substring(dash + 1));
+			}
+		}
+	}
+
+	/**
+	 * @return the hash-sources of inline scripts, e.g. 'sha256-...'
+	 */
+	public List<String> getScriptHashSources() {
+		return quote(this.scriptHashes);
+	}
+
+	/**
+	 * @return the hash-sources of inline styles, e.g. 'sha256-...'
+	 */
+	public List<String> getStyleHashSources() {
+		return quote(this.styleHashes);
+	}
+
+	/**
+	 * @return the number of files found, including any that failed
+	 */
+	public int getFileCount() {
+		return this.fileCount;
+	}
+
+	/**
+	 * @return the number of files that were read and hashed
+	 */
+	public int getHashedCount() {
+		return this.fileCount - this.cachedCount - this.errors.size();
+	}
+
+	/**
+	 * @return the number of unchanged files whose hashes came from the cache
+	 */
+	public int getCachedCount() {
+		return this.cachedCount;
+	}
+
+	/**
+	 * @return a message for each file that could not be read
+	 */
+	public List<String> getErrors() {
+		return Collections.unmodifiableList(this.errors);
+	}
+
+	/**
+	 * @return the time taken to find and hash the files, in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return this.elapsedNanos;
+	}
+
+	private static List<String> quote(Set<String> hashes) {
+		List<String> sources = new ArrayList<String>(hashes.size());
+		for (String hash : hashes) {
+			sources.add("'" + hash + "'");
+		}
+		return Collections.unmodifiableList(sources);
+	}
+}
@@ -16,12 +16,16 @@
 package tophersmith.security.headers.csp.directives;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
 import tophersmith.security.headers.csp.CSPValidationReport;
+import tophersmith.security.headers.csp.DirectiveType;
+import tophersmith.security.headers.util.SourceKind;
 import tophersmith.security.headers.util.Validator;
 
 /**
@@ -47,9 +51,12 @@ public abstract class AbstractCSPDirective {
 	 * The name of the directive
 	 */
 	protected final String name;
+	
+	private final DirectiveType type;
 
 	protected AbstractCSPDirective(String name) {
 		this.name = name;
+		this.type = DirectiveType.fromName(name);
 		this.directiveValues = new ArrayList<String>();
 		this.experimentalValues = new ArrayList<String>();
 	}
@@ -62,6 +69,15 @@ public abstract class AbstractCSPDirective {
 		return this.name;
 	}
 
+	/**
+	 * get this directive's type, which fixes its position in a built policy
+	 * @return the type of this directive, or null if it is not a known 
+	 * directive, e.g. an experimental one
+	 */
+	public DirectiveType getDirectiveType() {
+		return this.type;
+	}
+
 	/**
 	 * append the given directive value to this directive if it 
 	 * is not null or empty
@@ -92,17 +108,16 @@ public abstract class AbstractCSPDirective {
 	 * @param report a validation report to hold any issues discovered 
 	 */
 	protected void validateSourceListValue(String val, CSPValidationReport report) {
-		String test = val.trim().toLowerCase();
-
-		if(!hasValidCharacters(test,report)){
+		SourceKind kind = Validator.classifySource(val);
+		if (kind == SourceKind.SCHEME || kind == SourceKind.HOST ||
+				(kind == SourceKind.KEYWORD && isValidKeyword(val))) {
 			return;
 		}
-		
-		if ( !isValidKeyword(test) && 
-			 !Validator.isValidSchemeSource(test) && 
-			 !Validator.isValidHostSource(test)) {
-			report.addError(this, "Source value " + val + " could not be validated");
+
+		if(!hasValidCharacters(val.trim(), report)){
+			return;
 		}
+		report.addError(this, "Source value " + val + " could not be validated");
 	}
 	
 	/**
@@ -137,12 +152,20 @@ public abstract class AbstractCSPDirective {
 	 * @return a string representation of this directive
 	 */
 	public String buildDirective() {
-		if (this.directiveValues.size() == 0 &&
-				this.experimentalValues.size() == 0) {
+		if (isEmpty()) {
 			return "";
 		}
 		return buildDirectiveValue();
 	}
+
+	/**
+	 * does this directive hold no values at all, including experimental ones
+	 * @return true if there is nothing to build for this directive
+	 */
+	public boolean isEmpty() {
+		return this.directiveValues.size() == 0 &&
+				this.experimentalValues.size() == 0;
+	}
 	
 	/**
 	 * Construct the directive line including the experimental ones
@@ -192,6 +215,36 @@ public abstract class AbstractCSPDirective {
 		this.directiveValues.addAll(deduped);
 	}
 
+	/**
+	 * Within this directive, remove any values that cannot change what the
+	 * directive allows. By default, only duplicates are removed.
+	 */
+	public void minimizeValues() {
+		removeInternalDuplicates();
+	}
+
+	/**
+	 * does this directive hold the same values as another, in any order 
+	 * @param other another directive
+	 * @return true if both directives hold exactly the same set of values
+	 */
+	public boolean hasSameValues(AbstractCSPDirective other) {
+		Set<String> values = new HashSet<String>();
+		collectValues(values);
+		Set<String> otherValues = new HashSet<String>();
+		other.collectValues(otherValues);
+		return values.equals(otherValues);
+	}
+
+	/**
+	 * add every value this directive builds to the given collection
+	 * @param values a collection to add to
+	 */
+	protected void collectValues(Collection<String> values) {
+		values.addAll(this.directiveValues);
+		values.addAll(this.experimentalValues);
+	}
+
 	/**
 	 * For this CSPDirective, ensure all values are correctly set up for the 
 	 * directive and add validation errors to the provided CSPValidationReport
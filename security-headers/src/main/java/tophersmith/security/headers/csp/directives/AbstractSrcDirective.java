@@ -15,20 +15,110 @@
  */
 package tophersmith.security.headers.csp.directives;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 import tophersmith.security.headers.csp.CSPValidationReport;
+import tophersmith.security.headers.util.HostSourceTrie;
+import tophersmith.security.headers.util.SourceExpression;
+import tophersmith.security.headers.util.SourceKind;
+import tophersmith.security.headers.util.SourceListMinimizer;
 import tophersmith.security.headers.util.Validator;
 
 /**
  * The AbstractSrcDirective is a base class for all source-list based 
- * directives. It handles source-list validation.
+ * directives. It handles source-list validation. Sources are parsed into 
+ * {@link SourceExpression}s as they are added and kept in sources rather 
+ * than in directiveValues.
  * 
  * @author Chris Smith
  *
  */
 public abstract class AbstractSrcDirective extends AbstractCSPDirective {
 
+	/**
+	 * The parsed source expressions of this directive, in the order added
+	 */
+	protected final List<SourceExpression> sources;
+
 	protected AbstractSrcDirective(String name) {
 		super(name);
+		this.sources = new ArrayList<SourceExpression>();
+	}
+
+	/**
+	 * parse the given source and append it to this directive if it is not
+	 * null or empty
+	 * @param value a source expression to add
+	 */
+	@Override
+	protected void addDirectiveValue(String value) {
+		if (value != null && !value.trim().isEmpty()) {
+			this.sources.add(SourceExpression.parse(value));
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.sources.isEmpty() && super.isEmpty();
+	}
+
+	@Override
+	protected String buildStandardDirectiveValues() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < this.sources.size(); i++) {
+			sb.append(" ").append(this.sources.get(i).getText());
+		}
+		sb.append(super.buildStandardDirectiveValues());
+		return sb.toString();
+	}
+
+	@Override
+	public List<String> getDirectiveValues() {
+		List<String> others = super.getDirectiveValues();
+		List<String> joined = new ArrayList<String>(this.sources.size() + others.size());
+		for (int i = 0; i < this.sources.size(); i++) {
+			joined.add(this.sources.get(i).getText());
+		}
+		joined.addAll(others);
+		return Collections.unmodifiableList(joined);
+	}
+
+	@Override
+	public void removeInternalDuplicates() {
+		Set<SourceExpression> deduped = new LinkedHashSet<SourceExpression>(this.sources);
+		this.sources.clear();
+		this.sources.addAll(deduped);
+		super.removeInternalDuplicates();
+	}
+
+	@Override
+	protected void collectValues(Collection<String> values) {
+		for (int i = 0; i < this.sources.size(); i++) {
+			values.add(this.sources.get(i).getText());
+		}
+		super.collectValues(values);
+	}
+
+	/**
+	 * Remove duplicates and any sources subsumed by another source of this 
+	 * directive, see {@link SourceListMinimizer}
+	 */
+	@Override
+	public void minimizeValues() {
+		SourceListMinimizer.minimize(this.sources, hasOtherSources());
+	}
+
+	/**
+	 * does this directive hold sources that are not in sources
+	 * @return true if there are experimental values
+	 */
+	protected boolean hasOtherSources() {
+		return !this.experimentalValues.isEmpty();
 	}
 
 	/**
@@ -38,21 +128,77 @@ public abstract class AbstractSrcDirective extends AbstractCSPDirective {
 	 */
 	@Override
 	public void validateAndReport(CSPValidationReport report) {
-		if(this.directiveValues.size() > 1){
-			if(this.directiveValues.contains(Validator.SRC_KEY_NONE)){
+		if(this.sources.size() > 1){
+			boolean none = false;
+			boolean wildcard = false;
+			for (int i = 0; i < this.sources.size(); i++) {
+				SourceExpression source = this.sources.get(i);
+				none |= source.getKeyword() == Validator.SRC_KEY_NONE;
+				wildcard |= Validator.SRC_WILDCARD.equals(source.getText());
+			}
+			if(none){
 				report.addWarning(this, "Should not contain multiple directive values where one is 'none'");
 			}
-			if(this.directiveValues.contains(Validator.SRC_WILDCARD)){
+			if(wildcard){
 				report.addWarning(this, "Should not contain multiple directive values where one is a wildcard");
 			}
 		}
-		for (int i = 0; i < this.directiveValues.size(); i++) {
-			String val = this.directiveValues.get(i);
-			validateSourceListValue(val, report);
+		for (int i = 0; i < this.sources.size(); i++) {
+			validateSource(this.sources.get(i), report);
 		}
 		for (int i = 0; i < this.experimentalValues.size(); i++) {
 			String val = this.experimentalValues.get(i);
 			hasValidCharacters(val, report);
 		}
+		reportCoveredHosts(report);
+	}
+
+	/**
+	 * Validate a parsed source, reporting any validation errors to the 
+	 * provided report, as {@link #validateSourceListValue(String, CSPValidationReport)}
+	 * does for unparsed values
+	 * @param source a source to validate
+	 * @param report a validation report to hold any issues discovered 
+	 */
+	protected void validateSource(SourceExpression source, CSPValidationReport report) {
+		SourceKind kind = source.getKind();
+		if (kind == SourceKind.SCHEME || kind == SourceKind.HOST ||
+				(kind == SourceKind.KEYWORD && isValidKeyword(source.getKeyword()))) {
+			return;
+		}
+		String val = source.getText();
+		if(!hasValidCharacters(val.trim(), report)){
+			return;
+		}
+		report.addError(this, "Source value " + val + " could not be validated");
+	}
+
+	/**
+	 * warn of host-sources already allowed by a wildcard host-source of this
+	 * directive, e.g. a.example.com with *.example.com
+	 * @param report a validation report to hold any issues discovered
+	 */
+	protected void reportCoveredHosts(CSPValidationReport report) {
+		HostSourceTrie wildcards = null;
+		for (int i = 0; i < this.sources.size(); i++) {
+			SourceExpression source = this.sources.get(i);
+			if (source.isWildcardHost() && !Validator.SRC_WILDCARD.equals(source.getText().trim())) {
+				if (wildcards == null) {
+					wildcards = new HostSourceTrie();
+				}
+				wildcards.add(source);
+			}
+		}
+		if (wildcards == null) {
+			return;
+		}
+		for (int i = 0; i < this.sources.size(); i++) {
+			SourceExpression source = this.sources.get(i);
+			SourceExpression covering = wildcards.findCovering(source);
+			if (covering != null) {
+				report.addWarning(this, "Source value " + source.getText() + 
+						" is already allowed by " + covering.getText());
+			}
+		}
 	}
 }
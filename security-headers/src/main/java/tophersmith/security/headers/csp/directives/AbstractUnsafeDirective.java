@@ -15,13 +15,20 @@
  */
 package tophersmith.security.headers.csp.directives;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-
-import javax.xml.bind.DatatypeConverter;
+import java.util.Set;
 
 import tophersmith.security.headers.csp.CSPValidationReport;
+import tophersmith.security.headers.util.Base64Util;
+import tophersmith.security.headers.util.ContentHasher;
 import tophersmith.security.headers.util.SecureRandomUtil;
+import tophersmith.security.headers.util.SourceExpression;
+import tophersmith.security.headers.util.SourceKind;
 import tophersmith.security.headers.util.Validator;
 
 /**
@@ -34,8 +41,11 @@ import tophersmith.security.headers.util.Validator;
  */
 public abstract class AbstractUnsafeDirective extends AbstractSrcDirective {
 
-	private List<String> nonces = null;
-	private List<String> hashes = null;
+	private List<SourceExpression> nonces = null;
+	private List<SourceExpression> hashes = null;
+	// the same values as the lists, so checking for duplicates stays constant time
+	private Set<SourceExpression> nonceSet = null;
+	private Set<SourceExpression> hashSet = null;
 
 	private static final String NONCE_PREFIX = "nonce";
 	private static final String QUOTE = "'";
@@ -45,12 +55,14 @@ public abstract class AbstractUnsafeDirective extends AbstractSrcDirective {
 
 	protected AbstractUnsafeDirective(String name) {
 		super(name);
-		this.nonces = new ArrayList<String>();
-		this.hashes = new ArrayList<String>();
+		this.nonces = new ArrayList<SourceExpression>();
+		this.hashes = new ArrayList<SourceExpression>();
+		this.nonceSet = new HashSet<SourceExpression>();
+		this.hashSet = new HashSet<SourceExpression>();
 	}
 
 	/**
-	 * adds a hash value to this directive
+	 * adds a hash value to this directive, unless it already holds it
 	 * 
 	 * @param type one of "sha256", "sha384", "sha512"
 	 * @param b64hash a base64 hash value
@@ -60,7 +72,21 @@ public abstract class AbstractUnsafeDirective extends AbstractSrcDirective {
 			String hash = new StringBuilder().append(AbstractUnsafeDirective.QUOTE).append(type)
 					.append(AbstractUnsafeDirective.SEPARATOR).append(b64hash).append(AbstractUnsafeDirective.QUOTE)
 					.toString();
-			this.hashes.add(hash);
+			addUnique(this.hashes, this.hashSet, SourceExpression.parse(hash));
+		}
+	}
+
+	/**
+	 * adds the hash of inline script or style content to this directive, 
+	 * see {@link ContentHasher}
+	 * 
+	 * @param algorithm the digest algorithm
+	 * @param content the text of the inline element as it appears between 
+	 * the tags; CRLF and CR line endings are hashed as LF
+	 */
+	protected void addNewInlineHash(ContentHasher.Algorithm algorithm, String content) {
+		if (algorithm != null && content != null) {
+			addNewHash(algorithm.getSourceName(), ContentHasher.hash(algorithm, content));
 		}
 	}
 
@@ -69,10 +95,11 @@ public abstract class AbstractUnsafeDirective extends AbstractSrcDirective {
 	 */
 	public void resetHashes() {
 		this.hashes.clear();
+		this.hashSet.clear();
 	}
 
 	/**
-	 * adds a nonce value to this directive
+	 * adds a nonce value to this directive, unless it already holds it
 	 * 
 	 * @param nonce a randomly generated value from {@link #generateNonce(int)}
 	 */
@@ -81,7 +108,14 @@ public abstract class AbstractUnsafeDirective extends AbstractSrcDirective {
 			String nce = new StringBuilder().append(AbstractUnsafeDirective.QUOTE)
 					.append(AbstractUnsafeDirective.NONCE_PREFIX).append(AbstractUnsafeDirective.SEPARATOR)
 					.append(nonce).append(AbstractUnsafeDirective.QUOTE).toString();
-			this.nonces.add(nce);
+			addUnique(this.nonces, this.nonceSet, SourceExpression.parse(nce));
+		}
+	}
+
+	private static void addUnique(List<SourceExpression> values, Set<SourceExpression> seen, 
+			SourceExpression value) {
+		if (seen.add(value)) {
+			values.add(value);
 		}
 	}
 	
@@ -90,11 +124,44 @@ public abstract class AbstractUnsafeDirective extends AbstractSrcDirective {
 	 *  
 	 * @param size the string length. This value will be set to the nearest multiple of 4
 	 * @return an alphanumeric string of length size 
+	 * @see tophersmith.security.headers.util.NoncePool for pre-generated nonces
 	 */
 	public static String generateNonce(int size) {
+		char[] nonce = new char[Base64Util.encodedLength(size)];
+		generateNonce(size, nonce, 0);
+		return new String(nonce);
+	}
+
+	/**
+	 * construct a secure nonce directly into a char array, e.g. a header
+	 * buffer, without an intermediate String
+	 * 
+	 * @param size the number of random bytes
+	 * @param dst the array to write into
+	 * @param offset the index in dst to start writing at
+	 * @return the number of characters written, see {@link Base64Util#encodedLength(int)}
+	 */
+	public static int generateNonce(int size, char[] dst, int offset) {
 		byte[] nonceBytes = new byte[size];
 		SecureRandomUtil.nextBytes(nonceBytes);
-		return DatatypeConverter.printBase64Binary(nonceBytes);
+		int written = Base64Util.encode(nonceBytes, 0, size, dst, offset, Base64Util.Alphabet.STANDARD);
+		Arrays.fill(nonceBytes, (byte) 0);
+		return written;
+	}
+
+	/**
+	 * construct a secure nonce directly onto an Appendable, e.g. the Writer
+	 * rendering an HTML nonce attribute
+	 * 
+	 * @param size the number of random bytes
+	 * @param dst the Appendable to write to
+	 * @throws IOException if dst cannot be appended to
+	 */
+	public static void generateNonce(int size, Appendable dst) throws IOException {
+		byte[] nonceBytes = new byte[size];
+		SecureRandomUtil.nextBytes(nonceBytes);
+		Base64Util.encode(nonceBytes, 0, size, dst, Base64Util.Alphabet.STANDARD);
+		Arrays.fill(nonceBytes, (byte) 0);
 	}
 	
 	
@@ -104,6 +171,7 @@ public abstract class AbstractUnsafeDirective extends AbstractSrcDirective {
 	 */
 	public void resetNonces() {
 		this.nonces.clear();
+		this.nonceSet.clear();
 	}
 
 	/**
@@ -117,50 +185,71 @@ public abstract class AbstractUnsafeDirective extends AbstractSrcDirective {
 	}
 	
 	/**
-	 * test whether this directive value contains valid hashes
+	 * test whether this directive value contains valid hashes: a known 
+	 * algorithm and a base64 digest of the length that algorithm produces
 	 * @param report a validation report to hold any issues discovered 
 	 */
 	protected void validateHashes(CSPValidationReport report) {
 		for (int j = 0; j < this.hashes.size(); j++) {
-			boolean valid = false;
-			String hash = this.hashes.get(j);
-			for (int i = 0; i < AbstractUnsafeDirective.ALLOWED_HASH_ALGO.length; i++) {
-				if (hash.startsWith(AbstractUnsafeDirective.QUOTE + 
-						AbstractUnsafeDirective.ALLOWED_HASH_ALGO[i])) {
-					valid = true;
-					break;
+			SourceExpression expression = this.hashes.get(j);
+			String hash = expression.getText();
+			String algorithm = expression.getHashAlgorithm();
+			int dash;
+			int end;
+			if (expression.getKind() == SourceKind.HASH) {
+				dash = hash.indexOf('-', 1);
+				end = hash.length() - 1;
+			} else {
+				// not a hash-source, so find out why from the text
+				algorithm = findHashAlgorithm(hash);
+				if (algorithm == null) {
+					report.addError(this, "Hash algorithm " + hash + " not allowed");
+				}
+				dash = hash.indexOf('-');
+				end = hash.lastIndexOf('\'');
+				if(dash < 0 || end <= dash){
+					report.addError(this, "Hash: " + hash + " does not have a valid value");
+					continue;
 				}
 			}
-			if (!valid) {
-				report.addError(this, "Hash algorithm " + hash + " not allowed");
-			}
-			int dash = hash.indexOf("-");
-			int lastquote = hash.lastIndexOf("'");
-			if(dash < 0 || lastquote < 0){
-				report.addError(this, "Hash: " + hash + " does not have a valid value");
-			}
-			String hashVal = hash.substring(dash+1, lastquote);
-			if(!Validator.isBase64String(hashVal)){
+			int length = Base64Util.decodedLength(hash, dash + 1, end);
+			if(length < 0){
 				report.addError(this, "Hash: " + hash + " is not base-64 encoded");
+			} else if(algorithm != null && length != Validator.digestLength(algorithm)){
+				report.addError(this, "Hash: " + hash + " has a " + length + " byte digest, but " + 
+						algorithm + " digests are " + Validator.digestLength(algorithm) + " bytes");
+			}
+		}
+	}
+
+	/**
+	 * @return the allowed algorithm a quoted hash starts with, or null
+	 */
+	private static String findHashAlgorithm(String hash) {
+		for (int i = 0; i < AbstractUnsafeDirective.ALLOWED_HASH_ALGO.length; i++) {
+			String algorithm = AbstractUnsafeDirective.ALLOWED_HASH_ALGO[i];
+			if (hash.startsWith(AbstractUnsafeDirective.QUOTE) && hash.startsWith(algorithm, 1)) {
+				return algorithm;
 			}
 		}
+		return null;
 	}
 	
 	/**
-	 * test whether this directive value contains valid nonces
+	 * test whether this directive value contains valid nonces, encoded in 
+	 * either the standard or the URL-safe base64 alphabet
 	 * @param report a validation report to hold any issues discovered 
 	 */
 	protected void validateNonces(CSPValidationReport report){
 		for (int j = 0; j < this.nonces.size(); j++) {
-			String nonce = this.nonces.get(j);
-			int dash = nonce.indexOf("-");
-			int lastquote = nonce.lastIndexOf("'");
-			if(dash < 0 || lastquote < 0){
-				report.addError(this, "Nonce: " + nonce + " does not have a valid value");
-			}
-			String nonceVal = nonce.substring(dash+1, lastquote);
-			if(!Validator.isBase64String(nonceVal)){
-				report.addError(this, "Nonce: " + nonce + " is not base-64 encoded");
+			SourceExpression nonce = this.nonces.get(j);
+			String text = nonce.getText();
+			int start = text.indexOf('-') + 1;
+			int end = text.length() - 1;
+			if(nonce.getKind() != SourceKind.NONCE || 
+					(Base64Util.decodedLength(text, start, end, Base64Util.Alphabet.STANDARD) < 0 && 
+					Base64Util.decodedLength(text, start, end, Base64Util.Alphabet.URL_SAFE) < 0)){
+				report.addError(this, "Nonce: " + text + " is not base-64 encoded");
 			}
 		}
 	}
@@ -175,13 +264,75 @@ public abstract class AbstractUnsafeDirective extends AbstractSrcDirective {
 		sb.append(getDirectiveName());
 		sb.append(buildStandardDirectiveValues());
 		for (int i = 0; i < this.nonces.size(); i++) {
-			sb.append(this.nonces.get(i)).append(" ");
+			sb.append(" ").append(this.nonces.get(i).getText());
 		}
 		for (int i = 0; i < this.hashes.size(); i++) {
-			sb.append(this.hashes.get(i)).append(" ");
+			sb.append(" ").append(this.hashes.get(i).getText());
 		}
 		return sb.toString();
 	}
+
+	/**
+	 * Builds this directive split around a single nonce slot. The first 
+	 * element holds everything up to and including <code>'nonce-</code>, the 
+	 * second holds the closing quote and any following hash values, so that
+	 * <code>segments[0] + nonce + segments[1]</code> equals 
+	 * {@link #buildDirective()} with that one nonce configured.
+	 * The nonce values currently set on this directive only mark where the 
+	 * slot goes and are not part of the output.
+	 * 
+	 * @return a two element array of the text before and after the nonce
+	 */
+	public String[] buildNonceSegments() {
+		StringBuilder prefix = new StringBuilder();
+		prefix.append(getDirectiveName());
+		prefix.append(buildStandardDirectiveValues());
+		prefix.append(" ").append(AbstractUnsafeDirective.QUOTE)
+			.append(AbstractUnsafeDirective.NONCE_PREFIX).append(AbstractUnsafeDirective.SEPARATOR);
+		StringBuilder suffix = new StringBuilder();
+		suffix.append(AbstractUnsafeDirective.QUOTE);
+		for (int i = 0; i < this.hashes.size(); i++) {
+			suffix.append(" ").append(this.hashes.get(i).getText());
+		}
+		return new String[] { prefix.toString(), suffix.toString() };
+	}
+
+	/**
+	 * does this directive have any nonce values set
+	 * @return true if at least one nonce has been added
+	 */
+	public boolean hasNonces() {
+		return !this.nonces.isEmpty();
+	}
+
+	/**
+	 * nonces and hashes are sources too, so 'none' is never the only source
+	 * of a directive holding them
+	 */
+	@Override
+	protected boolean hasOtherSources() {
+		return super.hasOtherSources() || !this.nonces.isEmpty() || !this.hashes.isEmpty();
+	}
+
+	@Override
+	protected void collectValues(Collection<String> values) {
+		super.collectValues(values);
+		for (int i = 0; i < this.nonces.size(); i++) {
+			values.add(this.nonces.get(i).getText());
+		}
+		for (int i = 0; i < this.hashes.size(); i++) {
+			values.add(this.hashes.get(i).getText());
+		}
+	}
+
+	/**
+	 * nonces and hashes are values too, so a directive holding only those is
+	 * not empty
+	 */
+	@Override
+	public boolean isEmpty() {
+		return super.isEmpty() && this.nonces.isEmpty() && this.hashes.isEmpty();
+	}
 	
 	
 	/**
@@ -16,7 +16,9 @@
 package tophersmith.security.headers.csp.directives.impl;
 
 import tophersmith.security.headers.csp.CSPValidationReport;
-import tophersmith.security.headers.csp.directives.AbstractCSPDirective;
+import tophersmith.security.headers.csp.directives.AbstractSrcDirective;
+import tophersmith.security.headers.util.SourceExpression;
+import tophersmith.security.headers.util.SourceKind;
 import tophersmith.security.headers.util.Validator;
 
 /**
@@ -33,7 +35,7 @@ import tophersmith.security.headers.util.Validator;
  * @author Chris Smith
  *
  */
-public class FrameAncestorsDirective extends AbstractCSPDirective {
+public class FrameAncestorsDirective extends AbstractSrcDirective {
 
 	/**
 	 * The name of the directive
@@ -74,13 +76,12 @@ public class FrameAncestorsDirective extends AbstractCSPDirective {
 
 	@Override
 	public void validateAndReport(CSPValidationReport report) {
-		for (int i = 0; i < this.directiveValues.size(); i++) {
-			String val = this.directiveValues.get(i);
-			val = val.trim().toLowerCase();
-			if (!Validator.isValidSrcKeyword(val) &&
-					!Validator.isValidHostSource(val) && 
-					!Validator.isValidSchemeSource(val)) {
-				report.addError(this, "Ancestor Source " + val + 
+		for (int i = 0; i < this.sources.size(); i++) {
+			SourceExpression source = this.sources.get(i);
+			SourceKind kind = source.getKind();
+			if (kind != SourceKind.HOST && kind != SourceKind.SCHEME &&
+					!(kind == SourceKind.KEYWORD && Validator.isValidSrcKeyword(source.getKeyword()))) {
+				report.addError(this, "Ancestor Source " + source.getText() + 
 						" is not one of host-source, scheme-source, 'self', or 'none'");
 			}
 		}
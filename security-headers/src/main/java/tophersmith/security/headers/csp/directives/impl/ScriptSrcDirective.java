@@ -16,6 +16,7 @@
 package tophersmith.security.headers.csp.directives.impl;
 
 import tophersmith.security.headers.csp.directives.AbstractUnsafeDirective;
+import tophersmith.security.headers.util.ContentHasher;
 import tophersmith.security.headers.util.Validator;
 
 /**
@@ -111,4 +112,27 @@ public class ScriptSrcDirective extends AbstractUnsafeDirective {
 		addNewHash(hashType, b64Hash);
 		return this;
 	}
+
+	/**
+	 * adds the sha256 hash-source of an inline script to the directive
+	 * @param content the text of the script element as it appears between 
+	 * the tags; CRLF and CR line endings are hashed as LF, as browsers do
+	 * @return a reference to this object
+	 */
+	public ScriptSrcDirective addInlineHash(String content) {
+		addNewInlineHash(ContentHasher.Algorithm.SHA256, content);
+		return this;
+	}
+
+	/**
+	 * adds the hash-source of an inline script to the directive
+	 * @param algorithm the digest algorithm
+	 * @param content the text of the script element as it appears between 
+	 * the tags; CRLF and CR line endings are hashed as LF, as browsers do
+	 * @return a reference to this object
+	 */
+	public ScriptSrcDirective addInlineHash(ContentHasher.Algorithm algorithm, String content) {
+		addNewInlineHash(algorithm, content);
+		return this;
+	}
 }
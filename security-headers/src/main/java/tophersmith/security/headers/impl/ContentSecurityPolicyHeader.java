@@ -18,6 +18,8 @@ package tophersmith.security.headers.impl;
 import java.util.List;
 
 import tophersmith.security.headers.csp.CSPHeaderName;
+import tophersmith.security.headers.csp.CSPNonceTemplate;
+import tophersmith.security.headers.csp.CSPValidationReport;
 import tophersmith.security.headers.csp.ContentSecurityPolicy;
 import tophersmith.security.headers.util.InvalidHeaderException;
 
@@ -56,7 +58,9 @@ public class ContentSecurityPolicyHeader extends AbstractHeader {
 	}
 
 	/**
-	 * Sets Content-Security-Policy to reduce the policy
+	 * Sets Content-Security-Policy to reduce the policy each time it is built.
+	 * A frozen policy is never reduced again, see 
+	 * {@link ContentSecurityPolicy#freeze()}
 	 * @param reduce true if CSP should be minified
 	 * @return a reference to this object
 	 */
@@ -79,7 +83,7 @@ public class ContentSecurityPolicyHeader extends AbstractHeader {
 	public String buildHeaderValue() {
 		String value = null;
 		if (this.csp != null) {
-			if (this.reduce) {
+			if (this.reduce && !this.csp.isFrozen()) {
 				this.csp.reduce();
 			}
 			value = this.csp.build();
@@ -87,6 +91,23 @@ public class ContentSecurityPolicyHeader extends AbstractHeader {
 		return value;
 	}
 
+	/**
+	 * Constructs a template of this header's value with nonce slots, see 
+	 * {@link ContentSecurityPolicy#buildNonceTemplate()}. Reduces the policy
+	 * first if reduction is enabled. Does not validate.
+	 * @return a template of this header's value, or null if no policy is set
+	 */
+	public CSPNonceTemplate buildHeaderValueTemplate() {
+		CSPNonceTemplate template = null;
+		if (this.csp != null) {
+			if (this.reduce && !this.csp.isFrozen()) {
+				this.csp.reduce();
+			}
+			template = this.csp.buildNonceTemplate();
+		}
+		return template;
+	}
+
 	/**
 	 * validation is dispatched to {@link ContentSecurityPolicy#isValid()}
 	 */
@@ -107,6 +128,19 @@ public class ContentSecurityPolicyHeader extends AbstractHeader {
 		}
 	}
 	
+	/**
+	 * validate the policy into a new report without touching the report 
+	 * read by {@link #getValidationErrors()}, see 
+	 * {@link ContentSecurityPolicy#validate()}
+	 * @return a new validation report, or null if no policy is set
+	 */
+	public CSPValidationReport validatePolicy() {
+		if (this.csp == null) {
+			return null;
+		}
+		return this.csp.validate();
+	}
+	
 	/**
 	 * return all validation errors. Must have called validate already
 	 * @return List of validation errors
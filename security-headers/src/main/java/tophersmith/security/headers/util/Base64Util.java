@@ -0,0 +1,218 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.util;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+/**
+ * Base64Util encodes bytes as padded base64 (RFC 4648) directly into a
+ * caller-supplied char[], CharBuffer or Appendable, so that a nonce can be
+ * written straight into a header or HTML buffer without an intermediate
+ * String.
+ *
+ * @author Chris Smith
+ *
+ */
+public final class Base64Util {
+
+	/**
+	 * The character set used to encode
+	 */
+	public enum Alphabet {
+		/**
+		 * A-Z, a-z, 0-9, + and /
+		 */
+		STANDARD("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"),
+
+		/**
+		 * A-Z, a-z, 0-9, - and _ which need no escaping in URLs
+		 */
+		URL_SAFE("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"),
+		;
+
+		private final char[] chars;
+
+		private Alphabet(String chars) {
+			this.chars = chars.toCharArray();
+		}
+	}
+
+	private static final char PAD = '=';
+
+	private Base64Util() {
+	}
+
+	/**
+	 * compute the number of characters needed to encode some bytes
+	 * @param length the number of bytes to encode
+	 * @return the encoded length, including padding
+	 */
+	public static int encodedLength(int length) {
+		return ((length + 2) / 3) * 4;
+	}
+
+	/**
+	 * check that part of a value is padded base64 in the standard alphabet 
+	 * and find how many bytes it decodes to, in a single scan
+	 * @param value the value to check
+	 * @param start the index of the first base64 character
+	 * @param end the index after the last base64 character
+	 * @return the decoded length in bytes, or -1 if the value is empty, is 
+	 * not a multiple of 4 long, or has a character or padding out of place
+	 */
+	public static int decodedLength(CharSequence value, int start, int end) {
+		return decodedLength(value, start, end, Alphabet.STANDARD);
+	}
+
+	/**
+	 * check that part of a value is padded base64 in the given alphabet and
+	 * find how many bytes it decodes to, in a single scan
+	 * @param value the value to check
+	 * @param start the index of the first base64 character
+	 * @param end the index after the last base64 character
+	 * @param alphabet the alphabet the value must be encoded in
+	 * @return the decoded length in bytes, or -1 if the value is empty, is 
+	 * not a multiple of 4 long, or has a character or padding out of place
+	 */
+	public static int decodedLength(CharSequence value, int start, int end, Alphabet alphabet) {
+		int length = end - start;
+		if (length <= 0 || (length & 3) != 0) {
+			return -1;
+		}
+		int padding = 0;
+		for (int i = start; i < end; i++) {
+			char c = value.charAt(i);
+			if (c == PAD) {
+				if (i < end - 2) {
+					return -1;
+				}
+				padding++;
+			} else if (padding > 0 || !isAlphabetChar(c, alphabet)) {
+				return -1;
+			}
+		}
+		return (length >> 2) * 3 - padding;
+	}
+
+	private static boolean isAlphabetChar(char c, Alphabet alphabet) {
+		if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+			return true;
+		}
+		return alphabet == Alphabet.STANDARD ? c == '+' || c == '/' : c == '-' || c == '_';
+	}
+
+	/**
+	 * encode bytes with the standard alphabet
+	 * @param src the bytes to encode
+	 * @return the padded base64 String
+	 */
+	public static String encode(byte[] src) {
+		char[] dst = new char[encodedLength(src.length)];
+		encode(src, 0, src.length, dst, 0, Alphabet.STANDARD);
+		return new String(dst);
+	}
+
+	/**
+	 * encode bytes into a char array
+	 * @param src the bytes to encode
+	 * @param offset the index of the first byte to encode
+	 * @param length the number of bytes to encode
+	 * @param dst the array to write into
+	 * @param dstOffset the index in dst to start writing at
+	 * @param alphabet the alphabet to encode with
+	 * @return the number of characters written, see {@link #encodedLength(int)}
+	 */
+	public static int encode(byte[] src, int offset, int length, char[] dst, int dstOffset, Alphabet alphabet) {
+		char[] chars = alphabet.chars;
+		int end = offset + length;
+		int full = offset + (length / 3) * 3;
+		int pos = dstOffset;
+		int i = offset;
+		while (i < full) {
+			int bits = (src[i++] & 0xff) << 16 | (src[i++] & 0xff) << 8 | (src[i++] & 0xff);
+			dst[pos++] = chars[bits >>> 18];
+			dst[pos++] = chars[(bits >>> 12) & 0x3f];
+			dst[pos++] = chars[(bits >>> 6) & 0x3f];
+			dst[pos++] = chars[bits & 0x3f];
+		}
+		int remaining = end - i;
+		if (remaining > 0) {
+			int bits = (src[i] & 0xff) << 16 | (remaining == 2 ? (src[i + 1] & 0xff) << 8 : 0);
+			dst[pos++] = chars[bits >>> 18];
+			dst[pos++] = chars[(bits >>> 12) & 0x3f];
+			dst[pos++] = remaining == 2 ? chars[(bits >>> 6) & 0x3f] : PAD;
+			dst[pos++] = PAD;
+		}
+		return pos - dstOffset;
+	}
+
+	/**
+	 * encode bytes into a CharBuffer, advancing its position
+	 * @param src the bytes to encode
+	 * @param offset the index of the first byte to encode
+	 * @param length the number of bytes to encode
+	 * @param dst the buffer to write into
+	 * @param alphabet the alphabet to encode with
+	 * @throws java.nio.BufferOverflowException if dst has too little space
+	 */
+	public static void encode(byte[] src, int offset, int length, CharBuffer dst, Alphabet alphabet) {
+		int size = encodedLength(length);
+		if (dst.hasArray()) {
+			if (dst.remaining() < size) {
+				throw new java.nio.BufferOverflowException();
+			}
+			encode(src, offset, length, dst.array(), dst.arrayOffset() + dst.position(), alphabet);
+			dst.position(dst.position() + size);
+		} else {
+			char[] chars = new char[size];
+			encode(src, offset, length, chars, 0, alphabet);
+			dst.put(chars);
+		}
+	}
+
+	/**
+	 * encode bytes onto an Appendable such as a Writer or StringBuilder
+	 * @param src the bytes to encode
+	 * @param offset the index of the first byte to encode
+	 * @param length the number of bytes to encode
+	 * @param dst the Appendable to write to
+	 * @param alphabet the alphabet to encode with
+	 * @throws IOException if dst cannot be appended to
+	 */
+	public static void encode(byte[] src, int offset, int length, Appendable dst, Alphabet alphabet)
+			throws IOException {
+		char[] chars = alphabet.chars;
+		int end = offset + length;
+		int full = offset + (length / 3) * 3;
+		int i = offset;
+		while (i < full) {
+			int bits = (src[i++] & 0xff) << 16 | (src[i++] & 0xff) << 8 | (src[i++] & 0xff);
+			dst.append(chars[bits >>> 18]);
+			dst.append(chars[(bits >>> 12) & 0x3f]);
+			dst.append(chars[(bits >>> 6) & 0x3f]);
+			dst.append(chars[bits & 0x3f]);
+		}
+		int remaining = end - i;
+		if (remaining > 0) {
+			int bits = (src[i] & 0xff) << 16 | (remaining == 2 ? (src[i + 1] & 0xff) << 8 : 0);
+			dst.append(chars[bits >>> 18]);
+			dst.append(chars[(bits >>> 12) & 0x3f]);
+			dst.append(remaining == 2 ? chars[(bits >>> 6) & 0x3f] : PAD);
+			dst.append(PAD);
+		}
+	}
+}
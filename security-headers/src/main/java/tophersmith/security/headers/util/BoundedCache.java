@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A BoundedCache is a concurrent map that holds at most a fixed number of
+ * entries. Once full, the oldest entries are evicted first. Lookups are
+ * counted as hits or misses so the cache can be sized from its statistics.
+ * <br><br>
+ * Keys and values may not be null. Caches are safe to share between threads.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ *
+ * @author Chris Smith
+ *
+ */
+public class BoundedCache<K, V> {
+
+	private final int maximumSize;
+	private final ConcurrentMap<K, V> map;
+	private final Queue<K> insertionOrder;
+	private final AtomicInteger size;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+	private final AtomicLong evictions;
+
+	/**
+	 * Construct an empty cache
+	 * @param maximumSize the maximum number of entries, at least 1
+	 */
+	public BoundedCache(int maximumSize) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("maximum size must be at least 1");
+		}
+		this.maximumSize = maximumSize;
+		this.map = new ConcurrentHashMap<K, V>(Math.min(maximumSize, 1 << 16));
+		this.insertionOrder = new ConcurrentLinkedQueue<K>();
+		this.size = new AtomicInteger();
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.evictions = new AtomicLong();
+	}
+
+	/**
+	 * look up a cached value
+	 * @param key the key to look up
+	 * @return the cached value, or null if there is none
+	 */
+	public V get(K key) {
+		V value = this.map.get(key);
+		if (value == null) {
+			this.misses.incrementAndGet();
+		} else {
+			this.hits.incrementAndGet();
+		}
+		return value;
+	}
+
+	/**
+	 * cache a value unless the key is already cached, evicting the oldest 
+	 * entries if the cache is full
+	 * @param key the key to cache under
+	 * @param value the value to cache
+	 */
+	public void put(K key, V value) {
+		if (key == null || value == null) {
+			throw new IllegalArgumentException("keys and values may not be null");
+		}
+		if (this.map.putIfAbsent(key, value) != null) {
+			return;
+		}
+		this.insertionOrder.offer(key);
+		if (this.size.incrementAndGet() > this.maximumSize) {
+			evict();
+		}
+	}
+
+	private void evict() {
+		while (this.size.get() > this.maximumSize) {
+			K oldest = this.insertionOrder.poll();
+			if (oldest == null) {
+				return;
+			}
+			if (this.map.remove(oldest) != null) {
+				this.size.decrementAndGet();
+				this.evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * remove every entry. The statistics are kept.
+	 */
+	public void clear() {
+		K key;
+		while ((key = this.insertionOrder.poll()) != null) {
+			if (this.map.remove(key) != null) {
+				this.size.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of cached entries
+	 */
+	public int size() {
+		return Math.min(this.size.get(), this.maximumSize);
+	}
+
+	/**
+	 * @return the maximum number of cached entries
+	 */
+	public int getMaximumSize() {
+		return this.maximumSize;
+	}
+
+	/**
+	 * @return the number of lookups that found a value
+	 */
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	/**
+	 * @return the number of lookups that found no value
+	 */
+	public long getMissCount() {
+		return this.misses.get();
+	}
+
+	/**
+	 * @return the number of entries removed to make room for newer ones
+	 */
+	public long getEvictionCount() {
+		return this.evictions.get();
+	}
+}
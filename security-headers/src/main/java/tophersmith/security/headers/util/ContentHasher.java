@@ -0,0 +1,250 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * ContentHasher computes the base64 digest of inline script or style 
+ * content for use in a hash-source, e.g. 'sha256-...'. The HTML parser 
+ * turns each CRLF and lone CR into LF before a browser hashes an element's
+ * text, so content is hashed the same way, as UTF-8. Each thread reuses its own MessageDigest
+ * instances, and recent digests are kept in a bounded cache keyed by the 
+ * content, so the same inline block rendered on every page is only hashed
+ * once while it stays cached.
+ * <br><br>
+ * Example:<br>
+ * <code>
+ * new ScriptSrcDirective().addInlineHash(bootstrapScript);
+ * </code>
+ *
+ * @author Chris Smith
+ *
+ */
+public final class ContentHasher {
+
+	/**
+	 * The digest algorithms allowed in a hash-source
+	 */
+	public enum Algorithm {
+		/**
+		 * SHA-256, a 32 byte digest
+		 */
+		SHA256("sha256", "SHA-256"),
+
+		/**
+		 * SHA-384, a 48 byte digest
+		 */
+		SHA384("sha384", "SHA-384"),
+
+		/**
+		 * SHA-512, a 64 byte digest
+		 */
+		SHA512("sha512", "SHA-512"),
+		;
+
+		private final String sourceName;
+		private final String digestName;
+
+		private Algorithm(String sourceName, String digestName) {
+			this.sourceName = sourceName;
+			this.digestName = digestName;
+		}
+
+		/**
+		 * @return the name used in a hash-source, e.g. sha256
+		 */
+		public String getSourceName() {
+			return this.sourceName;
+		}
+	}
+
+	private static final int DEFAULT_CACHE_SIZE = 1024;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final ThreadLocal<MessageDigest[]> DIGESTS = new ThreadLocal<MessageDigest[]>() {
+		@Override
+		protected MessageDigest[] initialValue() {
+			return new MessageDigest[Algorithm.values().length];
+		}
+	};
+
+	private static volatile BoundedCache<String, String>[] caches = newCaches(DEFAULT_CACHE_SIZE);
+
+	private ContentHasher() {
+	}
+
+	/**
+	 * Replace the digest caches with empty ones of the given size per 
+	 * algorithm. By default, 1024 digests are kept for each algorithm.
+	 * @param maximumSize the maximum number of digests kept per algorithm
+	 */
+	public static void setCacheSize(int maximumSize) {
+		caches = newCaches(maximumSize);
+	}
+
+	/**
+	 * @param algorithm a digest algorithm
+	 * @return the cache of digests made with that algorithm
+	 */
+	public static BoundedCache<String, String> getCache(Algorithm algorithm) {
+		return caches[algorithm.ordinal()];
+	}
+
+	/**
+	 * compute the base64 digest of inline content
+	 * @param algorithm the digest algorithm
+	 * @param content the text of a script or style element as it appears 
+	 * between the tags; line endings may be CRLF, CR or LF
+	 * @return the base64 digest of the UTF-8 encoded content, with line 
+	 * endings normalized to LF
+	 */
+	public static String hash(Algorithm algorithm, String content) {
+		if (algorithm == null || content == null) {
+			throw new IllegalArgumentException("algorithm and content must be set");
+		}
+		BoundedCache<String, String> cache = caches[algorithm.ordinal()];
+		String hash = cache.get(content);
+		if (hash == null) {
+			byte[] bytes = normalizeNewlines(content).getBytes(UTF_8);
+			hash = Base64Util.encode(digest(algorithm).digest(bytes));
+			cache.put(content, hash);
+		}
+		return hash;
+	}
+
+	/**
+	 * compute the base64 digest of already encoded content, e.g. part of a
+	 * memory-mapped file, without caching it. The bytes are hashed as they 
+	 * are, see {@link #normalizeNewlines(ByteBuffer, int, int)}.
+	 * @param algorithm the digest algorithm
+	 * @param content the bytes from its position to its limit are hashed, 
+	 * and its position is moved to its limit
+	 * @return the base64 digest of the content
+	 */
+	public static String hashBytes(Algorithm algorithm, ByteBuffer content) {
+		if (algorithm == null || content == null) {
+			throw new IllegalArgumentException("algorithm and content must be set");
+		}
+		MessageDigest digest = digest(algorithm);
+		digest.update(content);
+		return Base64Util.encode(digest.digest());
+	}
+
+	/**
+	 * compute the complete hash-source of inline content
+	 * @param algorithm the digest algorithm
+	 * @param content the text of a script or style element
+	 * @return a hash-source, e.g. 'sha256-...'
+	 */
+	public static String hashSource(Algorithm algorithm, String content) {
+		return "'" + algorithm.sourceName + "-" + hash(algorithm, content) + "'";
+	}
+
+	/**
+	 * Replace each CRLF and lone CR with LF, as the HTML parser does before 
+	 * a browser hashes an element's text
+	 * @param content the text of a script or style element
+	 * @return the normalized text, or content itself if it holds no CR
+	 */
+	public static String normalizeNewlines(String content) {
+		int first = content.indexOf('\r');
+		if (first < 0) {
+			return content;
+		}
+		StringBuilder normalized = new StringBuilder(content.length());
+		normalized.append(content, 0, first);
+		for (int i = first; i < content.length(); i++) {
+			char c = content.charAt(i);
+			if (c == '\r') {
+				c = '\n';
+				if (i + 1 < content.length() && content.charAt(i + 1) == '\n') {
+					i++;
+				}
+			}
+			normalized.append(c);
+		}
+		return normalized.toString();
+	}
+
+	/**
+	 * Replace each CRLF and lone CR with LF in encoded content, as 
+	 * {@link #normalizeNewlines(String)} does. The encoding must be 
+	 * ASCII-compatible, e.g. UTF-8.
+	 * @param buffer the encoded content, which is not modified
+	 * @param from the index of the first byte
+	 * @param to the index after the last byte
+	 * @return the normalized bytes, or null if the range holds no CR and 
+	 * can be hashed in place
+	 */
+	public static byte[] normalizeNewlines(ByteBuffer buffer, int from, int to) {
+		int first = from;
+		while (first < to && buffer.get(first) != '\r') {
+			first++;
+		}
+		if (first == to) {
+			return null;
+		}
+		byte[] normalized = new byte[to - from];
+		int length = 0;
+		for (int i = from; i < to; i++) {
+			byte b = buffer.get(i);
+			if (b == '\r') {
+				b = '\n';
+				if (i + 1 < to && buffer.get(i + 1) == '\n') {
+					i++;
+				}
+			}
+			normalized[length++] = b;
+		}
+		return Arrays.copyOf(normalized, length);
+	}
+
+	/**
+	 * @return this thread's MessageDigest for the algorithm, reset so that a
+	 * hash abandoned part way, e.g. by a fault reading a mapped file, cannot 
+	 * leak into the next one
+	 */
+	static MessageDigest digest(Algorithm algorithm) {
+		MessageDigest[] digests = DIGESTS.get();
+		MessageDigest digest = digests[algorithm.ordinal()];
+		if (digest == null) {
+			try {
+				digest = MessageDigest.getInstance(algorithm.digestName);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(algorithm.digestName + " is not available", e);
+			}
+			digests[algorithm.ordinal()] = digest;
+		} else {
+			digest.reset();
+		}
+		return digest;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static BoundedCache<String, String>[] newCaches(int maximumSize) {
+		BoundedCache<String, String>[] created = new BoundedCache[Algorithm.values().length];
+		for (int i = 0; i < created.length; i++) {
+			created[i] = new BoundedCache<String, String>(maximumSize);
+		}
+		return created;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.util;
+
+/**
+ * HeaderSanitizer strips the carriage returns and line feeds that would let
+ * a header value split the response. Values almost never hold them, so a 
+ * clean value is scanned once and returned as is, without allocating.
+ *
+ * @author Chris Smith
+ *
+ */
+public final class HeaderSanitizer {
+
+	private HeaderSanitizer() {
+	}
+
+	/**
+	 * find the first carriage return or line feed in part of a value
+	 * @param value the value to scan
+	 * @param start the index to start scanning at
+	 * @return the index of the first CR or LF at or after start, or -1
+	 */
+	public static int indexOfIllegal(CharSequence value, int start) {
+		for (int i = start; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\r' || c == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param value the value to scan
+	 * @return true if value holds no carriage return or line feed
+	 */
+	public static boolean isClean(CharSequence value) {
+		return indexOfIllegal(value, 0) < 0;
+	}
+
+	/**
+	 * removes every carriage return and line feed from a value
+	 * @param value the value to sanitize
+	 * @return value itself if it is clean, else a copy without CR or LF
+	 */
+	public static String sanitize(String value) {
+		int first = indexOfIllegal(value, 0);
+		if (first < 0) {
+			return value;
+		}
+		char[] chars = new char[value.length() - 1];
+		value.getChars(0, first, chars, 0);
+		int length = first;
+		for (int i = first + 1; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c != '\r' && c != '\n') {
+				chars[length++] = c;
+			}
+		}
+		return new String(chars, 0, length);
+	}
+}
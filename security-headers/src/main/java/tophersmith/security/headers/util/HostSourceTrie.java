@@ -0,0 +1,217 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A HostSourceTrie holds host-sources keyed by their host labels in reverse,
+ * so com, then example, then www for www.example.com. Finding whether a 
+ * host is already allowed by a wildcard such as *.example.com then takes one
+ * step per label of the host, no matter how many sources are held.
+ * <br><br>
+ * One source covers another when it matches every URL the other matches: 
+ * both have the same scheme or no scheme, its port is * or the same port, 
+ * and it has no path, the same path, or a path ending in / that the other's
+ * path starts with. Hosts and schemes are compared without regard to case.
+ * <br><br>
+ * Tries are not safe to share between threads while sources are added.
+ * 
+ * @author Chris Smith
+ *
+ */
+public class HostSourceTrie {
+
+	private final Node root = new Node();
+	private int size = 0;
+
+	/**
+	 * add a host-source to this trie
+	 * @param source a host-source, e.g. https://*.example.com
+	 * @return true if source was added, false if it is not a host-source
+	 */
+	public boolean add(String source) {
+		return add(SourceExpression.parse(source));
+	}
+
+	/**
+	 * add a host-source to this trie
+	 * @param source a parsed host-source
+	 * @return true if source was added, false if it is not a host-source
+	 */
+	public boolean add(SourceExpression source) {
+		if (source.getKind() != SourceKind.HOST) {
+			return false;
+		}
+		Node node = this.root;
+		for (int i = 0; i < source.getLabelCount(); i++) {
+			node = node.child(source.getLabelFromEnd(i), true);
+		}
+		if (source.isWildcardHost()) {
+			node.wildcards = add(node.wildcards, source);
+		} else {
+			node.exact = add(node.exact, source);
+		}
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * test whether an equal host-source has been added. Sources are equal 
+	 * when they cover each other, e.g. Example.com and example.com
+	 * @param source a host-source
+	 * @return true if an equal source is in this trie
+	 */
+	public boolean contains(String source) {
+		return contains(SourceExpression.parse(source));
+	}
+
+	/**
+	 * test whether an equal host-source has been added, see 
+	 * {@link #contains(String)}
+	 * @param source a parsed host-source
+	 * @return true if an equal source is in this trie
+	 */
+	public boolean contains(SourceExpression source) {
+		if (source.getKind() != SourceKind.HOST) {
+			return false;
+		}
+		Node node = this.root;
+		for (int i = 0; i < source.getLabelCount() && node != null; i++) {
+			node = node.child(source.getLabelFromEnd(i), false);
+		}
+		if (node == null) {
+			return false;
+		}
+		List<SourceExpression> entries = source.isWildcardHost() ? node.wildcards : node.exact;
+		if (entries != null) {
+			for (int i = 0; i < entries.size(); i++) {
+				SourceExpression entry = entries.get(i);
+				if (covers(entry, source) && covers(source, entry)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * find a wildcard host-source that allows everything the given source 
+	 * allows, and more. A source equal to the given one, see 
+	 * {@link #contains(String)}, is not returned.
+	 * @param source a host-source, e.g. https://a.b.example.com
+	 * @return a wildcard host-source in this trie, e.g. https://*.example.com,
+	 * or null if there is none
+	 */
+	public String findCovering(String source) {
+		SourceExpression covering = findCovering(SourceExpression.parse(source));
+		return covering == null ? null : covering.getText();
+	}
+
+	/**
+	 * find a wildcard host-source that allows everything the given source 
+	 * allows, and more, see {@link #findCovering(String)}
+	 * @param source a parsed host-source
+	 * @return a wildcard host-source in this trie, or null if there is none
+	 */
+	public SourceExpression findCovering(SourceExpression source) {
+		if (source.getKind() != SourceKind.HOST) {
+			return null;
+		}
+		Node node = this.root;
+		for (int i = 0; i < source.getLabelCount() && node != null; i++) {
+			SourceExpression covering = findWildcard(node.wildcards, source);
+			if (covering != null) {
+				return covering;
+			}
+			node = node.child(source.getLabelFromEnd(i), false);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the number of host-sources added
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	private static SourceExpression findWildcard(List<SourceExpression> wildcards, SourceExpression source) {
+		if (wildcards != null) {
+			for (int i = 0; i < wildcards.size(); i++) {
+				SourceExpression entry = wildcards.get(i);
+				if (covers(entry, source)) {
+					return entry;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * does a source match every URL other matches, given that its host 
+	 * already does
+	 */
+	private static boolean covers(SourceExpression source, SourceExpression other) {
+		String scheme = source.getScheme();
+		if (scheme == null ? other.getScheme() != null : !scheme.equals(other.getScheme())) {
+			return false;
+		}
+		if (source.getPort() != SourceComponents.PORT_WILDCARD && source.getPort() != other.getPort()) {
+			return false;
+		}
+		String path = source.getPath();
+		if (path == null) {
+			return true;
+		}
+		if (other.getPath() == null) {
+			return false;
+		}
+		return path.endsWith("/") ? other.getPath().startsWith(path) : path.equals(other.getPath());
+	}
+
+	private static List<SourceExpression> add(List<SourceExpression> entries, SourceExpression entry) {
+		if (entries == null) {
+			entries = new ArrayList<SourceExpression>(1);
+		}
+		entries.add(entry);
+		return entries;
+	}
+
+	/**
+	 * a host label, with the sources ending at it
+	 */
+	private static final class Node {
+		private Map<String, Node> children = null;
+		private List<SourceExpression> exact = null;
+		private List<SourceExpression> wildcards = null;
+
+		Node child(String label, boolean create) {
+			Node child = this.children == null ? null : this.children.get(label);
+			if (child == null && create) {
+				if (this.children == null) {
+					this.children = new HashMap<String, Node>();
+				}
+				child = new Node();
+				this.children.put(label, child);
+			}
+			return child;
+		}
+	}
+}
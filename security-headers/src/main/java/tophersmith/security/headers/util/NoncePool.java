@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A NoncePool keeps a bounded ring of ready-made base64 nonces so that
+ * taking a nonce on the request path is a single compare-and-set.
+ * <br><br>
+ * The ring is refilled in batches by a background thread: one large
+ * {@link SecureRandomUtil#nextBytes(byte[])} draw is sliced into as many
+ * nonces as there are free slots. A refill starts whenever the pool drops
+ * below half full. If the pool is ever drained, nonces are generated inline
+ * instead, exactly as
+ * {@link tophersmith.security.headers.csp.directives.AbstractUnsafeDirective#generateNonce(int)}
+ * does, and counted as misses.
+ * <br><br>
+ * Every nonce is handed out at most once. Pools are safe to share between
+ * threads.
+ *
+ * @author Chris Smith
+ *
+ */
+public class NoncePool {
+
+	private final int nonceSize;
+	private final AtomicReferenceArray<String> ring;
+	private final int mask;
+	private final int refillThreshold;
+
+	private final AtomicLong head; // next slot to take, also the number of pooled nonces taken
+	private final AtomicLong tail; // next slot to fill, only written by the refill
+	private final AtomicLong misses;
+	private final AtomicBoolean refilling;
+	private final ExecutorService refiller;
+
+	/**
+	 * Construct a pool and fill it before returning
+	 * @param nonceSize the number of random bytes in each nonce, as in
+	 * {@link tophersmith.security.headers.csp.directives.AbstractUnsafeDirective#generateNonce(int)}
+	 * @param capacity the maximum number of ready nonces. This value is
+	 * rounded up to the next power of two.
+	 */
+	public NoncePool(int nonceSize, int capacity) {
+		if (nonceSize < 1) {
+			throw new IllegalArgumentException("nonce size must be at least 1");
+		}
+		if (capacity < 1 || capacity > (1 << 20)) {
+			throw new IllegalArgumentException("capacity must be between 1 and " + (1 << 20));
+		}
+		int size = Integer.highestOneBit(capacity);
+		size = size == capacity ? size : size << 1;
+		this.nonceSize = nonceSize;
+		this.ring = new AtomicReferenceArray<String>(size);
+		this.mask = size - 1;
+		this.refillThreshold = size / 2;
+		this.head = new AtomicLong();
+		this.tail = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.refilling = new AtomicBoolean(true);
+		this.refiller = Executors.newSingleThreadExecutor(new DaemonThreadFactory("nonce-pool-refill"));
+		refill();
+	}
+
+	/**
+	 * Take a nonce from the pool, or generate one inline if the pool is empty
+	 * @return a base64 nonce that has not been handed out before
+	 */
+	public String nextNonce() {
+		for (;;) {
+			long h = this.head.get();
+			long t = this.tail.get();
+			if (h >= t) {
+				this.misses.incrementAndGet();
+				scheduleRefill();
+				return encode(generate(this.nonceSize), 0, this.nonceSize);
+			}
+			String nonce = this.ring.get((int) (h & this.mask));
+			if (this.head.compareAndSet(h, h + 1)) {
+				if (t - h <= this.refillThreshold) {
+					scheduleRefill();
+				}
+				return nonce;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of ready nonces currently in the pool
+	 */
+	public int getDepth() {
+		long h = this.head.get();
+		return (int) Math.max(0, this.tail.get() - h);
+	}
+
+	/**
+	 * @return the maximum number of ready nonces this pool holds
+	 */
+	public int getCapacity() {
+		return this.ring.length();
+	}
+
+	/**
+	 * @return the number of nonces taken from the pool
+	 */
+	public long getHitCount() {
+		return this.head.get();
+	}
+
+	/**
+	 * @return the number of nonces generated inline because the pool was empty
+	 */
+	public long getMissCount() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Stop the background refill. Nonces left in the pool are still handed
+	 * out, after which every nonce is generated inline.
+	 */
+	public void shutdown() {
+		this.refiller.shutdown();
+	}
+
+	/**
+	 * start a background refill unless one is already running
+	 */
+	private void scheduleRefill() {
+		if (this.refilling.compareAndSet(false, true)) {
+			try {
+				this.refiller.execute(new Runnable() {
+					@Override
+					public void run() {
+						refill();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				this.refilling.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Fill every free slot from one batch of random bytes. Only one refill
+	 * runs at a time, so this is the only writer of the tail. Slots are
+	 * written before the tail is advanced past them, and free slots only grow
+	 * while this runs since consumers only advance the head.
+	 */
+	private void refill() {
+		try {
+			long t = this.tail.get();
+			int free = (int) (this.ring.length() - (t - this.head.get()));
+			if (free <= 0) {
+				return;
+			}
+			byte[] batch = generate(free * this.nonceSize);
+			for (int i = 0; i < free; i++) {
+				this.ring.set((int) (t & this.mask), encode(batch, i * this.nonceSize, this.nonceSize));
+				this.tail.set(++t);
+			}
+			Arrays.fill(batch, (byte) 0);
+		} finally {
+			this.refilling.set(false);
+		}
+	}
+
+	private static byte[] generate(int size) {
+		byte[] bytes = new byte[size];
+		SecureRandomUtil.nextBytes(bytes);
+		return bytes;
+	}
+
+	private static String encode(byte[] bytes, int offset, int length) {
+		char[] chars = new char[Base64Util.encodedLength(length)];
+		Base64Util.encode(bytes, offset, length, chars, 0, Base64Util.Alphabet.STANDARD);
+		return new String(chars);
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ParallelRange runs a body once for every index of a range on a fork-join
+ * pool, splitting the range in half until the pieces are small enough to 
+ * run directly. It also holds the one pool shared by every batch component
+ * that is not given a pool of its own.
+ *
+ * @author Chris Smith
+ *
+ */
+public final class ParallelRange {
+
+	/**
+	 * The work done for one index of a range
+	 */
+	public interface Body {
+		/**
+		 * @param index the index to run, from 0 to the size of the range
+		 */
+		void run(int index);
+	}
+
+	private ParallelRange() {
+	}
+
+	/**
+	 * get the pool shared by default, created on first use. Its threads are
+	 * daemon threads sized to the number of available processors, so it 
+	 * never needs to be shut down.
+	 * @return the shared pool
+	 */
+	public static ForkJoinPool defaultPool() {
+		return DefaultPool.POOL;
+	}
+
+	/**
+	 * run the body for every index from 0 to size, returning once all are 
+	 * done
+	 * @param pool the pool to run on
+	 * @param size the number of indexes
+	 * @param threshold the largest range run without splitting it further
+	 * @param body the work for each index
+	 */
+	public static void invoke(ForkJoinPool pool, int size, int threshold, Body body) {
+		if (size > 0) {
+			pool.invoke(new RangeTask(body, threshold, 0, size));
+		}
+	}
+
+	/**
+	 * splits a range in half until it is small enough to run
+	 */
+	private static final class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Body body;
+		private final int threshold;
+		private final int from;
+		private final int to;
+
+		RangeTask(Body body, int threshold, int from, int to) {
+			this.body = body;
+			this.threshold = threshold;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= this.threshold) {
+				for (int i = this.from; i < this.to; i++) {
+					this.body.run(i);
+				}
+				return;
+			}
+			int mid = (this.from + this.to) >>> 1;
+			invokeAll(new RangeTask(this.body, this.threshold, this.from, mid),
+					new RangeTask(this.body, this.threshold, mid, this.to));
+		}
+	}
+
+	private static final class DefaultPool {
+		static final ForkJoinPool POOL = new ForkJoinPool();
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.util;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * SecureRandomConfiguration describes how {@link SecureRandomUtil} generates
+ * random values. It is applied with
+ * {@link SecureRandomUtil#configure(SecureRandomConfiguration)}; changing the
+ * configuration afterwards has no effect until it is applied again.
+ * <br><br>
+ * Example:<br>
+ * <code>
+ * SecureRandomUtil.configure(new SecureRandomConfiguration().setMode(Mode.STRIPED));
+ * </code>
+ *
+ * @author Chris Smith
+ *
+ */
+public class SecureRandomConfiguration {
+
+	/**
+	 * How random values are shared between threads
+	 */
+	public enum Mode {
+		/**
+		 * Every thread draws from one SecureRandom instance. This is the
+		 * default.
+		 */
+		SHARED,
+
+		/**
+		 * Threads draw from one of several independently seeded SecureRandom
+		 * instances, selected by thread, so that concurrent requests do not
+		 * all contend on one instance's lock.
+		 */
+		STRIPED,
+	}
+
+	private static final int MAX_STRIPES = 1024;
+	private static final int DEFAULT_RESEED_INTERVAL = 1000000;
+
+	private Mode mode = Mode.SHARED;
+	private int stripes = defaultStripes();
+	private String algorithm = null;
+	private int reseedInterval = DEFAULT_RESEED_INTERVAL;
+
+	/**
+	 * sets how random values are shared between threads
+	 * @param mode the generator mode
+	 * @return a reference to this object
+	 */
+	public SecureRandomConfiguration setMode(Mode mode) {
+		if (mode == null) {
+			throw new IllegalArgumentException("mode must be set");
+		}
+		this.mode = mode;
+		return this;
+	}
+
+	/**
+	 * sets the number of generators used in {@link Mode#STRIPED} mode. The
+	 * value is rounded up to the next power of two. By default, this is the
+	 * number of available processors.
+	 * @param stripes the number of generators, from 1 to 1024
+	 * @return a reference to this object
+	 */
+	public SecureRandomConfiguration setStripes(int stripes) {
+		if (stripes < 1 || stripes > MAX_STRIPES) {
+			throw new IllegalArgumentException("stripes must be between 1 and " + MAX_STRIPES);
+		}
+		this.stripes = stripes;
+		return this;
+	}
+
+	/**
+	 * sets the SecureRandom algorithm used for every generator, e.g. "DRBG" 
+	 * or "NativePRNGNonBlocking". By default, the generator uses the platform
+	 * default, and in {@link Mode#STRIPED} mode each stripe uses DRBG, or 
+	 * SHA1PRNG before Java 9. NativePRNG algorithms cannot be striped, since
+	 * their instances share one generator.
+	 * @param algorithm a SecureRandom algorithm name, or null for the default
+	 * @return a reference to this object
+	 * @throws IllegalArgumentException if no provider supports the algorithm
+	 */
+	public SecureRandomConfiguration setAlgorithm(String algorithm) {
+		if (algorithm != null) {
+			try {
+				SecureRandom.getInstance(algorithm);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalArgumentException("SecureRandom algorithm " + algorithm + " is not available", e);
+			}
+		}
+		this.algorithm = algorithm;
+		return this;
+	}
+
+	/**
+	 * sets how many times a generator is used before a freshly seeded 
+	 * replacement is prepared for it in the background. By default, this is
+	 * 1,000,000.
+	 * @param uses the number of nextBytes calls between reseeds, at least 1
+	 * @return a reference to this object
+	 */
+	public SecureRandomConfiguration setReseedInterval(int uses) {
+		if (uses < 1) {
+			throw new IllegalArgumentException("reseed interval must be at least 1");
+		}
+		this.reseedInterval = uses;
+		return this;
+	}
+
+	/**
+	 * @return the configured SecureRandom algorithm, or null for the default
+	 */
+	public String getAlgorithm() {
+		return this.algorithm;
+	}
+
+	/**
+	 * @return the number of uses between reseeds
+	 */
+	public int getReseedInterval() {
+		return this.reseedInterval;
+	}
+
+	/**
+	 * @return the configured generator mode
+	 */
+	public Mode getMode() {
+		return this.mode;
+	}
+
+	/**
+	 * @return the number of generators to use, always a power of two, or 1
+	 * when not in {@link Mode#STRIPED} mode
+	 */
+	public int getStripes() {
+		if (this.mode != Mode.STRIPED) {
+			return 1;
+		}
+		int size = Integer.highestOneBit(this.stripes);
+		return size == this.stripes ? size : size << 1;
+	}
+
+	private static int defaultStripes() {
+		return Math.min(Runtime.getRuntime().availableProcessors(), MAX_STRIPES);
+	}
+}
@@ -15,54 +15,205 @@
  */
 package tophersmith.security.headers.util;
 
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import tophersmith.security.headers.util.SecureRandomConfiguration.Mode;
 
 /**
  * SecureRandomUtil manages a SecureRandom instance and dispatches 
- * to it for requested values. The managed instance reseeds every so often
+ * to it for requested values. The managed instance is replaced by a freshly
+ * seeded one every so often. Seeding can block while the platform gathers 
+ * entropy, so replacements are built on a background thread and swapped in
+ * atomically; callers keep using the current generator in the meantime and
+ * never wait for a reseed.
+ * <br><br>
+ * In {@link Mode#STRIPED} mode, values are instead drawn from one of several
+ * generators selected by the calling thread. Each stripe is a separate 
+ * instance, seeded from the master SecureRandom and reseeded on its own 
+ * schedule, so threads on different stripes never contend for the same lock.
+ * Stripes therefore use an algorithm that keeps its state in the instance, 
+ * DRBG by default; NativePRNG instances all draw from one shared pool behind
+ * a JVM-wide lock, so they are rejected in this mode.
+ * See {@link #configure(SecureRandomConfiguration)}.
  *
  * @author Chris Smith
  *
  */
 public final class SecureRandomUtil {
-	private static final Integer COUNTDOWN_MAX = 1000000;
 	private static final Integer SEED_SIZE = 1024;
+	// algorithms whose instances keep their own state, in order of preference
+	private static final String[] STRIPE_ALGORITHMS = { "DRBG", "SHA1PRNG" };
+
+	private static final ExecutorService RESEEDER = 
+			Executors.newSingleThreadExecutor(new DaemonThreadFactory("secure-random-reseed"));
 
 	private final SecureRandom random;
-	private final AtomicInteger countdown; // when countdown reaches 0, reseed and reset countdown
+	private final Stripe[] stripes;
+	private final int stripeMask;
+	private final String algorithm;
+	private final int reseedInterval;
+	private final AtomicLong reseeds;
+
+	private static volatile SecureRandomUtil instance = new SecureRandomUtil(new SecureRandomConfiguration());
+
+	private SecureRandomUtil(SecureRandomConfiguration configuration) {
+		this.reseedInterval = configuration.getReseedInterval();
+		this.reseeds = new AtomicLong();
+		int size = configuration.getStripes();
+		this.stripes = new Stripe[size];
+		this.stripeMask = size - 1;
+		if (configuration.getMode() == Mode.STRIPED) {
+			this.algorithm = stripeAlgorithm(configuration.getAlgorithm());
+			this.random = new SecureRandom();
+			generateNewSeed(this.random);
+			for (int i = 0; i < size; i++) {
+				SecureRandom stripe = newGenerator(this.algorithm);
+				byte[] seed = new byte[SecureRandomUtil.SEED_SIZE];
+				this.random.nextBytes(seed);
+				stripe.setSeed(seed);
+				this.stripes[i] = new Stripe(stripe, this.reseedInterval);
+			}
+		} else {
+			this.algorithm = configuration.getAlgorithm();
+			this.random = newGenerator(this.algorithm);
+			generateNewSeed(this.random);
+			this.stripes[0] = new Stripe(this.random, this.reseedInterval);
+		}
+	}
+
+	/**
+	 * A generator and the number of uses left before it is replaced
+	 */
+	private static final class Stripe {
+		private volatile SecureRandom random;
+		private final AtomicInteger countdown; // when countdown reaches 0, reseed in the background
+
+		Stripe(SecureRandom random, int reseedInterval) {
+			this.random = random;
+			this.countdown = new AtomicInteger(reseedInterval);
+		}
+	}
+
+	/**
+	 * Replace the managed generators with ones built from the given 
+	 * configuration. Values already handed out are unaffected.
+	 * @param configuration describes how values should be generated
+	 * @throws IllegalArgumentException if a NativePRNG algorithm is 
+	 * configured for {@link Mode#STRIPED} mode
+	 */
+	public static void configure(SecureRandomConfiguration configuration) {
+		if (configuration == null) {
+			throw new IllegalArgumentException("configuration must be set");
+		}
+		SecureRandomUtil.instance = new SecureRandomUtil(configuration);
+	}
+
+	/**
+	 * get the number of background reseeds completed since the current
+	 * configuration was applied
+	 * @return the number of generators replaced so far
+	 */
+	public static long getReseedCount() {
+		return SecureRandomUtil.instance.reseeds.get();
+	}
 
-	private static SecureRandomUtil instance = new SecureRandomUtil();
+	/**
+	 * Choose the algorithm of each stripe. Every NativePRNG instance reads 
+	 * from one shared pool under one lock, so stripes of it would still 
+	 * contend, and seeding one would only feed the shared pool.
+	 * @param algorithm the configured algorithm, or null for the default
+	 */
+	private static String stripeAlgorithm(String algorithm) {
+		if (algorithm != null) {
+			if (algorithm.toUpperCase(Locale.ENGLISH).startsWith("NATIVEPRNG")) {
+				throw new IllegalArgumentException("SecureRandom algorithm " + algorithm + 
+						" shares one generator between instances and cannot be striped");
+			}
+			return algorithm;
+		}
+		for (int i = 0; i < STRIPE_ALGORITHMS.length; i++) {
+			try {
+				SecureRandom.getInstance(STRIPE_ALGORITHMS[i]);
+				return STRIPE_ALGORITHMS[i];
+			} catch (NoSuchAlgorithmException e) {
+				// DRBG needs Java 9, try the next
+			}
+		}
+		throw new IllegalStateException("No SecureRandom algorithm suitable for stripes is available");
+	}
 
-	private SecureRandomUtil() {
-		this.random = new SecureRandom();
-		generateNewSeed();
-		this.countdown = new AtomicInteger(SecureRandomUtil.COUNTDOWN_MAX);
+	/**
+	 * Construct an unseeded generator of the given algorithm
+	 * @param algorithm a SecureRandom algorithm, or null for the default
+	 */
+	private static SecureRandom newGenerator(String algorithm) {
+		if (algorithm == null) {
+			return new SecureRandom();
+		}
+		try {
+			return SecureRandom.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			// SecureRandomConfiguration only accepts available algorithms
+			throw new IllegalStateException("SecureRandom algorithm " + algorithm + " is not available", e);
+		}
 	}
 
 	/**
-	 * Reset the seed to a newly seeded value instead of constructing a new 
-	 * object. This is cryptographically strong.
+	 * Seed the generator with fresh entropy. This is cryptographically 
+	 * strong, but may block, so it is never called on the request path once
+	 * the generators are set up.
 	 */
-	private void generateNewSeed() {
-		this.random.setSeed(this.random.generateSeed(SecureRandomUtil.SEED_SIZE));
+	private static void generateNewSeed(SecureRandom random) {
+		random.setSeed(random.generateSeed(SecureRandomUtil.SEED_SIZE));
 	}
 
 	/**
-	 * After some number of uses of this instance, reseed the value <br>
-	 * Note: this method is thread-safe-<i>enough</i>. Several threads can 
-	 * call it simultaneously, and more than one may reseed (which is 
-	 * thread-safe). Therefore, the countdown is a good-enough pseudo-lock 
-	 * to lower the likelihood of doing this operation twice, even though 
-	 * there are no major downsides to doing the operation several times.
+	 * After some number of uses of this stripe, schedule a replacement. <br>
+	 * Only the one caller that takes the countdown to exactly 0 schedules it;
+	 * everyone else, including that caller, carries on with the current 
+	 * generator until the background task swaps in the new one and resets 
+	 * the countdown.
 	 */
-	private void checkReseed() {
-		if (this.countdown.decrementAndGet() <= 0) {
-			this.countdown.set(SecureRandomUtil.COUNTDOWN_MAX);
-			generateNewSeed();
+	private void checkReseed(final Stripe stripe) {
+		if (stripe.countdown.decrementAndGet() == 0) {
+			SecureRandomUtil.RESEEDER.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						SecureRandom fresh = newGenerator(SecureRandomUtil.this.algorithm);
+						generateNewSeed(fresh);
+						stripe.random = fresh;
+						SecureRandomUtil.this.reseeds.incrementAndGet();
+					} finally {
+						// on failure keep the current generator and retry next interval
+						stripe.countdown.set(SecureRandomUtil.this.reseedInterval);
+					}
+				}
+			});
 		}
 	}
 
+	/**
+	 * get the generator the calling thread currently draws from
+	 * @return the generator of the calling thread's stripe
+	 */
+	static SecureRandom currentGenerator() {
+		return SecureRandomUtil.instance.currentStripe().random;
+	}
+
+	/**
+	 * select the stripe for the calling thread
+	 */
+	private Stripe currentStripe() {
+		return this.stripes[(int) Thread.currentThread().getId() & this.stripeMask];
+	}
+
 	/**
 	 * Calls managed SecureRandom method
 	 * @param bytes the byte array to fill with random bytes
@@ -70,7 +221,9 @@ public final class SecureRandomUtil {
 	 * @see SecureRandom#nextBytes(byte[])
 	 */
 	public static void nextBytes(byte[] bytes) {
-		SecureRandomUtil.instance.checkReseed();
-		SecureRandomUtil.instance.random.nextBytes(bytes);;
+		SecureRandomUtil util = SecureRandomUtil.instance;
+		Stripe stripe = util.currentStripe();
+		util.checkReseed(stripe);
+		stripe.random.nextBytes(bytes);
 	}
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.util;
+
+/**
+ * SourceComponents holds the parts of a source expression found by 
+ * {@link SourceLexer#lex(CharSequence, SourceComponents)}. Parts are kept
+ * as indexes into the lexed value so that no Strings are created; an index
+ * of -1 means the part is absent. A holder may be reused for any number of
+ * values, but is not safe to share between threads.
+ * 
+ * @author Chris Smith
+ *
+ */
+public final class SourceComponents {
+
+	/**
+	 * the port value when no port is given
+	 */
+	public static final int PORT_NONE = -1;
+
+	/**
+	 * the port value when the port is *
+	 */
+	public static final int PORT_WILDCARD = -2;
+
+	SourceKind kind;
+	int start;
+	int end;
+	int schemeEnd;
+	int hostStart;
+	int hostEnd;
+	int port;
+	int pathStart;
+	int valueStart;
+	int valueEnd;
+	String keyword;
+	String hashAlgorithm;
+
+	public SourceComponents() {
+		reset();
+	}
+
+	void reset() {
+		this.kind = SourceKind.INVALID;
+		this.start = -1;
+		this.end = -1;
+		this.schemeEnd = -1;
+		this.hostStart = -1;
+		this.hostEnd = -1;
+		this.port = PORT_NONE;
+		this.pathStart = -1;
+		this.valueStart = -1;
+		this.valueEnd = -1;
+		this.keyword = null;
+		this.hashAlgorithm = null;
+	}
+
+	/**
+	 * @return the kind of the last lexed value
+	 */
+	public SourceKind getKind() {
+		return this.kind;
+	}
+
+	/**
+	 * @return the index of the first character after leading whitespace
+	 */
+	public int getStart() {
+		return this.start;
+	}
+
+	/**
+	 * @return the index after the last character before trailing whitespace
+	 */
+	public int getEnd() {
+		return this.end;
+	}
+
+	/**
+	 * @return the index of the colon ending the scheme, or -1 if there is 
+	 * no scheme. The scheme starts at {@link #getStart()}.
+	 */
+	public int getSchemeEnd() {
+		return this.schemeEnd;
+	}
+
+	/**
+	 * @return the index of the first character of a host, or -1
+	 */
+	public int getHostStart() {
+		return this.hostStart;
+	}
+
+	/**
+	 * @return the index after the last character of a host, or -1
+	 */
+	public int getHostEnd() {
+		return this.hostEnd;
+	}
+
+	/**
+	 * @return the port of a host, {@link #PORT_NONE} or {@link #PORT_WILDCARD}
+	 */
+	public int getPort() {
+		return this.port;
+	}
+
+	/**
+	 * @return the index of the slash starting the path of a host, or -1. The 
+	 * path runs to {@link #getEnd()}.
+	 */
+	public int getPathStart() {
+		return this.pathStart;
+	}
+
+	/**
+	 * @return the index of the first base64 character of a nonce or hash, or -1
+	 */
+	public int getValueStart() {
+		return this.valueStart;
+	}
+
+	/**
+	 * @return the index after the last base64 character of a nonce or hash, 
+	 * or -1
+	 */
+	public int getValueEnd() {
+		return this.valueEnd;
+	}
+
+	/**
+	 * @return the keyword as one of the Validator constants, e.g. 
+	 * {@link Validator#SRC_KEY_SELF}, or null
+	 */
+	public String getKeyword() {
+		return this.keyword;
+	}
+
+	/**
+	 * @return the lower case hash algorithm, e.g. sha256, or null
+	 */
+	public String getHashAlgorithm() {
+		return this.hashAlgorithm;
+	}
+}
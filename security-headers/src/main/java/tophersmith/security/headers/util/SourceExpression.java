@@ -0,0 +1,240 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.util;
+
+/**
+ * A SourceExpression is a source-list value parsed once, when it is added to
+ * a directive, so that validation, minimizing and rendering read its parts 
+ * instead of scanning the text again. Expressions are immutable. While the 
+ * source cache is enabled, equal text apart from nonces, which are unique 
+ * by design, is parsed to the same shared instance, so policies built from 
+ * the same sources share them. See {@link Validator#enableSourceCache(int)}.
+ * <br><br>
+ * Expressions are equal when their text is equal. The text is kept exactly
+ * as given and is what a directive renders.
+ * 
+ * @author Chris Smith
+ *
+ */
+public final class SourceExpression {
+
+	private static final String[] NO_LABELS = new String[0];
+
+	private final String text;
+	private final SourceKind kind;
+	private final String keyword;
+	private final String scheme;
+	private final String host;
+	private final String[] labels;
+	private final int port;
+	private final String path;
+	private final String hashAlgorithm;
+	private final String value;
+
+	private SourceExpression(String text) {
+		SourceComponents parts = new SourceComponents();
+		this.text = text;
+		this.kind = SourceLexer.lex(text, parts);
+		this.keyword = parts.getKeyword();
+		this.scheme = parts.getSchemeEnd() < 0 ? null : 
+			text.substring(parts.getStart(), parts.getSchemeEnd()).toLowerCase();
+		if (this.kind == SourceKind.HOST) {
+			this.host = text.substring(parts.getHostStart(), parts.getHostEnd()).toLowerCase();
+			this.labels = reversedLabels(this.host);
+		} else {
+			this.host = null;
+			this.labels = NO_LABELS;
+		}
+		this.port = parts.getPort();
+		this.path = parts.getPathStart() < 0 ? null : text.substring(parts.getPathStart(), parts.getEnd());
+		this.hashAlgorithm = parts.getHashAlgorithm();
+		this.value = parts.getValueStart() < 0 ? null : text.substring(parts.getValueStart(), parts.getValueEnd());
+	}
+
+	/**
+	 * parse a source expression, reusing the cached instance if the source 
+	 * cache is enabled and holds one
+	 * @param text a source expression, e.g. https://*.example.com or 'self'
+	 * @return the parsed expression. An expression that cannot be parsed has
+	 * the kind {@link SourceKind#INVALID} and keeps its text.
+	 */
+	public static SourceExpression parse(String text) {
+		if (text == null) {
+			throw new IllegalArgumentException("source expression must be set");
+		}
+		BoundedCache<String, SourceExpression> cache = Validator.getSourceCache();
+		if (cache == null) {
+			return new SourceExpression(text);
+		}
+		SourceExpression expression = cache.get(text);
+		if (expression == null) {
+			expression = new SourceExpression(text);
+			if (expression.kind != SourceKind.NONCE) {
+				cache.put(text, expression);
+			}
+		}
+		return expression;
+	}
+
+	/**
+	 * split a lower case host into its labels, last label first, leaving out
+	 * a leading * label
+	 */
+	private static String[] reversedLabels(String host) {
+		int stop = host.startsWith("*") ? 1 : -1;
+		if (stop == 1 && host.length() == 1) {
+			return NO_LABELS;
+		}
+		int count = 1;
+		for (int i = stop + 1; i < host.length(); i++) {
+			if (host.charAt(i) == '.') {
+				count++;
+			}
+		}
+		String[] labels = new String[count];
+		int end = host.length();
+		for (int n = 0; n < count; n++) {
+			int start = host.lastIndexOf('.', end - 1) + 1;
+			if (start <= stop) {
+				start = stop + 1;
+			}
+			labels[n] = host.substring(start, end);
+			end = start - 1;
+		}
+		return labels;
+	}
+
+	/**
+	 * @return a host-source equal to this one without its port, or this 
+	 * expression if it is not a host-source with a port
+	 */
+	public SourceExpression withoutPort() {
+		if (this.kind != SourceKind.HOST || this.port == SourceComponents.PORT_NONE) {
+			return this;
+		}
+		StringBuilder sb = new StringBuilder();
+		if (this.scheme != null) {
+			sb.append(this.scheme).append("://");
+		}
+		sb.append(this.host);
+		if (this.path != null) {
+			sb.append(this.path);
+		}
+		return parse(sb.toString());
+	}
+
+	/**
+	 * @return the expression exactly as given
+	 */
+	public String getText() {
+		return this.text;
+	}
+
+	/**
+	 * @return the kind of this expression
+	 */
+	public SourceKind getKind() {
+		return this.kind;
+	}
+
+	/**
+	 * @return the keyword as one of the Validator constants, e.g. 
+	 * {@link Validator#SRC_KEY_SELF}, or null
+	 */
+	public String getKeyword() {
+		return this.keyword;
+	}
+
+	/**
+	 * @return the lower case scheme of a scheme or host-source, or null
+	 */
+	public String getScheme() {
+		return this.scheme;
+	}
+
+	/**
+	 * @return the lower case host of a host-source, e.g. *.example.com, or null
+	 */
+	public String getHost() {
+		return this.host;
+	}
+
+	/**
+	 * @return true if this is a host-source whose host starts with *
+	 */
+	public boolean isWildcardHost() {
+		return this.host != null && this.host.charAt(0) == '*';
+	}
+
+	/**
+	 * @return the number of host labels, not counting a leading *
+	 */
+	public int getLabelCount() {
+		return this.labels.length;
+	}
+
+	/**
+	 * @param index 0 for the last label of the host, e.g. com
+	 * @return a lower case host label, counted from the end of the host
+	 */
+	public String getLabelFromEnd(int index) {
+		return this.labels[index];
+	}
+
+	/**
+	 * @return the port of a host-source, {@link SourceComponents#PORT_NONE} or
+	 * {@link SourceComponents#PORT_WILDCARD}
+	 */
+	public int getPort() {
+		return this.port;
+	}
+
+	/**
+	 * @return the path of a host-source starting with /, or null
+	 */
+	public String getPath() {
+		return this.path;
+	}
+
+	/**
+	 * @return the lower case algorithm of a hash, e.g. sha256, or null
+	 */
+	public String getHashAlgorithm() {
+		return this.hashAlgorithm;
+	}
+
+	/**
+	 * @return the base64 value of a nonce or hash, or null
+	 */
+	public String getValue() {
+		return this.value;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return this == obj || (obj instanceof SourceExpression && this.text.equals(((SourceExpression) obj).text));
+	}
+
+	@Override
+	public int hashCode() {
+		return this.text.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return this.text;
+	}
+}
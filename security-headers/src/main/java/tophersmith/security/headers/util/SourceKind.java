@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.util;
+
+/**
+ * The kinds of source expression that may appear in a CSP source-list, as
+ * classified by {@link SourceLexer}
+ * 
+ * @author Chris Smith
+ *
+ */
+public enum SourceKind {
+	/**
+	 * a quoted keyword such as 'self', 'none', 'unsafe-inline' or 'unsafe-eval'
+	 */
+	KEYWORD,
+
+	/**
+	 * a scheme followed by a colon, e.g. https:
+	 */
+	SCHEME,
+
+	/**
+	 * an optional scheme, a host, an optional port and an optional path, 
+	 * e.g. https://*.example.com:443/path or *
+	 */
+	HOST,
+
+	/**
+	 * a quoted nonce, e.g. 'nonce-QUFBQQ=='
+	 */
+	NONCE,
+
+	/**
+	 * a quoted hash, e.g. 'sha256-QUFBQQ=='
+	 */
+	HASH,
+
+	/**
+	 * anything that is not a valid source expression
+	 */
+	INVALID,
+	;
+}
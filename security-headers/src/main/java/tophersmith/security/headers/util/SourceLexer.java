@@ -0,0 +1,353 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.util;
+
+/**
+ * SourceLexer classifies a CSP source expression in a single scan without
+ * creating any objects. Leading and trailing whitespace is ignored, as with
+ * {@link String#trim()}, and keywords, nonce and hash prefixes are matched
+ * without regard to case.
+ * <br><br>
+ * A host-source is an optional scheme followed by ://, a host of * or of
+ * dot-separated labels optionally starting with *., an optional port of 
+ * digits up to 65535 or *, and an optional path starting with /. The host is
+ * required.
+ * <br><br>
+ * Example:<br>
+ * <code>
+ * SourceComponents parts = new SourceComponents();<br>
+ * if (SourceLexer.lex(value, parts) == SourceKind.HOST) {<br>
+ * &nbsp;&nbsp;int port = parts.getPort();<br>
+ * }
+ * </code>
+ * 
+ * @author Chris Smith
+ *
+ */
+public final class SourceLexer {
+
+	private static final String[] KEYWORDS = { 
+		Validator.SRC_KEY_SELF, Validator.SRC_KEY_NONE, 
+		Validator.SRC_UNSAFE_INLINE, Validator.SRC_UNSAFE_EVAL };
+
+	private static final String[] HASH_ALGORITHMS = { "sha256", "sha384", "sha512" };
+
+	private static final String NONCE_PREFIX = "'nonce-";
+
+	private static final int PORT_MAX = 65535;
+
+	private SourceLexer() {
+	}
+
+	/**
+	 * classify a source expression
+	 * @param value the source expression
+	 * @return the kind of source, or {@link SourceKind#INVALID}
+	 */
+	public static SourceKind classify(CharSequence value) {
+		return lex(value, null);
+	}
+
+	/**
+	 * classify a source expression and record where its parts are
+	 * @param value the source expression
+	 * @param components a holder for the parts of value, or null
+	 * @return the kind of source, or {@link SourceKind#INVALID}
+	 */
+	public static SourceKind lex(CharSequence value, SourceComponents components) {
+		if (components != null) {
+			components.reset();
+		}
+		if (value == null) {
+			return SourceKind.INVALID;
+		}
+		int start = 0;
+		int end = value.length();
+		while (start < end && value.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && value.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		if (start == end) {
+			return SourceKind.INVALID;
+		}
+		SourceKind kind;
+		if (value.charAt(start) == '\'') {
+			kind = lexQuoted(value, start, end, components);
+		} else {
+			kind = lexUnquoted(value, start, end, components);
+		}
+		if (components != null) {
+			if (kind == SourceKind.INVALID) {
+				components.reset();
+			} else {
+				components.kind = kind;
+				components.start = start;
+				components.end = end;
+			}
+		}
+		return kind;
+	}
+
+	/**
+	 * find the keyword a source expression names
+	 * @param value the source expression
+	 * @return one of the Validator keyword constants, or null
+	 */
+	public static String keyword(CharSequence value) {
+		if (value == null) {
+			return null;
+		}
+		int start = 0;
+		int end = value.length();
+		while (start < end && value.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && value.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		return findKeyword(value, start, end);
+	}
+
+	private static String findKeyword(CharSequence value, int start, int end) {
+		for (int i = 0; i < KEYWORDS.length; i++) {
+			String keyword = KEYWORDS[i];
+			if (end - start == keyword.length() && matchesIgnoreCase(value, start, keyword)) {
+				return keyword;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 'keyword', 'nonce-value' or 'algorithm-value'
+	 */
+	private static SourceKind lexQuoted(CharSequence value, int start, int end, SourceComponents components) {
+		if (end - start < 3 || value.charAt(end - 1) != '\'') {
+			return SourceKind.INVALID;
+		}
+		String keyword = findKeyword(value, start, end);
+		if (keyword != null) {
+			if (components != null) {
+				components.keyword = keyword;
+			}
+			return SourceKind.KEYWORD;
+		}
+		int valueStart = -1;
+		SourceKind kind = SourceKind.INVALID;
+		String algorithm = null;
+		if (end - start > NONCE_PREFIX.length() && matchesIgnoreCase(value, start, NONCE_PREFIX)) {
+			valueStart = start + NONCE_PREFIX.length();
+			kind = SourceKind.NONCE;
+		} else {
+			for (int i = 0; i < HASH_ALGORITHMS.length; i++) {
+				String algo = HASH_ALGORITHMS[i];
+				int dash = start + 1 + algo.length();
+				if (dash < end - 1 && matchesIgnoreCase(value, start + 1, algo) && value.charAt(dash) == '-') {
+					valueStart = dash + 1;
+					algorithm = algo;
+					kind = SourceKind.HASH;
+					break;
+				}
+			}
+		}
+		if (kind == SourceKind.INVALID || !isBase64Value(value, valueStart, end - 1)) {
+			return SourceKind.INVALID;
+		}
+		if (components != null) {
+			components.valueStart = valueStart;
+			components.valueEnd = end - 1;
+			components.hashAlgorithm = algorithm;
+		}
+		return kind;
+	}
+
+	/**
+	 * scheme: or [scheme://]host[:port][/path]
+	 */
+	private static SourceKind lexUnquoted(CharSequence value, int start, int end, SourceComponents components) {
+		int hostStart = start;
+		int schemeEnd = -1;
+		if (isAlpha(value.charAt(start))) {
+			int i = start + 1;
+			while (i < end && isSchemeChar(value.charAt(i))) {
+				i++;
+			}
+			if (i < end && value.charAt(i) == ':') {
+				if (i + 1 == end) {
+					if (components != null) {
+						components.schemeEnd = i;
+					}
+					return SourceKind.SCHEME;
+				}
+				if (i + 2 < end && value.charAt(i + 1) == '/' && value.charAt(i + 2) == '/') {
+					schemeEnd = i;
+					hostStart = i + 3;
+				}
+				// otherwise the colon starts a port and the scheme is a host
+			}
+		}
+
+		int i = hostStart;
+		if (i == end) {
+			return SourceKind.INVALID;
+		}
+		if (value.charAt(i) == '*' && (i + 1 == end || value.charAt(i + 1) != '.')) {
+			i++;
+		} else {
+			if (value.charAt(i) == '*') {
+				i += 2;
+			}
+			for (;;) {
+				int labelStart = i;
+				while (i < end && isHostChar(value.charAt(i))) {
+					i++;
+				}
+				if (i == labelStart) {
+					return SourceKind.INVALID;
+				}
+				if (i < end && value.charAt(i) == '.') {
+					i++;
+				} else {
+					break;
+				}
+			}
+		}
+		int hostEnd = i;
+
+		int port = SourceComponents.PORT_NONE;
+		if (i < end && value.charAt(i) == ':') {
+			i++;
+			if (i < end && value.charAt(i) == '*') {
+				port = SourceComponents.PORT_WILDCARD;
+				i++;
+			} else {
+				int digitsStart = i;
+				port = 0;
+				while (i < end && isDigit(value.charAt(i))) {
+					port = port * 10 + (value.charAt(i) - '0');
+					if (port > PORT_MAX) {
+						return SourceKind.INVALID;
+					}
+					i++;
+				}
+				if (i == digitsStart) {
+					return SourceKind.INVALID;
+				}
+			}
+		}
+
+		int pathStart = -1;
+		if (i < end) {
+			if (value.charAt(i) != '/') {
+				return SourceKind.INVALID;
+			}
+			pathStart = i;
+			while (i < end && isPathChar(value.charAt(i))) {
+				i++;
+			}
+			if (i != end) {
+				return SourceKind.INVALID;
+			}
+		}
+
+		if (components != null) {
+			components.schemeEnd = schemeEnd;
+			components.hostStart = hostStart;
+			components.hostEnd = hostEnd;
+			components.port = port;
+			components.pathStart = pathStart;
+		}
+		return SourceKind.HOST;
+	}
+
+	/**
+	 * base64 or base64url characters followed by up to two = characters
+	 */
+	private static boolean isBase64Value(CharSequence value, int start, int end) {
+		int i = start;
+		while (i < end && isBase64Char(value.charAt(i))) {
+			i++;
+		}
+		if (i == start) {
+			return false;
+		}
+		int padding = 0;
+		while (i < end && padding < 2 && value.charAt(i) == '=') {
+			i++;
+			padding++;
+		}
+		return i == end;
+	}
+
+	/**
+	 * compare against a lower case ASCII string
+	 */
+	private static boolean matchesIgnoreCase(CharSequence value, int offset, String lower) {
+		if (offset + lower.length() > value.length()) {
+			return false;
+		}
+		for (int i = 0; i < lower.length(); i++) {
+			char c = value.charAt(offset + i);
+			if (c >= 'A' && c <= 'Z') {
+				c += 'a' - 'A';
+			}
+			if (c != lower.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isAlpha(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isSchemeChar(char c) {
+		return isAlpha(c) || isDigit(c) || c == '+' || c == '-' || c == '.';
+	}
+
+	private static boolean isHostChar(char c) {
+		return isAlpha(c) || isDigit(c) || c == '-';
+	}
+
+	private static boolean isBase64Char(char c) {
+		return isAlpha(c) || isDigit(c) || c == '+' || c == '/' || c == '-' || c == '_';
+	}
+
+	/**
+	 * path characters, less ; and , which separate directives and policies 
+	 * and so cannot appear unencoded in a source
+	 */
+	private static boolean isPathChar(char c) {
+		if (isAlpha(c) || isDigit(c)) {
+			return true;
+		}
+		switch (c) {
+		case '-': case '_': case ':': case '@': case '&': case '?': case '=': case '+':
+		case '.': case '!': case '/': case '~': case '*': case '\'': case '%': case '$':
+		case '(': case ')':
+			return true;
+		default:
+			return false;
+		}
+	}
+}
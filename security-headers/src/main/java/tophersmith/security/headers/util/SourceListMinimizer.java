@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 Christopher Smith
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tophersmith.security.headers.util;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * SourceListMinimizer removes source expressions from a source-list that can
+ * never change what the list matches, so that a policy keeps exactly its 
+ * meaning while taking fewer bytes on every response.
+ * <br><br>
+ * A source is removed when it is an exact duplicate, when it is 'none' and 
+ * other sources are present, when it is a host or network scheme and * is 
+ * present, when it is a host whose scheme is also listed as a 
+ * scheme-source, or when it is a host allowed by a wildcard host such as 
+ * *.example.com, found through a {@link HostSourceTrie}. A port of 443 is removed from https and wss hosts since it
+ * is the default. Port 80 is kept on http and ws hosts, since CSP3 lets a 
+ * portless http source also match its https upgrade.
+ * <br><br>
+ * The wildcard is only taken to cover http, https, ws and wss, since it 
+ * never matches blob:, data: or filesystem: and CSP3 matches other schemes 
+ * only when they are the protected resource's own.
+ * 
+ * @author Chris Smith
+ *
+ */
+public final class SourceListMinimizer {
+
+	private static final String[] NETWORK_SCHEMES = { "http", "https", "ws", "wss" };
+
+	private static final String[] SECURE_SCHEMES = { "https", "wss" };
+
+	private static final int SECURE_PORT = 443;
+
+	private SourceListMinimizer() {
+	}
+
+	/**
+	 * minimize a source-list in place, keeping the order of what remains
+	 * @param sources the source expressions of a directive
+	 * @param hasOtherSources true if the directive holds sources outside of 
+	 * sources, e.g. nonces, so that 'none' is never the only source
+	 * @return true if sources was changed
+	 */
+	public static boolean minimize(List<SourceExpression> sources, boolean hasOtherSources) {
+		Set<SourceExpression> deduped = new LinkedHashSet<SourceExpression>(sources);
+		boolean wildcard = false;
+		Set<String> schemes = new HashSet<String>();
+		HostSourceTrie wildcardHosts = new HostSourceTrie();
+		for (SourceExpression source : deduped) {
+			if (source.getKind() == SourceKind.SCHEME) {
+				schemes.add(source.getScheme());
+			} else if (isWildcard(source)) {
+				wildcard = true;
+			} else if (source.isWildcardHost()) {
+				wildcardHosts.add(stripDefaultPort(source));
+			}
+		}
+		boolean others = hasOtherSources || deduped.size() > 1;
+
+		Set<SourceExpression> minimized = new LinkedHashSet<SourceExpression>();
+		HostSourceTrie hosts = new HostSourceTrie();
+		for (SourceExpression source : deduped) {
+			SourceKind kind = source.getKind();
+			if (kind == SourceKind.KEYWORD) {
+				if (!(others && source.getKeyword() == Validator.SRC_KEY_NONE)) {
+					minimized.add(source);
+				}
+			} else if (kind == SourceKind.SCHEME) {
+				if (!(wildcard && isNetworkScheme(source.getScheme()))) {
+					minimized.add(source);
+				}
+			} else if (kind == SourceKind.HOST && !isWildcard(source)) {
+				String scheme = source.getScheme();
+				if (wildcard && (scheme == null || isNetworkScheme(scheme))) {
+					continue;
+				}
+				if (scheme != null && schemes.contains(scheme)) {
+					continue;
+				}
+				SourceExpression host = stripDefaultPort(source);
+				if (wildcardHosts.findCovering(host) != null || hosts.contains(host)) {
+					continue;
+				}
+				hosts.add(host);
+				minimized.add(host);
+			} else {
+				minimized.add(source);
+			}
+		}
+		if (minimized.size() == sources.size() && sources.containsAll(minimized)) {
+			return false;
+		}
+		sources.clear();
+		sources.addAll(minimized);
+		return true;
+	}
+
+	/**
+	 * @return true if a source is a lone *
+	 */
+	private static boolean isWildcard(SourceExpression source) {
+		return source.getKind() == SourceKind.HOST && source.getScheme() == null && 
+				"*".equals(source.getHost()) && source.getPort() == SourceComponents.PORT_NONE && 
+				source.getPath() == null;
+	}
+
+	private static boolean isNetworkScheme(String scheme) {
+		return contains(NETWORK_SCHEMES, scheme);
+	}
+
+	private static SourceExpression stripDefaultPort(SourceExpression source) {
+		String scheme = source.getScheme();
+		if (source.getPort() != SECURE_PORT || scheme == null || !contains(SECURE_SCHEMES, scheme)) {
+			return source;
+		}
+		return source.withoutPort();
+	}
+
+	private static boolean contains(String[] values, String value) {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i].equals(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
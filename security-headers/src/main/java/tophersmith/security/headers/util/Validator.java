@@ -1,10 +1,5 @@
 package tophersmith.security.headers.util;
 
-import java.nio.file.InvalidPathException;
-import java.nio.file.Paths;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
  * The Validator class contains multiple helper methods to verify that
  * given values conform to certain characteristics
@@ -42,36 +37,46 @@ public class Validator{
 	//these characters may not exist in any directive value
 	static final String[] ILLEGAL_SRC_CHARS = { " ", ";", "," };
 
-	private static final int PORT_MAX = 65535;
-	private static final int PORT_MIN = 0;
-
-	// 1 letter plus optional letters, digits, +, -, or .
-	private static final String SCHEME_PART = "[a-zA-Z]{1}(?:[a-zA-Z0-9\\+\\-\\.])*";
-
-	// * OR Optional *. plus 1 or more letters/digits plus optional . plus 1 or more letters/digits
-	private static final String HOST_PART = "(?:[*])|(?:(?:\\*\\.)?[A-Za-z0-9\\-]{1}(?:[\\.]?[A-Za-z0-9\\-])*)";
-
-	// : followed by either 1 or more digits or *
-	private static final String PORT_PART = ":(?:[\\d]+|\\*)";
-
-	// a slash optionally followed by a non-slash character followed by any characters
-	//private static final String PATH_PART = "(?:\\/[^?#]*)+";
-	private static final String PATH_PART = "(?:\\/[-\\w:@&?=+,.!/~*'%$_;\\(\\)]*)";
-
-	//host-source definition
-	private static final Pattern HOST_SOURCE = Pattern.compile("^" + // match start of string
-			"(" + SCHEME_PART + ":\\/\\/)?" + // scheme-part is optional
-			"(" + HOST_PART + ")?" + // host-part is required
-			"(" + PORT_PART + ")?" + // port-part is optional
-			"(" + PATH_PART + ")?" + // path-part is optional
-			"$");//match end of string
-
-	//scheme-source definition
-	private static final Pattern SCHEME_SOURCE = Pattern.compile("^" + SCHEME_PART + ":$");
-
+	//optional cache of parsed sources shared by every directive
+	private static volatile BoundedCache<String, SourceExpression> sourceCache = null;
+	
+	/**
+	 * Cache each parsed source expression so that sources repeated across
+	 * directives and policies are only lexed once and share one instance.
+	 * Any previously cached sources are discarded.
+	 * @param maximumSize the maximum number of cached sources
+	 */
+	public static void enableSourceCache(int maximumSize){
+		sourceCache = new BoundedCache<String, SourceExpression>(maximumSize);
+	}
 	
-	//base64 definition
-	private static final Pattern BASE64 = Pattern.compile("^([A-Za-z0-9+/]{4})*([A-Za-z0-9+/]{4}|[A-Za-z0-9+/]{3}=|[A-Za-z0-9+/]{2}==)$");
+	/**
+	 * Stop caching source classifications
+	 */
+	public static void disableSourceCache(){
+		sourceCache = null;
+	}
+	
+	/**
+	 * get the source cache, e.g. to read its hit and miss counts
+	 * @return the source cache, or null if it is not enabled
+	 */
+	public static BoundedCache<String, SourceExpression> getSourceCache(){
+		return sourceCache;
+	}
+	
+	/**
+	 * classify a source expression, using the source cache if it is enabled
+	 * @param value the source expression
+	 * @return the kind of source, or {@link SourceKind#INVALID}
+	 * @see #enableSourceCache(int)
+	 */
+	public static SourceKind classifySource(String value){
+		if(sourceCache == null || value == null){
+			return SourceLexer.classify(value);
+		}
+		return SourceExpression.parse(value).getKind();
+	}
 	
 	public static boolean hasValidCharacters(String value){
 		if(value == null){
@@ -87,75 +92,25 @@ public class Validator{
 	
 	
 	public static boolean isValidSrcKeyword(String value){
-		return  value != null && 
-				( value.equals(SRC_KEY_SELF) || 
-				  value.equals(SRC_KEY_NONE) );
+		// the lexer hands back these constants, so identity is enough
+		String keyword = SourceLexer.keyword(value);
+		return keyword == SRC_KEY_SELF || keyword == SRC_KEY_NONE;
 	}
 	
 	
 	public static boolean isValidUnsafeKeyword(String value){
-		return  value != null && 
-				( value.equals(SRC_UNSAFE_EVAL) || 
-				  value.equals(SRC_UNSAFE_INLINE) );
+		String keyword = SourceLexer.keyword(value);
+		return keyword == SRC_UNSAFE_EVAL || keyword == SRC_UNSAFE_INLINE;
 	}
 	
 	
 	public static boolean isValidSchemeSource(String value) {
-		if (value == null) {
-			return false;
-		}
-
-		Matcher urlMatcher = SCHEME_SOURCE.matcher(value);
-		if(!urlMatcher.matches()) {
-			return false;
-		}
-		
-		return true;
+		return classifySource(value) == SourceKind.SCHEME;
 	}
 
 	
 	public static boolean isValidHostSource(String value) {
-		if (value == null) {
-			return false;
-		}
-
-		Matcher urlMatcher = HOST_SOURCE.matcher(value);
-		if(!urlMatcher.matches()) {
-			return false;
-		}
-		
-		String port = urlMatcher.group(3);
-		String path = urlMatcher.group(4);
-		
-		try{
-			if(port != null){
-				if(port.startsWith(":")){
-					port = port.substring(1, port.length());
-				}
-				int prt = Integer.parseInt(port);
-				/*
-				 * PORT MIN will not be hit as the regex will catch it, kept for
-				 * completeness and future-proofing
-				 */
-				
-				if(prt < PORT_MIN || prt > PORT_MAX){ 
-					return false;
-				}
-			}
-		}catch(NumberFormatException e){
-			//Also should not be possible to hit due to the regex
-			return false;
-		}
-		
-		try{
-			if(path != null){
-				Paths.get(path);
-			}
-		}catch(InvalidPathException e){
-			return false;
-		}
-		
-		return true;
+		return classifySource(value) == SourceKind.HOST;
 	}
 	
 	/**
@@ -164,6 +119,23 @@ public class Validator{
 	 * @return true if the string could be base64 encoded
 	 */
 	public static boolean isBase64String(String str){
-		return BASE64.matcher(str).find();
+		return Base64Util.decodedLength(str, 0, str.length()) >= 0;
+	}
+	
+	/**
+	 * return the number of bytes a hash-source algorithm produces
+	 * @param algorithm a lower case algorithm name, e.g. sha256
+	 * @return 32, 48 or 64 for sha256, sha384 or sha512, or -1 for any other
+	 * algorithm
+	 */
+	public static int digestLength(String algorithm){
+		if ("sha256".equals(algorithm)) {
+			return 32;
+		} else if ("sha384".equals(algorithm)) {
+			return 48;
+		} else if ("sha512".equals(algorithm)) {
+			return 64;
+		}
+		return -1;
 	}
 }
@@ -0,0 +1,81 @@
+package tophersmith.security.headers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import tophersmith.security.headers.csp.CSPHeaderName;
+import tophersmith.security.headers.csp.CSPNonceTemplate;
+import tophersmith.security.headers.csp.ContentSecurityPolicy;
+import tophersmith.security.headers.csp.directives.impl.DefaultSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.ImgSrcDirective;
+import tophersmith.security.headers.impl.ContentSecurityPolicyHeader;
+import tophersmith.security.headers.impl.XFrameOptionsHeader;
+
+public class BatchCompilerTest {
+
+	private static ContentSecurityPolicy policy(String source) {
+		return new ContentSecurityPolicy()
+				.addDirective(new DefaultSrcDirective().addSelf())
+				.addDirective(new ImgSrcDirective().addSource(source));
+	}
+
+	@Test
+	public void testCompilePolicies() {
+		List<ContentSecurityPolicy> policies = new ArrayList<ContentSecurityPolicy>();
+		for (int i = 0; i < 100; i++) {
+			policies.add(policy(i % 10 == 0 ? "http://;" : "https://cdn" + i + ".foo.com"));
+		}
+		BatchReport<CSPNonceTemplate> report = new BatchCompiler(new ForkJoinPool(4)).compilePolicies(policies);
+		assertEquals(100, report.size());
+		assertEquals(90, report.getValidCount());
+		assertEquals(10, report.getInvalidCount());
+		assertEquals(10, report.getErrorCount());
+		assertFalse(report.isAllValid());
+		for (BatchResult<CSPNonceTemplate> result : report.getResults()) {
+			ContentSecurityPolicy policy = policies.get(result.getIndex());
+			if (result.isValid()) {
+				assertEquals(policy.build(), result.getCompiled().render("unused"));
+			} else {
+				assertNull(result.getCompiled());
+				assertEquals(0, result.getIndex() % 10);
+			}
+			assertTrue(policy.getValidationErrorReports().isEmpty());
+		}
+		assertEquals(10, report.getInvalidResults().size());
+	}
+
+	@Test
+	public void testCompileHeaders() {
+		SecurityHeaders valid = new SecurityHeaders()
+				.addHeader(new XFrameOptionsHeader().setDeny())
+				.addHeader(new ContentSecurityPolicyHeader(CSPHeaderName.CSP).setPolicy(policy("https://foo.com")));
+		SecurityHeaders invalid = new SecurityHeaders()
+				.addHeader(new ContentSecurityPolicyHeader(CSPHeaderName.CSP));
+		BatchReport<CompiledSecurityHeaders> report = new BatchCompiler().compileHeaders(
+				Arrays.asList(valid, invalid, null));
+		assertEquals(3, report.size());
+		assertEquals(1, report.getValidCount());
+		CompiledSecurityHeaders compiled = report.getResults().get(0).getCompiled();
+		assertNotNull(compiled);
+		assertEquals(valid.buildHeaderLines(), compiled.getHeaderLines());
+		assertEquals(1, report.getResults().get(1).getErrors().size());
+		assertEquals(1, report.getResults().get(2).getErrors().size());
+	}
+
+	@Test
+	public void testEmptyBatch() {
+		BatchReport<CSPNonceTemplate> report = new BatchCompiler().compilePolicies(new ArrayList<ContentSecurityPolicy>());
+		assertEquals(0, report.size());
+		assertTrue(report.isAllValid());
+	}
+}
@@ -0,0 +1,343 @@
+package tophersmith.security.headers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import tophersmith.security.headers.csp.CSPHeaderName;
+import tophersmith.security.headers.csp.CSPNonceTemplate;
+import tophersmith.security.headers.csp.ContentSecurityPolicy;
+import tophersmith.security.headers.csp.directives.impl.ScriptSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.StyleSrcDirective;
+import tophersmith.security.headers.impl.ContentSecurityPolicyHeader;
+import tophersmith.security.headers.impl.StrictTransportSecurityHeader;
+import tophersmith.security.headers.impl.XContentTypeOptionsHeader;
+import tophersmith.security.headers.impl.XFrameOptionsHeader;
+import tophersmith.security.headers.impl.XXSSProtectionHeader;
+import tophersmith.security.headers.util.Hpack;
+
+public class CompiledSecurityHeadersTest {
+	private XFrameOptionsHeader xframe;
+	private XXSSProtectionHeader xss;
+	private SecurityHeaders head;
+
+	@Before
+	public void setUp(){
+		xframe = new XFrameOptionsHeader().setDeny();
+		xss = new XXSSProtectionHeader().enableBlock().enableProtection();
+		head = new SecurityHeaders().addHeader(xframe).addHeader(xss);
+	}
+
+	@Test
+	public void testCompiledMatchesBuild() {
+		CompiledSecurityHeaders compiled = head.compile();
+		assertEquals(2, compiled.size());
+		assertEquals(head.buildHeaderLines(), compiled.getHeaderLines());
+		assertEquals(head.buildHeaders(), compiled.getHeaders());
+	}
+
+	@Test
+	public void testCompiledIsShared() {
+		CompiledSecurityHeaders compiled = head.compile();
+		assertSame(compiled.getHeaders(), compiled.getHeaders());
+		assertSame(compiled.getHeaderLines(), compiled.getHeaderLines());
+		assertSame(compiled.getHeaders().get(0).getValue(), compiled.getHeaders().get(0).getValue());
+	}
+
+	@Test
+	public void testCompiledIsSnapshot() {
+		CompiledSecurityHeaders compiled = head.compile();
+		xframe.setSameOrigin();
+		head.addHeader(new XXSSProtectionHeader());
+		assertEquals(2, compiled.size());
+		assertEquals("X-Frame-Options: DENY", compiled.getHeaderLines().get(0));
+	}
+
+	@Test
+	public void testCompiledIsUnmodifiable() {
+		List<Entry<String, String>> headers = head.compile().getHeaders();
+		try {
+			headers.clear();
+			fail("compiled headers should not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			headers.get(0).setValue("SAMEORIGIN");
+			fail("compiled header entries should not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCompiledBadCharacters() {
+		xframe.setAllowFrom("http://foo.com\r\n");
+		CompiledSecurityHeaders compiled = head.compile();
+		for (String line : compiled.getHeaderLines()) {
+			assertTrue(!line.contains("\n") && !line.contains("\r"));
+		}
+		assertEquals("ALLOW-FROM http://foo.com", compiled.getHeaders().get(0).getValue());
+	}
+
+	@Test
+	public void testCompiledNonce() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy();
+		policy.addDirective(new ScriptSrcDirective().addSelf().addNonce("cGxhY2Vob2xkZXI="));
+		head.addHeader(new ContentSecurityPolicyHeader(CSPHeaderName.CSP).setPolicy(policy));
+		CompiledSecurityHeaders compiled = head.compile();
+		assertTrue(compiled.requiresNonce());
+		try {
+			compiled.getHeaders();
+			fail("a nonce should be required");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		String nonce = ScriptSrcDirective.generateNonce(12);
+		List<Entry<String, String>> headers = compiled.getHeaders(nonce);
+		assertEquals("script-src 'self' 'nonce-" + nonce + "'", headers.get(2).getValue());
+		assertSame(compiled.getHeaders(nonce).get(0), headers.get(0));
+		assertEquals("Content-Security-Policy: script-src 'self' 'nonce-" + nonce + "'", 
+				compiled.getHeaderLines(nonce).get(2));
+		assertTrue(!compiled.getHeaders(ScriptSrcDirective.generateNonce(12)).get(2).getValue().contains(nonce));
+
+		assertEquals("X-Frame-Options", compiled.getHeaderName(0));
+		assertEquals("DENY", compiled.getHeaderValue(0));
+		assertNull(compiled.getNonceTemplate(0));
+		assertEquals("Content-Security-Policy", compiled.getHeaderName(2));
+		assertNull(compiled.getHeaderValue(2));
+		assertEquals(headers.get(2).getValue(), compiled.getNonceTemplate(2).render(nonce));
+	}
+
+	@Test
+	public void testCompiledNonceNotRequired() {
+		CompiledSecurityHeaders compiled = head.compile();
+		assertTrue(!compiled.requiresNonce());
+		assertSame(compiled.getHeaders(), compiled.getHeaders("ignored"));
+		assertSame(compiled.getHeaderLines(), compiled.getHeaderLines("ignored"));
+	}
+
+	@Test
+	public void testWireFormat() throws IOException {
+		CompiledSecurityHeaders compiled = head.compile();
+		String expected = compiled.getHeaderLines().get(0) + "\r\n" + compiled.getHeaderLines().get(1) + "\r\n";
+		ByteBuffer block = compiled.getWireBlock();
+		assertEquals(expected, new String(toArray(block), "US-ASCII"));
+		assertTrue(block.isReadOnly());
+		assertEquals(expected.length(), compiled.getWireLength(0));
+
+		ByteBuffer dst = ByteBuffer.allocate(100);
+		dst.put((byte) '#');
+		compiled.writeTo(dst);
+		dst.flip();
+		assertEquals("#" + expected, new String(toArray(dst), "US-ASCII"));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		compiled.writeTo(out, "ignored");
+		assertEquals(expected, out.toString("US-ASCII"));
+	}
+
+	@Test
+	public void testCleanTemplateIsNotCopied() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy();
+		policy.addDirective(new ScriptSrcDirective().addSelf().addNonce("cGxhY2Vob2xkZXI="));
+		policy.freeze();
+		head.addHeader(new ContentSecurityPolicyHeader(CSPHeaderName.CSP).setPolicy(policy));
+		CSPNonceTemplate template = head.compile().getNonceTemplate(2);
+		assertSame(policy.buildNonceTemplate(), template);
+		assertTrue(template.isClean());
+	}
+
+	@Test
+	public void testDirtyTemplateIsSanitized() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy();
+		policy.addDirective(new ScriptSrcDirective().addSource("http://foo.com\r\n").addNonce("cGxhY2Vob2xkZXI="));
+		head.addHeader(new ContentSecurityPolicyHeader(CSPHeaderName.CSP).setPolicy(policy));
+		CompiledSecurityHeaders compiled = head.compile();
+		assertTrue(compiled.getNonceTemplate(2).isClean());
+		String nonce = ScriptSrcDirective.generateNonce(12);
+		assertEquals("script-src http://foo.com 'nonce-" + nonce + "'", compiled.getHeaders(nonce).get(2).getValue());
+	}
+
+	@Test
+	public void testWireFormatNonce() throws IOException {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy();
+		policy.addDirective(new ScriptSrcDirective().addSelf().addNonce("cGxhY2Vob2xkZXI="));
+		policy.addDirective(new StyleSrcDirective().addNonce("cGxhY2Vob2xkZXI="));
+		head.addHeader(new ContentSecurityPolicyHeader(CSPHeaderName.CSP).setPolicy(policy));
+		head.addHeader(new XContentTypeOptionsHeader());
+		CompiledSecurityHeaders compiled = head.compile();
+		String nonce = ScriptSrcDirective.generateNonce(12);
+		StringBuilder expected = new StringBuilder();
+		for (String line : compiled.getHeaderLines(nonce)) {
+			expected.append(line).append("\r\n");
+		}
+		assertEquals(expected.length(), compiled.getWireLength(nonce.length()));
+
+		ByteBuffer dst = ByteBuffer.allocate(expected.length());
+		compiled.writeTo(dst, nonce);
+		assertEquals(0, dst.remaining());
+		assertArrayEquals(expected.toString().getBytes("US-ASCII"), dst.array());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		compiled.writeTo(out, nonce);
+		assertEquals(expected.toString(), out.toString("US-ASCII"));
+
+		try {
+			compiled.writeTo(ByteBuffer.allocate(expected.length() - 1), nonce);
+			fail("the buffer is too small");
+		} catch (BufferOverflowException e) {
+			// expected
+		}
+		try {
+			compiled.writeTo(ByteBuffer.allocate(expected.length()), "bad nonce");
+			fail("the nonce must be base64");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			compiled.getWireBlock();
+			fail("a nonce should be required");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+
+	@Test
+	public void testHpackBlock() {
+		head.addHeader(new StrictTransportSecurityHeader().setMaxAge("31536000"));
+		CompiledSecurityHeaders compiled = head.compile();
+		HpackHeaderBlock block = compiled.getHpackBlock();
+		assertSame(block, compiled.getHpackBlock());
+		assertTrue(!block.requiresNonce());
+		List<HpackHeaderBlock.Field> fields = block.getFields();
+		assertEquals(3, fields.size());
+		assertEquals("x-frame-options", fields.get(0).getName());
+		assertEquals("DENY", fields.get(0).getValue());
+		assertTrue(fields.get(0).isIndexable());
+		assertEquals("x-frame-options".length() + "DENY".length() + 32, fields.get(0).getEntrySize());
+
+		// literal without indexing and a literal name
+		assertEquals(encode(0x00, 4, 0, "x-frame-options", "DENY"), toArrayString(fields.get(0).getEncoded()));
+		// strict-transport-security is static table entry 56
+		assertEquals(encode(0x00, 4, 56, null, compiled.getHeaders().get(2).getValue()), 
+				toArrayString(fields.get(2).getEncoded()));
+
+		String expected = toArrayString(fields.get(0).getEncoded()) + toArrayString(fields.get(1).getEncoded()) + 
+				toArrayString(fields.get(2).getEncoded());
+		assertEquals(expected, toArrayString(block.getEncoded()));
+		assertEquals(expected.length(), block.getEncodedLength(null));
+		ByteBuffer dst = ByteBuffer.allocate(expected.length());
+		block.writeTo(dst);
+		dst.flip();
+		assertEquals(expected, toArrayString(dst));
+	}
+
+	@Test
+	public void testHpackBlockNonce() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy();
+		policy.addDirective(new ScriptSrcDirective().addSelf().addNonce("cGxhY2Vob2xkZXI="));
+		policy.addDirective(new StyleSrcDirective().addNonce("cGxhY2Vob2xkZXI="));
+		head.addHeader(new ContentSecurityPolicyHeader(CSPHeaderName.CSP).setPolicy(policy));
+		head.addHeader(new XContentTypeOptionsHeader());
+		CompiledSecurityHeaders compiled = head.compile();
+		HpackHeaderBlock block = compiled.getHpackBlock();
+		assertTrue(block.requiresNonce());
+		HpackHeaderBlock.Field csp = block.getFields().get(2);
+		assertEquals("content-security-policy", csp.getName());
+		assertTrue(csp.isNeverIndexed());
+		assertTrue(!csp.isIndexable());
+		assertEquals(-1, csp.getEntrySize());
+		try {
+			csp.getEncoded();
+			fail("the nonce field is encoded per response");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			block.writeTo(ByteBuffer.allocate(1000));
+			fail("a nonce should be required");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		String nonce = ScriptSrcDirective.generateNonce(12);
+		String expected = toArrayString(block.getFields().get(0).getEncoded()) + 
+				toArrayString(block.getFields().get(1).getEncoded()) + 
+				encode(0x10, 4, 0, "content-security-policy", compiled.getHeaders(nonce).get(2).getValue()) + 
+				toArrayString(block.getFields().get(3).getEncoded());
+		assertEquals(expected.length(), block.getEncodedLength(nonce));
+		ByteBuffer dst = ByteBuffer.allocate(expected.length() + 1);
+		block.writeTo(dst, nonce);
+		assertEquals(1, dst.remaining());
+		dst.flip();
+		assertEquals(expected, toArrayString(dst));
+
+		try {
+			block.writeTo(ByteBuffer.allocate(expected.length() - 1), nonce);
+			fail("the buffer is too small");
+		} catch (BufferOverflowException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testHpackLargeValue() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy();
+		ScriptSrcDirective script = new ScriptSrcDirective();
+		for (int i = 0; i < 300; i++) {
+			script.addSource("https://host" + i + ".example.com");
+		}
+		policy.addDirective(script);
+		head.addHeader(new ContentSecurityPolicyHeader(CSPHeaderName.CSP).setPolicy(policy));
+		HpackHeaderBlock.Field csp = head.compile().getHpackBlock().getFields().get(2);
+		// still a hint, the encoder compares the size with the peer's table
+		assertTrue(csp.isIndexable());
+		assertTrue(csp.getEntrySize() > Hpack.DEFAULT_TABLE_SIZE);
+		assertTrue(!csp.isNeverIndexed());
+		assertEquals(encode(0x00, 4, 0, "content-security-policy", csp.getValue()), toArrayString(csp.getEncoded()));
+	}
+
+	/**
+	 * encode a literal field with the Hpack primitives, as one char per byte
+	 */
+	private static String encode(int flags, int prefixBits, int nameIndex, String name, String value) {
+		ByteBuffer buffer = ByteBuffer.allocate(Hpack.integerLength(nameIndex, prefixBits) + 
+				(name == null ? 0 : Hpack.stringLength(name)) + Hpack.stringLength(value));
+		Hpack.writeInteger(buffer, flags, prefixBits, nameIndex);
+		if (name != null) {
+			Hpack.writeString(buffer, name);
+		}
+		Hpack.writeString(buffer, value);
+		buffer.flip();
+		return toArrayString(buffer);
+	}
+
+	private static String toArrayString(ByteBuffer buffer) {
+		StringBuilder sb = new StringBuilder();
+		while (buffer.hasRemaining()) {
+			sb.append((char) (buffer.get() & 0xff));
+		}
+		return sb.toString();
+	}
+
+	private static byte[] toArray(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+}
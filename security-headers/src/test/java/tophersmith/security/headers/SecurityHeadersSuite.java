@@ -7,12 +7,36 @@ import org.junit.runners.Suite.SuiteClasses;
 import tophersmith.security.headers.csp.SecurityHeadersCSPSuite;
 import tophersmith.security.headers.csp.directives.SourceValidatorTest;
 import tophersmith.security.headers.impl.SecurityHeadersImplSuite;
+import tophersmith.security.headers.util.Base64UtilTest;
+import tophersmith.security.headers.util.BoundedCacheTest;
+import tophersmith.security.headers.util.ContentHasherTest;
+import tophersmith.security.headers.util.HeaderSanitizerTest;
+import tophersmith.security.headers.util.HostSourceTrieTest;
+import tophersmith.security.headers.util.HpackTest;
+import tophersmith.security.headers.util.NoncePoolTest;
+import tophersmith.security.headers.util.SecureRandomUtilTest;
+import tophersmith.security.headers.util.SourceExpressionTest;
+import tophersmith.security.headers.util.SourceLexerTest;
+import tophersmith.security.headers.util.SourceListMinimizerTest;
 
 @RunWith(Suite.class)
 @SuiteClasses({ SecurityHeadersTest.class, 
+				CompiledSecurityHeadersTest.class,
+				BatchCompilerTest.class,
 				SecurityHeadersCSPSuite.class, 
 				SecurityHeadersImplSuite.class,
-				SourceValidatorTest.class
+				SourceValidatorTest.class,
+				SecureRandomUtilTest.class,
+				NoncePoolTest.class,
+				Base64UtilTest.class,
+				SourceLexerTest.class,
+				BoundedCacheTest.class,
+				SourceListMinimizerTest.class,
+				HostSourceTrieTest.class,
+				SourceExpressionTest.class,
+				ContentHasherTest.class,
+				HpackTest.class,
+				HeaderSanitizerTest.class
 				})
 public class SecurityHeadersSuite {
 
@@ -0,0 +1,105 @@
+package tophersmith.security.headers.csp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import tophersmith.security.headers.csp.directives.impl.DefaultSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.ScriptSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.StyleSrcDirective;
+
+public class CSPNonceTemplateTest {
+
+	private static final String NONCE = "AbCd0123+/==";
+
+	@Test
+	public void testTemplateMatchesBuild() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy();
+		policy.addDirective(new DefaultSrcDirective().addSelf());
+		policy.addDirective(new ScriptSrcDirective().addSelf().addNonce(NONCE).addHash("sha256", "QUFB"));
+		policy.addDirective(new StyleSrcDirective().addNonce(NONCE));
+		CSPNonceTemplate template = policy.buildNonceTemplate();
+		assertEquals(2, template.getSlotCount());
+		assertEquals(policy.build(), template.render(NONCE));
+		assertTrue(template.render(NONCE).contains("script-src 'self' 'nonce-" + NONCE + "' 'sha256-QUFB'"));
+		assertTrue(template.render(NONCE).contains("style-src 'nonce-" + NONCE + "'"));
+	}
+
+	@Test
+	public void testTemplateSplicesNewNonce() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy();
+		ScriptSrcDirective script = new ScriptSrcDirective().addSelf().addNonce("cGxhY2Vob2xkZXI=");
+		policy.addDirective(script);
+		assertTrue(policy.isValid());
+		CSPNonceTemplate template = policy.buildNonceTemplate();
+		String nonce = ScriptSrcDirective.generateNonce(12);
+		String rendered = template.render(nonce);
+		assertEquals("script-src 'self' 'nonce-" + nonce + "'", rendered);
+		assertEquals(template.getRenderedLength(nonce.length()), rendered.length());
+
+		script.resetNonces();
+		script.addNonce(nonce);
+		assertEquals(policy.build(), rendered);
+	}
+
+	@Test
+	public void testTemplateRenderTo() {
+		CSPNonceTemplate template = new CSPNonceTemplate(Arrays.asList("a '", "' b '", "'"));
+		char[] out = new char[template.getRenderedLength(2) + 1];
+		assertEquals(out.length - 1, template.renderTo(out, 1, "xy"));
+		assertEquals("a 'xy' b 'xy'", new String(out, 1, out.length - 1));
+		assertEquals(">a 'xy' b 'xy'", template.renderTo(new StringBuilder(">"), "xy").toString());
+	}
+
+	@Test
+	public void testTemplateRenderCharNonce() {
+		CSPNonceTemplate template = new CSPNonceTemplate(Arrays.asList("script-src 'nonce-", "'"));
+		char[] nonce = new char[16];
+		int length = ScriptSrcDirective.generateNonce(12, nonce, 0);
+		assertEquals(16, length);
+		assertEquals("script-src 'nonce-" + new String(nonce) + "'", template.render(CharBuffer.wrap(nonce)));
+	}
+
+	@Test
+	public void testTemplateWithoutNonces() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy();
+		policy.addDirective(new DefaultSrcDirective().addSelf());
+		CSPNonceTemplate template = policy.buildNonceTemplate();
+		assertFalse(template.hasNonceSlots());
+		assertEquals(policy.build(), template.render(NONCE));
+	}
+
+	@Test
+	public void testTemplateIsClean() {
+		assertTrue(new CSPNonceTemplate(Arrays.asList("script-src 'nonce-", "'")).isClean());
+		assertFalse(new CSPNonceTemplate(Arrays.asList("script-src 'nonce-", "'\r\n")).isClean());
+	}
+
+	@Test
+	public void testTemplateRejectsBadNonce() {
+		CSPNonceTemplate template = new CSPNonceTemplate(Arrays.asList("'nonce-", "'"));
+		String[] badNonces = new String[]{null, "", "abc\r\nSet-Cookie: x", "a'b", "a b"};
+		for (String nonce : badNonces) {
+			try {
+				template.render(nonce);
+				fail("Nonce " + nonce + " should be rejected");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testNonceOnlyDirectiveIsBuilt() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy();
+		policy.addDirective(new ScriptSrcDirective().addNonce(NONCE));
+		policy.reduce();
+		assertEquals("script-src 'nonce-" + NONCE + "'", policy.build());
+	}
+}
@@ -0,0 +1,229 @@
+package tophersmith.security.headers.csp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import tophersmith.security.headers.csp.directives.impl.BaseUriDirective;
+import tophersmith.security.headers.csp.directives.impl.ChildSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.ConnectSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.DefaultSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.ExperimentalDirective;
+import tophersmith.security.headers.csp.directives.impl.FrameAncestorsDirective;
+import tophersmith.security.headers.csp.directives.impl.FrameSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.ImgSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.ReportUriDirective;
+import tophersmith.security.headers.csp.directives.impl.ScriptSrcDirective;
+import tophersmith.security.headers.impl.ContentSecurityPolicyHeader;
+
+public class ContentSecurityPolicyTest {
+
+	@Test
+	public void testCanonicalOrder() {
+		ExperimentalDirective zeta = new ExperimentalDirective("zeta-src");
+		zeta.addExperimentalValue("'self'");
+		ExperimentalDirective alpha = new ExperimentalDirective("alpha-src");
+		alpha.addExperimentalValue("'self'");
+		ContentSecurityPolicy policy = new ContentSecurityPolicy()
+				.addDirective(new ReportUriDirective().addReportUri("https://foo.com/report"))
+				.addDirective(zeta)
+				.addDirective(new ScriptSrcDirective().addSelf())
+				.addDirective(alpha)
+				.addDirective(new ImgSrcDirective().addSelf())
+				.addDirective(new DefaultSrcDirective().addNone());
+		assertEquals("default-src 'none'; img-src 'self'; script-src 'self'; " + 
+				"report-uri https://foo.com/report; alpha-src 'self'; zeta-src 'self'", policy.build());
+		assertSame(alpha, policy.getDirective("alpha-src"));
+		assertEquals(DirectiveType.IMG_SRC, policy.getDirective(ImgSrcDirective.NAME).getDirectiveType());
+		assertEquals(null, zeta.getDirectiveType());
+	}
+
+	@Test
+	public void testFreezeReducesOnce() {
+		DefaultSrcDirective defaultSrc = new DefaultSrcDirective().addSelf().addSelf();
+		ContentSecurityPolicy policy = new ContentSecurityPolicy()
+				.addDirective(defaultSrc)
+				.addDirective(new ImgSrcDirective());
+		assertFalse(policy.isFrozen());
+		assertSame(policy, policy.freeze());
+		assertTrue(policy.isFrozen());
+		assertEquals("default-src 'self'", policy.build());
+		assertSame(policy.build(), policy.build());
+		assertSame(policy.buildNonceTemplate(), policy.buildNonceTemplate());
+
+		defaultSrc.addNone();
+		assertEquals("default-src 'self'", policy.build());
+		try {
+			policy.addDirective(new ImgSrcDirective().addSelf());
+			fail("a frozen policy should not accept directives");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFrozenValidation() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy()
+				.addDirective(new ImgSrcDirective().addSource("http://;"))
+				.freeze();
+		assertFalse(policy.isValid());
+		assertFalse(policy.isValid());
+		assertEquals(1, policy.getValidationErrorReports().size());
+		policy.resetValidationReport();
+		assertEquals(1, policy.getValidationErrorReports().size());
+		assertEquals(1, policy.validate().getErrorReports().size());
+	}
+
+	@Test
+	public void testFrozenHeaderDoesNotReduce() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy()
+				.addDirective(new ScriptSrcDirective().addSelf().addNonce("cGxhY2Vob2xkZXI="))
+				.freeze();
+		ContentSecurityPolicyHeader header = new ContentSecurityPolicyHeader(CSPHeaderName.CSP)
+				.setPolicy(policy).setReduce(true);
+		assertSame(policy.build(), header.buildHeaderValue());
+		assertSame(policy.buildNonceTemplate(), header.buildHeaderValueTemplate());
+	}
+
+	@Test
+	public void testFrozenRenderConcurrently() throws InterruptedException {
+		final ContentSecurityPolicy policy = new ContentSecurityPolicy()
+				.addDirective(new DefaultSrcDirective().addSelf().addSelf())
+				.addDirective(new ImgSrcDirective().addSource("https://cdn.foo.com"))
+				.freeze();
+		final String expected = policy.build();
+		final ContentSecurityPolicyHeader header = new ContentSecurityPolicyHeader(CSPHeaderName.CSP)
+				.setPolicy(policy).setReduce(true);
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicInteger mismatches = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < 1000; i++) {
+						if (!expected.equals(header.buildHeaderValue()) || !policy.isValid()) {
+							mismatches.incrementAndGet();
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, mismatches.get());
+	}
+
+	@Test
+	public void testPolicyLevelMembership() {
+		assertTrue(PolicyLevel.CSP1.isDefined(DirectiveType.FRAME_SRC));
+		assertFalse(PolicyLevel.CSP1.isDeprecated(DirectiveType.FRAME_SRC));
+		assertTrue(PolicyLevel.CSP2.isDeprecated(DirectiveType.FRAME_SRC));
+		assertFalse(PolicyLevel.CSP1.isDefined(DirectiveType.BASE_URI));
+		assertTrue(PolicyLevel.CSP2.isDefined(DirectiveType.BASE_URI));
+		assertFalse(PolicyLevel.CSP2.isDefined((DirectiveType) null));
+	}
+
+	@Test
+	public void testValidateLevels() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy(PolicyLevel.CSP2)
+				.addDirective(new BaseUriDirective().addSelf())
+				.addDirective(new FrameSrcDirective().addSelf())
+				.addDirective(new ImgSrcDirective().addSource("http://;"));
+		Map<PolicyLevel, CSPValidationReport> reports = policy.validate(PolicyLevel.CSP1, PolicyLevel.CSP2);
+		assertEquals(2, reports.size());
+		CSPValidationReport csp1 = reports.get(PolicyLevel.CSP1);
+		CSPValidationReport csp2 = reports.get(PolicyLevel.CSP2);
+		assertEquals(1, csp1.getErrorReports().size());
+		assertEquals(1, csp2.getErrorReports().size());
+		assertEquals(1, csp1.getWarningReports().size());
+		assertTrue(csp1.getWarningReports().get(0).contains("CSP1 does not define directive base-uri"));
+		assertEquals(1, csp2.getWarningReports().size());
+		assertTrue(csp2.getWarningReports().get(0).contains("CSP2 has deprecated directive frame-src"));
+		assertEquals(policy.validate().getWarningReports(), csp2.getWarningReports());
+		assertEquals(policy.validate().getErrorReports(), csp2.getErrorReports());
+	}
+
+	@Test
+	public void testFrozenValidateLevels() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy(PolicyLevel.CSP2)
+				.addDirective(new BaseUriDirective().addSelf())
+				.freeze();
+		Map<PolicyLevel, CSPValidationReport> reports = policy.validate(PolicyLevel.CSP1);
+		assertEquals(1, reports.size());
+		assertEquals(1, reports.get(PolicyLevel.CSP1).getWarningReports().size());
+		assertTrue(policy.validate(PolicyLevel.CSP1) != policy.validate(PolicyLevel.CSP1));
+		assertTrue(policy.validate().getWarningReports().isEmpty());
+	}
+
+	@Test
+	public void testMinimize() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy()
+				.addDirective(new DefaultSrcDirective().addSelf().addSource("https://cdn.foo.com:443"))
+				.addDirective(new ImgSrcDirective().addSource("https://cdn.foo.com").addSelf())
+				.addDirective(new ConnectSrcDirective().addNone().addSelf().addSource("https:")
+						.addSource("https://api.foo.com"))
+				.addDirective(new ScriptSrcDirective().addSelf().addSource("https://cdn.foo.com"))
+				.addDirective(new FrameAncestorsDirective().addNone().addSelf().addSelf())
+				.minimize();
+		assertEquals("default-src 'self' https://cdn.foo.com; connect-src 'self' https:; "
+				+ "frame-ancestors 'self'", policy.build());
+		assertTrue(policy.isValid());
+	}
+
+	@Test
+	public void testMinimizeKeepsFrameSrc() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy()
+				.addDirective(new DefaultSrcDirective().addSelf())
+				.addDirective(new ChildSrcDirective().addNone())
+				.addDirective(new FrameSrcDirective().addSelf())
+				.addDirective(new ScriptSrcDirective().addSelf().addNonce("cGxhY2Vob2xkZXI="))
+				.minimize();
+		assertEquals("default-src 'self'; child-src 'none'; frame-src 'self'; "
+				+ "script-src 'self' 'nonce-cGxhY2Vob2xkZXI='", policy.build());
+		// workers fall back to child-src, then to the script-src with a nonce
+		policy.addDirective(new ChildSrcDirective().addSelf()).minimize();
+		assertEquals("default-src 'self'; child-src 'self'; script-src 'self' 'nonce-cGxhY2Vob2xkZXI='", 
+				policy.build());
+	}
+
+	@Test
+	public void testMinimizeKeepsChildSrc() {
+		// removing child-src would let workers load from the script-src host
+		ContentSecurityPolicy policy = new ContentSecurityPolicy()
+				.addDirective(new DefaultSrcDirective().addSelf())
+				.addDirective(new ChildSrcDirective().addSelf())
+				.addDirective(new ScriptSrcDirective().addSelf().addSource("https://cdn.example.com"))
+				.minimize();
+		assertEquals("default-src 'self'; child-src 'self'; script-src 'self' https://cdn.example.com", 
+				policy.build());
+
+		policy.addDirective(new ScriptSrcDirective().addSelf()).minimize();
+		assertEquals("default-src 'self'", policy.build());
+	}
+
+	@Test
+	public void testMinimizeWithoutDefault() {
+		ContentSecurityPolicy policy = new ContentSecurityPolicy()
+				.addDirective(new ImgSrcDirective().addSelf())
+				.addDirective(new ScriptSrcDirective().addSelf())
+				.minimize();
+		assertEquals("img-src 'self'; script-src 'self'", policy.build());
+	}
+}
@@ -27,11 +27,17 @@ import tophersmith.security.headers.csp.directives.impl.ReportUriDirective;
 import tophersmith.security.headers.csp.directives.impl.SandboxDirective;
 import tophersmith.security.headers.csp.directives.impl.ScriptSrcDirective;
 import tophersmith.security.headers.csp.directives.impl.StyleSrcDirective;
+import tophersmith.security.headers.util.Base64Util;
+import tophersmith.security.headers.util.BoundedCache;
+import tophersmith.security.headers.util.ContentHasher;
+import tophersmith.security.headers.util.SourceExpression;
+import tophersmith.security.headers.util.Validator;
 
 public class DirectivesTest {
 	private final List<String> goodSource = new ArrayList<String>();
 	private final List<String> badSource = new ArrayList<String>();
 	private static final String BASIC_SOURCE = "http://www.foo.com";
+	private static final String SHA256_HASH = "qznLcsROx4GACP2dm0UCKCzCG+HiZ1guq6ZZDob/Tng=";
 	
 	@Before
 	public void setUp() throws Exception {
@@ -297,12 +303,12 @@ public class DirectivesTest {
 		}
 		for(int i = 0; i < 2; i++){
 			String nonce = ScriptSrcDirective.generateNonce(10);
-			String hash = "QUFB";
+			String hash = SHA256_HASH;
 			
 			dir.addNonce(nonce);
 			dir.addHash("sha256", hash);
 		}
-		directiveTest(dir, name, this.goodSource.size()+5, false, BASIC_SOURCE, "'self'", "'none'", "'unsafe-inline'", "'unsafe-eval'", "QUFB", "sha256");
+		directiveTest(dir, name, this.goodSource.size()+5, false, BASIC_SOURCE, "'self'", "'none'", "'unsafe-inline'", "'unsafe-eval'", SHA256_HASH, "sha256");
 		
 		dir.resetHashes();
 		dir.resetNonces();
@@ -310,7 +316,7 @@ public class DirectivesTest {
 		directiveTest(dir, name, this.goodSource.size()+5, false, BASIC_SOURCE, "'self'", "'none'", "'unsafe-inline'", "'unsafe-eval'");
 		
 		assertTrue(!dir.buildDirective().contains("sha256"));
-		assertTrue(!dir.buildDirective().contains("QUFB"));
+		assertTrue(!dir.buildDirective().contains(SHA256_HASH));
 
 		for(String src : this.badSource){
 			dir.addSource(src);
@@ -341,12 +347,12 @@ public class DirectivesTest {
 		}
 		for(int i = 0; i < 2; i++){
 			String nonce = StyleSrcDirective.generateNonce(10);
-			String hash = "QUFB";
+			String hash = SHA256_HASH;
 			
 			dir.addNonce(nonce);
 			dir.addHash("sha256", hash);
 		}
-		directiveTest(dir, name, this.goodSource.size()+5, false, BASIC_SOURCE, "'self'", "'none'", "'unsafe-inline'", "'unsafe-eval'", "QUFB", "sha256");
+		directiveTest(dir, name, this.goodSource.size()+5, false, BASIC_SOURCE, "'self'", "'none'", "'unsafe-inline'", "'unsafe-eval'", SHA256_HASH, "sha256");
 		
 		dir.resetHashes();
 		dir.resetNonces();
@@ -354,7 +360,7 @@ public class DirectivesTest {
 		directiveTest(dir, name, this.goodSource.size()+5, false, BASIC_SOURCE, "'self'", "'none'", "'unsafe-inline'", "'unsafe-eval'");
 		
 		assertTrue(!dir.buildDirective().contains("sha256"));
-		assertTrue(!dir.buildDirective().contains("QUFB"));
+		assertTrue(!dir.buildDirective().contains(SHA256_HASH));
 
 		for(String src : this.badSource){
 			dir.addSource(src);
@@ -414,4 +420,87 @@ public class DirectivesTest {
 		ChildSrcDirective child = new ChildSrcDirective();
 		assertEquals("", child.buildDirective());
 	}
+
+	@Test
+	public void testHashDigestLength() {
+		CSPValidationReport report = new CSPValidationReport();
+		new ScriptSrcDirective().addHash("sha256", SHA256_HASH).addHash("SHA256", SHA256_HASH)
+				.validateAndReport(report);
+		assertTrue(report.getErrorReports().toString(), report.isErrorsEmpty());
+		
+		new StyleSrcDirective().addHash("sha384", SHA256_HASH).addHash("sha512", "QU=B")
+				.addHash("md5", "QUFB").validateAndReport(report);
+		assertEquals(report.getErrorReports().toString(), 3, report.getErrorReports().size());
+		assertTrue(report.getErrorReports().get(0).contains("32 byte digest, but sha384 digests are 48 bytes"));
+		assertTrue(report.getErrorReports().get(1).contains("is not base-64 encoded"));
+		assertTrue(report.getErrorReports().get(2).contains("Hash algorithm 'md5-QUFB' not allowed"));
+	}
+
+	@Test
+	public void testUrlSafeNonce() {
+		char[] urlSafe = new char[4];
+		Base64Util.encode(new byte[]{(byte) 0xfb, (byte) 0xff, (byte) 0xbf}, 0, 3, urlSafe, 0, Base64Util.Alphabet.URL_SAFE);
+		CSPValidationReport report = new CSPValidationReport();
+		new ScriptSrcDirective().addNonce(new String(urlSafe)).addNonce("+/+/").validateAndReport(report);
+		assertTrue(report.getErrorReports().toString(), report.isErrorsEmpty());
+
+		new StyleSrcDirective().addNonce("-_=A").validateAndReport(report);
+		assertEquals(report.getErrorReports().toString(), 1, report.getErrorReports().size());
+		assertTrue(report.getErrorReports().get(0).contains("is not base-64 encoded"));
+	}
+
+	@Test
+	public void testInlineHash() {
+		ScriptSrcDirective script = new ScriptSrcDirective().addSelf()
+				.addInlineHash("alert('Hello, world.');").addInlineHash(null);
+		assertEquals("script-src 'self' 'sha256-" + SHA256_HASH + "'", script.buildDirective());
+		StyleSrcDirective style = new StyleSrcDirective()
+				.addInlineHash(ContentHasher.Algorithm.SHA384, "body { color: red; }");
+		CSPValidationReport report = new CSPValidationReport();
+		script.validateAndReport(report);
+		style.validateAndReport(report);
+		assertTrue(report.getErrorReports().toString(), report.isErrorsEmpty());
+		assertTrue(style.buildDirective().startsWith("style-src 'sha384-"));
+	}
+
+	@Test
+	public void testNoncesAndHashesAreUnique() {
+		ScriptSrcDirective script = new ScriptSrcDirective().addSelf()
+				.addNonce("QUFB").addNonce("QUFB").addHash("sha256", "QUFB").addHash("sha256", "QUFB");
+		assertEquals("script-src 'self' 'nonce-QUFB' 'sha256-QUFB'", script.buildDirective());
+		script.resetNonces();
+		script.resetHashes();
+		script.addHash("sha256", "QUFB").addNonce("QUFB");
+		assertEquals("script-src 'self' 'nonce-QUFB' 'sha256-QUFB'", script.buildDirective());
+	}
+
+	@Test
+	public void testCoveredHostWarning() {
+		CSPValidationReport report = new CSPValidationReport();
+		new ConnectSrcDirective().addSource("*.foo.com").addSource("api.foo.com").addSource("foo.com")
+				.addSource("https://a.foo.com").addSource("*.b.foo.com").validateAndReport(report);
+		assertTrue(report.isErrorsEmpty());
+		assertEquals(2, report.getWarningReports().size());
+		assertTrue(report.getWarningReports().get(0).contains("api.foo.com is already allowed by *.foo.com"));
+		assertTrue(report.getWarningReports().get(1).contains("*.b.foo.com is already allowed by *.foo.com"));
+	}
+
+	@Test
+	public void testSourceCache() {
+		Validator.enableSourceCache(16);
+		try {
+			BoundedCache<String, SourceExpression> cache = Validator.getSourceCache();
+			CSPValidationReport report = new CSPValidationReport();
+			new ImgSrcDirective().addSource("https://cdn.foo.com").addSelf().validateAndReport(report);
+			new ScriptSrcDirective().addSource("https://cdn.foo.com").addSource("http://;").validateAndReport(report);
+			assertEquals(1, report.getErrorReports().size());
+			assertEquals(3, cache.size());
+			assertEquals(3, cache.getMissCount());
+			assertEquals(1, cache.getHitCount());
+			assertTrue(Validator.isValidHostSource("https://cdn.foo.com"));
+			assertEquals(2, cache.getHitCount());
+		} finally {
+			Validator.disableSourceCache();
+		}
+	}
 }
@@ -0,0 +1,138 @@
+package tophersmith.security.headers.csp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+public class NonceInjectingWriterTest {
+
+	private static final String NONCE = "AbCd0123+/==";
+	private static final String MARK = " nonce=\"\"";
+	private static final String ATTR = " nonce=\"" + NONCE + "\"";
+
+	@Test
+	public void testFillsMarkers() throws IOException {
+		assertEquals("<html><script" + ATTR + ">a()</script><STYLE media=\"all\" NONCE='" + NONCE + "'>p{}</STYLE>" +
+				"<script\nsrc=\"x.js\"" + ATTR + "></script><script nonce = \"" + NONCE + "\"/></script>",
+				inject("<html><script" + MARK + ">a()</script><STYLE media=\"all\" NONCE=''>p{}</STYLE>" +
+						"<script\nsrc=\"x.js\"" + MARK + "></script><script nonce = \"\"/></script>"));
+	}
+
+	@Test
+	public void testSkipsUnmarkedTags() throws IOException {
+		String[] untouched = {
+				"<script>a()</script><style>p{}</style>", 
+				"<script src=\"x.js\"></script>", 
+				"<script nonce=\"abc\"></script>", 
+				"<script nonce></script><script nonce=></script>", 
+				"<script data-nonce=\"\" nonces=\"\" nonc=\"\"></script>", 
+				"<script title=nonce=\"\"></script>", 
+				"<div nonce=\"\"><link rel=stylesheet nonce=\"\">", 
+		};
+		for (String html : untouched) {
+			assertEquals(html, inject(html));
+		}
+		// only the first marker of a tag counts, as only the first attribute of a name is used
+		assertEquals("<script" + ATTR + MARK + ">", inject("<script" + MARK + MARK + ">"));
+	}
+
+	@Test
+	public void testSkipsOtherMarkup() throws IOException {
+		String[] untouched = {
+				"<scripts" + MARK + "></scripts><styles" + MARK + ">", 
+				"<!-- <script" + MARK + ">a()</script> -->", 
+				"<!-- a -- b > <style" + MARK + "> -->", 
+				"<!DOCTYPE html><![CDATA[<script" + MARK + ">]]>",
+				"</script" + MARK + ">",
+				"<div title=\"<script nonce=''>\" data-x='<style" + MARK + ">'>",
+				"a < script" + MARK + " > b",
+		};
+		for (String html : untouched) {
+			assertEquals(html, inject(html));
+		}
+		assertEquals("<!-- x --><style" + ATTR + ">", inject("<!-- x --><style" + MARK + ">"));
+	}
+
+	@Test
+	public void testQuoteInUnquotedValue() throws IOException {
+		// a quote only opens a value directly after =, so these do not hide the script tag
+		assertEquals("<a href=x\"y><script" + ATTR + ">", inject("<a href=x\"y><script" + MARK + ">"));
+		assertEquals("<a title='t'href=x'y><script" + ATTR + ">", inject("<a title='t'href=x'y><script" + MARK + ">"));
+		assertEquals("<a \"b c=\"d\"><script" + ATTR + ">", inject("<a \"b c=\"d\"><script" + MARK + ">"));
+		// while one after = does, whitespace and all
+		assertEquals("<a href = \"><script" + MARK + ">\">", inject("<a href = \"><script" + MARK + ">\">"));
+	}
+
+	@Test
+	public void testSkipsRawText() throws IOException {
+		assertEquals("<script" + ATTR + ">var s = '<style nonce=\"\">' + '</scripty>';</script><style" + ATTR + ">", 
+				inject("<script" + MARK + ">var s = '<style nonce=\"\">' + '</scripty>';</script><style" + MARK + ">"));
+		assertEquals("<style" + ATTR + ">a::after{content:'<script nonce=\"\">'}</STYLE ><script" + ATTR + ">", 
+				inject("<style" + MARK + ">a::after{content:'<script nonce=\"\">'}</STYLE ><script" + MARK + ">"));
+	}
+
+	@Test
+	public void testChunkBoundaries() throws IOException {
+		String html = "<p>x</p><scr" + "ipt type=module nonce=\"\">a('<style nonce=\"\">')</script>" + 
+				"<!-- <style nonce=\"\"> --><style nonce=''>b{}</style><script>c()</script>";
+		String expected = inject(html);
+		for (int size = 1; size <= html.length(); size++) {
+			StringWriter out = new StringWriter();
+			NonceInjectingWriter writer = new NonceInjectingWriter(out, NONCE);
+			for (int i = 0; i < html.length(); i += size) {
+				writer.write(html.toCharArray(), i, Math.min(size, html.length() - i));
+			}
+			assertEquals(expected, out.toString());
+			assertEquals(2, writer.getInjectedCount());
+		}
+		StringWriter out = new StringWriter();
+		Writer writer = new NonceInjectingWriter(out, NONCE);
+		for (int i = 0; i < html.length(); i++) {
+			writer.write(html.charAt(i));
+		}
+		assertEquals(expected, out.toString());
+	}
+
+	@Test
+	public void testOutputStream() throws IOException {
+		String html = "<p>\u00e9\u4e2d</p><script nonce=\"\">\u00e9()</script><style nonce=\"\">p{}</style><style>";
+		byte[] bytes = html.getBytes("UTF-8");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		NonceInjectingOutputStream stream = new NonceInjectingOutputStream(out, NONCE);
+		stream.write(bytes, 0, 27);
+		stream.write(bytes[27]);
+		stream.write(bytes, 28, bytes.length - 28);
+		assertEquals(inject(html), new String(out.toByteArray(), "UTF-8"));
+		assertEquals(2, stream.getInjectedCount());
+	}
+
+	@Test
+	public void testInvalidNonce() {
+		try {
+			new NonceInjectingWriter(new StringWriter(), "\"><script>");
+			fail("the nonce must be base64");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new NonceInjectingOutputStream(new ByteArrayOutputStream(), null);
+			fail("a nonce is required");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static String inject(String html) throws IOException {
+		StringWriter out = new StringWriter();
+		Writer writer = new NonceInjectingWriter(out, NONCE);
+		writer.write(html);
+		writer.flush();
+		return out.toString();
+	}
+}
@@ -6,7 +6,11 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({ DirectivesTest.class, 
-				CSPValidationReportTest.class })
+				CSPValidationReportTest.class,
+				CSPNonceTemplateTest.class,
+				ContentSecurityPolicyTest.class,
+				StaticAssetHasherTest.class,
+				NonceInjectingWriterTest.class })
 public class SecurityHeadersCSPSuite {
 
 }
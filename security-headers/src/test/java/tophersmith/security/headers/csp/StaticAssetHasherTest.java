@@ -0,0 +1,182 @@
+package tophersmith.security.headers.csp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import tophersmith.security.headers.csp.directives.impl.ScriptSrcDirective;
+import tophersmith.security.headers.csp.directives.impl.StyleSrcDirective;
+import tophersmith.security.headers.util.ContentHasher;
+
+public class StaticAssetHasherTest {
+
+	private static final String SCRIPT = "\n  alert('hi');\n";
+	private static final String STYLE = "body { color: red; }";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testExtractsInlineElements() throws IOException {
+		File root = folder.newFolder("site");
+		write(new File(root, "index.html"), "<html><head><SCRIPT type=\"text/javascript\">" + SCRIPT + 
+				"</script><script src=\"app.js\"></script><style media='all'>" + STYLE + "</STYLE></head></html>");
+		write(new File(root, "notes.txt"), "<script>ignored()</script>");
+
+		StaticAssetHashes hashes = new StaticAssetHasher().hash(root);
+		assertEquals(1, hashes.getFileCount());
+		assertEquals(1, hashes.getHashedCount());
+		assertEquals(Arrays.asList(ContentHasher.hashSource(ContentHasher.Algorithm.SHA256, SCRIPT)), 
+				hashes.getScriptHashSources());
+		assertEquals(Arrays.asList(ContentHasher.hashSource(ContentHasher.Algorithm.SHA256, STYLE)), 
+				hashes.getStyleHashSources());
+	}
+
+	@Test
+	public void testNormalizesLineEndings() throws IOException {
+		File root = folder.newFolder("site");
+		write(new File(root, "crlf.html"), "<script>\r\n  alert('hi');\r\n</script>\r\n<style>a {}\rb {}</style>");
+		write(new File(root, "lf.html"), "<script>" + SCRIPT + "</script>");
+
+		// both files hash to the same source once line endings are normalized
+		StaticAssetHashes hashes = new StaticAssetHasher().hash(root);
+		assertEquals(2, hashes.getHashedCount());
+		assertEquals(Arrays.asList(ContentHasher.hashSource(ContentHasher.Algorithm.SHA256, SCRIPT)), 
+				hashes.getScriptHashSources());
+		assertEquals(Arrays.asList(ContentHasher.hashSource(ContentHasher.Algorithm.SHA256, "a {}\nb {}")), 
+				hashes.getStyleHashSources());
+	}
+
+	@Test
+	public void testIgnoresCacheOfOtherVersions() throws IOException {
+		File root = folder.newFolder("site");
+		File page = new File(root, "index.html");
+		write(page, "<script>a()</script>");
+		File cache = new File(folder.getRoot(), "hashes.cache");
+		write(cache, "# static asset hashes: path, modified, size, algorithms, script hashes, style hashes\n" + 
+				page.getAbsolutePath() + "\t" + page.lastModified() + "\t" + page.length() + "\tsha256\tsha256-stale\t\n");
+
+		StaticAssetHashes hashes = new StaticAssetHasher().setCacheFile(cache).hash(root);
+		assertEquals(1, hashes.getHashedCount());
+		assertEquals(Arrays.asList(ContentHasher.hashSource(ContentHasher.Algorithm.SHA256, "a()")), 
+				hashes.getScriptHashSources());
+	}
+
+	@Test
+	public void testAlgorithmsAndNestedFiles() throws IOException {
+		File root = folder.newFolder("site");
+		File nested = new File(root, "a/b");
+		assertTrue(nested.mkdirs());
+		write(new File(nested, "page.htm"), "<script>" + SCRIPT + "</script>");
+		write(new File(root, "other.html"), "<p>\u00e9</p><script>" + SCRIPT + "</script><script>x()</script>");
+
+		StaticAssetHashes hashes = new StaticAssetHasher(new ForkJoinPool(2))
+				.setAlgorithms(ContentHasher.Algorithm.SHA256, ContentHasher.Algorithm.SHA512)
+				.hash(root);
+		assertEquals(2, hashes.getFileCount());
+		assertEquals(Arrays.asList(
+				ContentHasher.hashSource(ContentHasher.Algorithm.SHA256, SCRIPT),
+				ContentHasher.hashSource(ContentHasher.Algorithm.SHA512, SCRIPT),
+				ContentHasher.hashSource(ContentHasher.Algorithm.SHA256, "x()"),
+				ContentHasher.hashSource(ContentHasher.Algorithm.SHA512, "x()")), 
+				hashes.getScriptHashSources());
+		assertTrue(hashes.getStyleHashSources().isEmpty());
+	}
+
+	@Test
+	public void testCacheSkipsUnchangedFiles() throws IOException {
+		File root = folder.newFolder("site");
+		File cache = new File(folder.getRoot(), "hashes.cache");
+		File changed = new File(root, "changed.html");
+		write(new File(root, "same.html"), "<style>" + STYLE + "</style>");
+		write(changed, "<script>a()</script>");
+
+		StaticAssetHashes first = new StaticAssetHasher().setCacheFile(cache).hash(root);
+		assertEquals(2, first.getHashedCount());
+		assertEquals(0, first.getCachedCount());
+		assertTrue(cache.isFile());
+
+		write(changed, "<script>bb()</script>");
+		assertTrue(changed.setLastModified(changed.lastModified() + 2000));
+		StaticAssetHashes second = new StaticAssetHasher().setCacheFile(cache).hash(root);
+		assertEquals(1, second.getHashedCount());
+		assertEquals(1, second.getCachedCount());
+		assertEquals(Arrays.asList(ContentHasher.hashSource(ContentHasher.Algorithm.SHA256, "bb()")), 
+				second.getScriptHashSources());
+		assertEquals(Arrays.asList(ContentHasher.hashSource(ContentHasher.Algorithm.SHA256, STYLE)), 
+				second.getStyleHashSources());
+
+		// a different algorithm set cannot reuse the cached hashes
+		StaticAssetHashes third = new StaticAssetHasher().setCacheFile(cache)
+				.setAlgorithms(ContentHasher.Algorithm.SHA384).hash(root);
+		assertEquals(2, third.getHashedCount());
+	}
+
+	@Test
+	public void testMalformedCacheIsIgnored() throws IOException {
+		File root = folder.newFolder("site");
+		File cache = new File(folder.getRoot(), "hashes.cache");
+		write(cache, "not a cache line\nalso\tnot\ta\tcache\tline\t\n");
+		write(new File(root, "index.html"), "<script>a()</script>");
+
+		StaticAssetHashes hashes = new StaticAssetHasher().setCacheFile(cache).hash(root);
+		assertEquals(1, hashes.getHashedCount());
+		assertEquals(1, hashes.getScriptHashSources().size());
+	}
+
+	@Test
+	public void testApplyTo() throws IOException {
+		File root = folder.newFolder("site");
+		write(new File(root, "index.html"), "<script>" + SCRIPT + "</script><style>" + STYLE + "</style>");
+
+		ScriptSrcDirective script = new ScriptSrcDirective().addSelf();
+		StyleSrcDirective style = new StyleSrcDirective();
+		new StaticAssetHasher().hash(root).applyTo(script, style);
+		assertEquals("script-src 'self' " + ContentHasher.hashSource(ContentHasher.Algorithm.SHA256, SCRIPT), 
+				script.buildDirective());
+		assertEquals("style-src " + ContentHasher.hashSource(ContentHasher.Algorithm.SHA256, STYLE), 
+				style.buildDirective());
+	}
+
+	@Test
+	public void testInvalidArguments() throws IOException {
+		try {
+			new StaticAssetHasher().hash(folder.newFile("file.html"));
+			fail("a file is not a directory");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new StaticAssetHasher().setAlgorithms();
+			fail("algorithms are required");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new StaticAssetHasher(null);
+			fail("pool is required");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static void write(File file, String content) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -29,7 +29,7 @@ public class SourceValidatorTest {
 		String[] negativeTests = new String[]{"http:\\\\foo.com\\bar", 
 				"http://;",	"https://*.,foo.com", "https://*. foo.com", 
 				"http://foo.com:789789/test", "http://foo.com:-4/test",
-				"http://foo.com:hello/test", null};
+				"http://foo.com:hello/test", "http://", "", null};
 		for(String value : positiveTests){
 			assertTrue(value + "failed", Validator.isValidHostSource(value));
 		}
@@ -53,7 +53,7 @@ public class SourceValidatorTest {
 	
 	@Test
 	public void testValidKeywords() {
-		String[] positiveTests = new String[]{ "'none'", "'self'"};
+		String[] positiveTests = new String[]{ "'none'", "'self'", "'SELF'", " 'none' "};
 		String[] negativeTests = new String[]{"*", "foo", null, "'no'"};
 		for(String value : positiveTests){
 			assertTrue(value + "failed", Validator.isValidSrcKeyword(value));
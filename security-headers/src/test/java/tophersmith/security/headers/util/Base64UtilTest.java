@@ -0,0 +1,76 @@
+package tophersmith.security.headers.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+
+import org.junit.Test;
+
+import tophersmith.security.headers.util.Base64Util.Alphabet;
+
+public class Base64UtilTest {
+
+	private static final String[][] RFC_4648 = new String[][]{
+		{"", ""},
+		{"f", "Zg=="},
+		{"fo", "Zm8="},
+		{"foo", "Zm9v"},
+		{"foob", "Zm9vYg=="},
+		{"fooba", "Zm9vYmE="},
+		{"foobar", "Zm9vYmFy"},
+	};
+
+	@Test
+	public void testEncodeVectors() throws IOException {
+		for (String[] vector : RFC_4648) {
+			byte[] bytes = vector[0].getBytes("US-ASCII");
+			assertEquals(vector[1], Base64Util.encode(bytes));
+			assertEquals(vector[1].length(), Base64Util.encodedLength(bytes.length));
+		}
+	}
+
+	@Test
+	public void testEncodeAlphabets() throws IOException {
+		byte[] bytes = new byte[]{(byte) 0xfb, (byte) 0xff, (byte) 0xbf};
+		assertEquals("+/+/", Base64Util.encode(bytes));
+		StringBuilder sb = new StringBuilder();
+		Base64Util.encode(bytes, 0, bytes.length, sb, Alphabet.URL_SAFE);
+		assertEquals("-_-_", sb.toString());
+	}
+
+	@Test
+	public void testEncodeIntoBuffers() throws IOException {
+		byte[] bytes = "xxfoobarxx".getBytes("US-ASCII");
+
+		char[] chars = new char[10];
+		assertEquals(8, Base64Util.encode(bytes, 2, 6, chars, 1, Alphabet.STANDARD));
+		assertEquals("\0Zm9vYmFy\0", new String(chars));
+
+		CharBuffer buffer = CharBuffer.allocate(12);
+		buffer.put('>');
+		Base64Util.encode(bytes, 2, 4, buffer, Alphabet.STANDARD);
+		buffer.flip();
+		assertEquals(">Zm9vYg==", buffer.toString());
+
+		StringWriter writer = new StringWriter();
+		Base64Util.encode(bytes, 2, 5, writer, Alphabet.STANDARD);
+		assertEquals("Zm9vYmE=", writer.toString());
+	}
+
+	@Test
+	public void testDecodedLength() {
+		assertEquals(0, Base64Util.decodedLength("", 0, 0) + 1);
+		assertEquals(3, Base64Util.decodedLength("Zm9v", 0, 4));
+		assertEquals(4, Base64Util.decodedLength("Zm9vYg==", 0, 8));
+		assertEquals(5, Base64Util.decodedLength("Zm9vYmE=", 0, 8));
+		assertEquals(32, Base64Util.decodedLength("'sha256-qznLcsROx4GACP2dm0UCKCzCG+HiZ1guq6ZZDob/Tng='", 8, 52));
+		assertEquals(-1, Base64Util.decodedLength("Zm9", 0, 3));
+		assertEquals(-1, Base64Util.decodedLength("Zm=v", 0, 4));
+		assertEquals(-1, Base64Util.decodedLength("Z===", 0, 4));
+		assertEquals(-1, Base64Util.decodedLength("Zm9-", 0, 4));
+		assertEquals(3, Base64Util.decodedLength("Zm9-", 0, 4, Alphabet.URL_SAFE));
+		assertEquals(-1, Base64Util.decodedLength("Zm9+", 0, 4, Alphabet.URL_SAFE));
+	}
+}
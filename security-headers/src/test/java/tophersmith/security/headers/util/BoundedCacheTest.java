@@ -0,0 +1,74 @@
+package tophersmith.security.headers.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class BoundedCacheTest {
+
+	@Test
+	public void testHitsAndMisses() {
+		BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(4);
+		assertNull(cache.get("a"));
+		cache.put("a", 1);
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+		cache.put("a", 2);
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testEvictsOldest() {
+		BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(2);
+		cache.put("a", 1);
+		cache.put("b", 2);
+		cache.put("c", 3);
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertNull(cache.get("a"));
+		assertEquals(Integer.valueOf(3), cache.get("c"));
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertNull(cache.get("b"));
+	}
+
+	@Test
+	public void testConcurrentPutsStayBounded() throws InterruptedException {
+		final BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>(64);
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t * 1000;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < 1000; i++) {
+						cache.put(offset + i, i);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(64, cache.size());
+		assertEquals(4000 - 64, cache.getEvictionCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsZeroSize() {
+		new BoundedCache<String, String>(0);
+	}
+}
@@ -0,0 +1,130 @@
+package tophersmith.security.headers.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import tophersmith.security.headers.util.ContentHasher.Algorithm;
+
+public class ContentHasherTest {
+
+	private static final String SCRIPT = "alert('Hello, world.');";
+
+	@After
+	public void tearDown() {
+		ContentHasher.setCacheSize(1024);
+	}
+
+	@Test
+	public void testKnownDigests() {
+		assertEquals("qznLcsROx4GACP2dm0UCKCzCG+HiZ1guq6ZZDob/Tng=", ContentHasher.hash(Algorithm.SHA256, SCRIPT));
+		assertEquals("'sha256-qznLcsROx4GACP2dm0UCKCzCG+HiZ1guq6ZZDob/Tng='", 
+				ContentHasher.hashSource(Algorithm.SHA256, SCRIPT));
+		assertEquals(48, Base64Util.decodedLength(ContentHasher.hash(Algorithm.SHA384, SCRIPT), 0, 64));
+		assertEquals(64, Base64Util.decodedLength(ContentHasher.hash(Algorithm.SHA512, SCRIPT), 0, 88));
+		assertEquals("47DEQpj8HBSa+/TImW+5JCeuQeRkm5NMpJWZG3hSuFU=", ContentHasher.hash(Algorithm.SHA256, ""));
+	}
+
+	@Test
+	public void testUtf8() {
+		assertEquals(ContentHasher.hash(Algorithm.SHA256, "\u00e9"), 
+				Base64Util.encode(sha256(new byte[] { (byte) 0xc3, (byte) 0xa9 })));
+	}
+
+	@Test
+	public void testNormalizesLineEndings() {
+		// browsers hash the text after the HTML parser turns CRLF and CR into LF
+		String expected = ContentHasher.hash(Algorithm.SHA256, "a\nb");
+		assertEquals(expected, ContentHasher.hash(Algorithm.SHA256, "a\r\nb"));
+		assertEquals(expected, ContentHasher.hash(Algorithm.SHA256, "a\rb"));
+		assertEquals("a\n\nb\n", ContentHasher.normalizeNewlines("a\r\rb\r\n"));
+		assertSame(SCRIPT, ContentHasher.normalizeNewlines(SCRIPT));
+
+		// encoded content agrees, as StaticAssetHasher hashes it
+		ByteBuffer bytes = ByteBuffer.wrap("<a\r\nb>".getBytes());
+		assertEquals(expected, ContentHasher.hashBytes(Algorithm.SHA256, 
+				ByteBuffer.wrap(ContentHasher.normalizeNewlines(bytes, 1, 5))));
+		assertNull(ContentHasher.normalizeNewlines(ByteBuffer.wrap("a\nb".getBytes()), 0, 3));
+	}
+
+	@Test
+	public void testAbandonedDigestIsReset() {
+		// e.g. a fault part way through reading a mapped file
+		ContentHasher.digest(Algorithm.SHA256).update(new byte[] { 1, 2, 3 });
+		assertEquals("47DEQpj8HBSa+/TImW+5JCeuQeRkm5NMpJWZG3hSuFU=", 
+				ContentHasher.hashBytes(Algorithm.SHA256, ByteBuffer.allocate(0)));
+	}
+
+	@Test
+	public void testCached() {
+		ContentHasher.setCacheSize(2);
+		BoundedCache<String, String> cache = ContentHasher.getCache(Algorithm.SHA256);
+		String first = ContentHasher.hash(Algorithm.SHA256, SCRIPT);
+		assertEquals(first, ContentHasher.hash(Algorithm.SHA256, new String(SCRIPT)));
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(0, ContentHasher.getCache(Algorithm.SHA512).size());
+	}
+
+	@Test
+	public void testConcurrentHashing() throws InterruptedException {
+		ContentHasher.setCacheSize(1);
+		final String expected = ContentHasher.hash(Algorithm.SHA256, SCRIPT);
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicInteger mismatches = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int id = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < 500; i++) {
+						ContentHasher.hash(Algorithm.SHA256, "var x = " + id + i + ";");
+						if (!expected.equals(ContentHasher.hash(Algorithm.SHA256, SCRIPT))) {
+							mismatches.incrementAndGet();
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, mismatches.get());
+	}
+
+	@Test
+	public void testNullContent() {
+		try {
+			ContentHasher.hash(Algorithm.SHA256, null);
+			fail("null content should be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static byte[] sha256(byte[] bytes) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(bytes);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
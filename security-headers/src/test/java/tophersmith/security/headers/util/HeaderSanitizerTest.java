@@ -0,0 +1,37 @@
+package tophersmith.security.headers.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HeaderSanitizerTest {
+
+	@Test
+	public void testCleanValueIsReturnedAsIs() {
+		String value = "default-src 'self'; script-src https://cdn.example.com";
+		assertTrue(HeaderSanitizer.isClean(value));
+		assertSame(value, HeaderSanitizer.sanitize(value));
+		String empty = new String("");
+		assertSame(empty, HeaderSanitizer.sanitize(empty));
+	}
+
+	@Test
+	public void testRemovesCarriageReturnsAndLineFeeds() {
+		assertFalse(HeaderSanitizer.isClean("a\nb"));
+		assertEquals("ab", HeaderSanitizer.sanitize("a\r\nb"));
+		assertEquals("abc", HeaderSanitizer.sanitize("\ra\nb\r\nc\n"));
+		assertEquals("", HeaderSanitizer.sanitize("\r\n\r\n"));
+		assertEquals("Set-Cookie: x=1", HeaderSanitizer.sanitize("Set-Cookie: x=1\n"));
+	}
+
+	@Test
+	public void testIndexOfIllegal() {
+		assertEquals(-1, HeaderSanitizer.indexOfIllegal("abc", 0));
+		assertEquals(1, HeaderSanitizer.indexOfIllegal(new StringBuilder("a\rb\n"), 0));
+		assertEquals(3, HeaderSanitizer.indexOfIllegal("a\rb\n", 2));
+		assertEquals(-1, HeaderSanitizer.indexOfIllegal("a\rb\n", 4));
+	}
+}
@@ -0,0 +1,73 @@
+package tophersmith.security.headers.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HostSourceTrieTest {
+
+	@Test
+	public void testWildcardCovers() {
+		HostSourceTrie trie = new HostSourceTrie();
+		assertTrue(trie.add("*.example.com"));
+		assertEquals("*.example.com", trie.findCovering("a.b.example.com"));
+		assertEquals("*.example.com", trie.findCovering("WWW.Example.COM"));
+		assertEquals("*.example.com", trie.findCovering("*.b.example.com"));
+		assertNull(trie.findCovering("example.com"));
+		assertNull(trie.findCovering("*.example.com"));
+		assertNull(trie.findCovering("a.example.org"));
+		assertNull(trie.findCovering("https://a.example.com"));
+	}
+
+	@Test
+	public void testPortsAndPaths() {
+		HostSourceTrie trie = new HostSourceTrie();
+		trie.add("https://*.example.com:*/static/");
+		trie.add("https://*.example.org/app.js");
+		assertEquals("https://*.example.com:*/static/", trie.findCovering("https://a.example.com:8443/static/x.js"));
+		assertNull(trie.findCovering("https://a.example.com/other/"));
+		assertNull(trie.findCovering("https://a.example.com"));
+		assertEquals("https://*.example.org/app.js", trie.findCovering("https://a.example.org/app.js"));
+		assertNull(trie.findCovering("https://a.example.org:8443/app.js"));
+	}
+
+	@Test
+	public void testLoneWildcardHost() {
+		HostSourceTrie trie = new HostSourceTrie();
+		trie.add("https://*");
+		assertEquals("https://*", trie.findCovering("https://example.com"));
+		assertEquals("https://*", trie.findCovering("https://*.example.com"));
+		assertNull(trie.findCovering("https://*"));
+		assertNull(trie.findCovering("http://example.com"));
+	}
+
+	@Test
+	public void testContains() {
+		HostSourceTrie trie = new HostSourceTrie();
+		assertFalse(trie.add("'self'"));
+		assertFalse(trie.add("https:"));
+		trie.add("Example.com");
+		trie.add("*.example.com");
+		assertEquals(2, trie.size());
+		assertTrue(trie.contains("example.COM"));
+		assertTrue(trie.contains("*.EXAMPLE.com"));
+		assertFalse(trie.contains("a.example.com"));
+		assertFalse(trie.contains("example.com:8080"));
+		assertFalse(trie.contains("com"));
+	}
+
+	@Test
+	public void testManyHosts() {
+		HostSourceTrie trie = new HostSourceTrie();
+		for (int i = 0; i < 5000; i++) {
+			trie.add("https://cdn" + i + ".partner" + (i % 50) + ".com");
+		}
+		trie.add("https://*.partner7.com");
+		assertEquals("https://*.partner7.com", trie.findCovering("https://cdn7.partner7.com"));
+		assertNull(trie.findCovering("https://cdn8.partner8.com"));
+		assertTrue(trie.contains("https://cdn8.partner8.com"));
+	}
+}
@@ -0,0 +1,82 @@
+package tophersmith.security.headers.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class HpackTest {
+
+	@Test
+	public void testIntegers() {
+		// RFC 7541 C.1
+		assertEquals("0a", integer(0, 5, 10));
+		assertEquals("1f9a0a", integer(0, 5, 1337));
+		assertEquals("2a", integer(0, 8, 42));
+		assertEquals("7f00", integer(0, 7, 127));
+		assertEquals("4f", integer(0x40, 6, 15));
+		assertEquals(3, Hpack.integerLength(1337, 5));
+		assertEquals(1, Hpack.integerLength(62, 6));
+		assertEquals(2, Hpack.integerLength(63, 6));
+	}
+
+	@Test
+	public void testHuffmanStrings() {
+		// RFC 7541 C.4 and C.6
+		assertEquals("8cf1e3c2e5f23a6ba0ab90f4ff", string("www.example.com"));
+		assertEquals("86a8eb10649cbf", string("no-cache"));
+		assertEquals("8825a849e95ba97d7f", string("custom-key"));
+		assertEquals("8925a849e95bb8e8b4bf", string("custom-value"));
+		assertEquals("826402", string("302"));
+		assertEquals("85aec3771a4b", string("private"));
+		assertEquals("96d07abe941054d444a8200595040b8166e082a62d1bff", string("Mon, 21 Oct 2013 20:13:21 GMT"));
+		assertEquals("919d29ad171863c78f0b97c8e9ae82ae43d3", string("https://www.example.com"));
+		assertEquals(18, Hpack.stringLength("https://www.example.com"));
+	}
+
+	@Test
+	public void testRawStrings() {
+		// Huffman is only used when it is shorter
+		assertEquals("0161", string("a"));
+		assertEquals("00", string(""));
+		assertEquals("013f", string("\u00e9"));
+		assertEquals(2, Hpack.stringLength("a"));
+	}
+
+	@Test
+	public void testParts() {
+		assertEquals(string("www.example.com"), string("www.", "exam", "", "ple.com"));
+		assertEquals(Hpack.huffmanLength("custom-key"), Hpack.huffmanLength("cus", "tom-key"));
+	}
+
+	@Test
+	public void testStaticNames() {
+		assertEquals(56, Hpack.staticNameIndex("strict-transport-security"));
+		assertEquals(2, Hpack.staticNameIndex(":method"));
+		assertEquals(0, Hpack.staticNameIndex("content-security-policy"));
+		assertEquals(0, Hpack.staticNameIndex("Strict-Transport-Security"));
+	}
+
+	private static String integer(int flags, int prefixBits, int value) {
+		ByteBuffer buffer = ByteBuffer.allocate(Hpack.integerLength(value, prefixBits));
+		Hpack.writeInteger(buffer, flags, prefixBits, value);
+		return hex(buffer);
+	}
+
+	private static String string(CharSequence... parts) {
+		ByteBuffer buffer = ByteBuffer.allocate(Hpack.stringLength(parts));
+		Hpack.writeString(buffer, parts);
+		return hex(buffer);
+	}
+
+	private static String hex(ByteBuffer buffer) {
+		assertEquals(0, buffer.remaining());
+		StringBuilder sb = new StringBuilder();
+		byte[] bytes = buffer.array();
+		for (int i = 0; i < bytes.length; i++) {
+			sb.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16)).append(Character.forDigit(bytes[i] & 0xf, 16));
+		}
+		return sb.toString();
+	}
+}
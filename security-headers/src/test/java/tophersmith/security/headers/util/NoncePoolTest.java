@@ -0,0 +1,88 @@
+package tophersmith.security.headers.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NoncePoolTest {
+
+	private NoncePool pool;
+
+	@Before
+	public void setUp() {
+		pool = new NoncePool(12, 60);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void testPoolIsFilled() {
+		assertEquals(64, pool.getCapacity());
+		assertEquals(64, pool.getDepth());
+		String nonce = pool.nextNonce();
+		assertEquals(16, nonce.length());
+		assertTrue(Validator.isBase64String(nonce));
+		assertEquals(1, pool.getHitCount());
+		assertEquals(0, pool.getMissCount());
+	}
+
+	@Test
+	public void testPoolRefills() throws InterruptedException {
+		for (int i = 0; i < 40; i++) {
+			pool.nextNonce();
+		}
+		for (int i = 0; i < 500 && pool.getDepth() < pool.getCapacity(); i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(pool.getCapacity(), pool.getDepth());
+	}
+
+	@Test
+	public void testDrainedPoolFallsBack() {
+		pool.shutdown();
+		Set<String> nonces = new HashSet<String>();
+		for (int i = 0; i < 100; i++) {
+			nonces.add(pool.nextNonce());
+		}
+		assertEquals(100, nonces.size());
+		assertEquals(64, pool.getHitCount());
+		assertEquals(36, pool.getMissCount());
+		assertEquals(0, pool.getDepth());
+	}
+
+	@Test
+	public void testNoncesAreUniqueAcrossThreads() throws InterruptedException {
+		final int threads = 8;
+		final int perThread = 500;
+		final Set<String> nonces = Collections.synchronizedSet(new HashSet<String>());
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < perThread; i++) {
+							nonces.add(pool.nextNonce());
+						}
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		done.await();
+		assertEquals(threads * perThread, nonces.size());
+		assertEquals(threads * perThread, pool.getHitCount() + pool.getMissCount());
+	}
+}
@@ -0,0 +1,204 @@
+package tophersmith.security.headers.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Test;
+
+import tophersmith.security.headers.util.SecureRandomConfiguration.Mode;
+
+public class SecureRandomUtilTest {
+
+	private static final int THREADS = 8;
+	private static final int VALUES_PER_THREAD = 500;
+
+	@After
+	public void tearDown() {
+		SecureRandomUtil.configure(new SecureRandomConfiguration());
+	}
+
+	private void assertUniqueAcrossThreads() throws InterruptedException {
+		final Set<String> values = Collections.synchronizedSet(new HashSet<String>());
+		final CountDownLatch done = new CountDownLatch(THREADS);
+		for (int t = 0; t < THREADS; t++) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < VALUES_PER_THREAD; i++) {
+							byte[] bytes = new byte[16];
+							SecureRandomUtil.nextBytes(bytes);
+							values.add(Arrays.toString(bytes));
+						}
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		done.await();
+		assertEquals(THREADS * VALUES_PER_THREAD, values.size());
+	}
+
+	@Test
+	public void testSharedMode() throws InterruptedException {
+		assertUniqueAcrossThreads();
+	}
+
+	@Test
+	public void testStripedMode() throws InterruptedException {
+		SecureRandomUtil.configure(new SecureRandomConfiguration().setMode(Mode.STRIPED).setStripes(4));
+		assertUniqueAcrossThreads();
+	}
+
+	@Test
+	public void testStripesKeepOwnState() {
+		SecureRandomUtil.configure(new SecureRandomConfiguration().setMode(Mode.STRIPED));
+		// the platform default is NativePRNG on Linux, whose instances share one locked pool
+		String algorithm = SecureRandomUtil.currentGenerator().getAlgorithm();
+		assertTrue(!algorithm.toUpperCase(Locale.ENGLISH).startsWith("NATIVEPRNG"));
+		assertEquals(isAvailable("DRBG") ? "DRBG" : "SHA1PRNG", algorithm);
+	}
+
+	@Test
+	public void testStripesRejectNativePrng() {
+		if (!isAvailable("NativePRNGNonBlocking")) {
+			return;
+		}
+		try {
+			SecureRandomUtil.configure(new SecureRandomConfiguration().setMode(Mode.STRIPED)
+					.setAlgorithm("NativePRNGNonBlocking"));
+			fail("NativePRNG instances share one generator");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		SecureRandomUtil.configure(new SecureRandomConfiguration().setAlgorithm("NativePRNGNonBlocking"));
+		assertEquals("NativePRNGNonBlocking", SecureRandomUtil.currentGenerator().getAlgorithm());
+	}
+
+	@Test
+	public void testThreadsUseSeparateStripes() throws InterruptedException {
+		SecureRandomUtil.configure(new SecureRandomConfiguration().setMode(Mode.STRIPED).setStripes(4));
+		final Set<SecureRandom> generators = 
+				Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<SecureRandom, Boolean>()));
+		final CountDownLatch done = new CountDownLatch(THREADS);
+		for (int t = 0; t < THREADS; t++) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						SecureRandom generator = SecureRandomUtil.currentGenerator();
+						if (generator == SecureRandomUtil.currentGenerator()) {
+							generators.add(generator);
+						}
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		done.await();
+		assertTrue(generators.size() > 1);
+		assertTrue(generators.size() <= 4);
+	}
+
+	@Test
+	public void testStripedReseed() throws InterruptedException {
+		SecureRandomUtil.configure(new SecureRandomConfiguration()
+				.setMode(Mode.STRIPED).setStripes(2).setReseedInterval(10));
+		SecureRandom original = SecureRandomUtil.currentGenerator();
+		byte[] bytes = new byte[16];
+		for (int i = 0; i < 25; i++) {
+			SecureRandomUtil.nextBytes(bytes);
+		}
+		for (int i = 0; i < 500 && SecureRandomUtil.getReseedCount() == 0; i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(SecureRandomUtil.getReseedCount() > 0);
+		assertNotSame(original, SecureRandomUtil.currentGenerator());
+	}
+
+	@Test
+	public void testBackgroundReseed() throws InterruptedException {
+		SecureRandomUtil.configure(new SecureRandomConfiguration().setReseedInterval(10));
+		byte[] bytes = new byte[16];
+		for (int i = 0; i < 25; i++) {
+			SecureRandomUtil.nextBytes(bytes);
+		}
+		for (int i = 0; i < 500 && SecureRandomUtil.getReseedCount() == 0; i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(SecureRandomUtil.getReseedCount() > 0);
+		assertUniqueAcrossThreads();
+	}
+
+	@Test
+	public void testAlgorithm() throws InterruptedException {
+		SecureRandomUtil.configure(new SecureRandomConfiguration().setAlgorithm("SHA1PRNG"));
+		assertUniqueAcrossThreads();
+		SecureRandomUtil.configure(new SecureRandomConfiguration()
+				.setMode(Mode.STRIPED).setAlgorithm("SHA1PRNG").setReseedInterval(100));
+		assertUniqueAcrossThreads();
+	}
+
+	@Test
+	public void testStripeCount() {
+		SecureRandomConfiguration config = new SecureRandomConfiguration().setStripes(5);
+		assertEquals(1, config.getStripes());
+		config.setMode(Mode.STRIPED);
+		assertEquals(8, config.getStripes());
+		config.setStripes(16);
+		assertEquals(16, config.getStripes());
+		assertTrue(new SecureRandomConfiguration().setMode(Mode.STRIPED).getStripes() >= 1);
+	}
+
+	@Test
+	public void testBadConfiguration() {
+		try {
+			new SecureRandomConfiguration().setStripes(0);
+			fail("0 stripes should not be allowed");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new SecureRandomConfiguration().setAlgorithm("NotARealAlgorithm");
+			fail("unknown algorithms should not be allowed");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new SecureRandomConfiguration().setReseedInterval(0);
+			fail("a reseed interval of 0 should not be allowed");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			SecureRandomUtil.configure(null);
+			fail("a configuration is required");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static boolean isAvailable(String algorithm) {
+		try {
+			SecureRandom.getInstance(algorithm);
+			return true;
+		} catch (NoSuchAlgorithmException e) {
+			return false;
+		}
+	}
+}
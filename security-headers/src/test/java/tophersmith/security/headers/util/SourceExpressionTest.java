@@ -0,0 +1,70 @@
+package tophersmith.security.headers.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SourceExpressionTest {
+
+	@Test
+	public void testHostParts() {
+		SourceExpression source = SourceExpression.parse("HTTPS://*.CDN.Example.com:8443/static/");
+		assertEquals(SourceKind.HOST, source.getKind());
+		assertEquals("https", source.getScheme());
+		assertEquals("*.cdn.example.com", source.getHost());
+		assertTrue(source.isWildcardHost());
+		assertEquals(3, source.getLabelCount());
+		assertEquals("com", source.getLabelFromEnd(0));
+		assertEquals("example", source.getLabelFromEnd(1));
+		assertEquals("cdn", source.getLabelFromEnd(2));
+		assertEquals(8443, source.getPort());
+		assertEquals("/static/", source.getPath());
+		assertEquals("HTTPS://*.CDN.Example.com:8443/static/", source.getText());
+		assertEquals("https://*.cdn.example.com/static/", source.withoutPort().getText());
+	}
+
+	@Test
+	public void testOtherKinds() {
+		assertSame(Validator.SRC_KEY_SELF, SourceExpression.parse("'SELF'").getKeyword());
+		assertEquals("data", SourceExpression.parse("data:").getScheme());
+		SourceExpression hash = SourceExpression.parse("'sha256-QUFB'");
+		assertEquals(SourceKind.HASH, hash.getKind());
+		assertEquals("sha256", hash.getHashAlgorithm());
+		assertEquals("QUFB", hash.getValue());
+		assertEquals("abc=", SourceExpression.parse("'nonce-abc='").getValue());
+		SourceExpression invalid = SourceExpression.parse("http://;");
+		assertEquals(SourceKind.INVALID, invalid.getKind());
+		assertNull(invalid.getHost());
+		assertEquals(0, invalid.getLabelCount());
+		assertEquals(0, SourceExpression.parse("*").getLabelCount());
+	}
+
+	@Test
+	public void testInterned() {
+		SourceExpression host = SourceExpression.parse("https://a.example.com");
+		assertNotSame(host, SourceExpression.parse("https://a.example.com"));
+		assertEquals(host, SourceExpression.parse("https://a.example.com"));
+		Validator.enableSourceCache(16);
+		try {
+			assertSame(SourceExpression.parse("https://a.example.com"), 
+					SourceExpression.parse(new String("https://a.example.com")));
+			SourceExpression nonce = SourceExpression.parse("'nonce-QUFB'");
+			assertNotSame(nonce, SourceExpression.parse("'nonce-QUFB'"));
+			assertEquals(nonce, SourceExpression.parse("'nonce-QUFB'"));
+			assertFalse(nonce.equals(SourceExpression.parse("'NONCE-QUFB'")));
+			assertEquals(1, Validator.getSourceCache().size());
+		} finally {
+			Validator.disableSourceCache();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNull() {
+		SourceExpression.parse(null);
+	}
+}
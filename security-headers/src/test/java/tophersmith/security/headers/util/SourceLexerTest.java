@@ -0,0 +1,84 @@
+package tophersmith.security.headers.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class SourceLexerTest {
+
+	@Test
+	public void testClassify() {
+		Object[][] cases = new Object[][]{
+			{"'self'", SourceKind.KEYWORD},
+			{"'NONE'", SourceKind.KEYWORD},
+			{"'unsafe-inline'", SourceKind.KEYWORD},
+			{" 'unsafe-eval' ", SourceKind.KEYWORD},
+			{"'unsafe-foobar'", SourceKind.INVALID},
+			{"https:", SourceKind.SCHEME},
+			{"chars+.-:", SourceKind.SCHEME},
+			{"*", SourceKind.HOST},
+			{"*:443", SourceKind.HOST},
+			{"foo.com:80", SourceKind.HOST},
+			{"https://*.foo.com:*/a/b.js", SourceKind.HOST},
+			{"HTTP://FOO.COM", SourceKind.HOST},
+			{"'nonce-QUFBQQ=='", SourceKind.NONCE},
+			{"'NONCE-abc-_'", SourceKind.NONCE},
+			{"'sha256-QUFB'", SourceKind.HASH},
+			{"'sha1-QUFB'", SourceKind.INVALID},
+			{"'nonce-'", SourceKind.INVALID},
+			{"'nonce-QUFB==='", SourceKind.INVALID},
+			{"'nonce-QU=FB'", SourceKind.INVALID},
+			{"http://", SourceKind.INVALID},
+			{"*.", SourceKind.INVALID},
+			{"foo..com", SourceKind.INVALID},
+			{"foo.com.", SourceKind.INVALID},
+			{"foo.com:", SourceKind.SCHEME},
+			{"foo_com:80", SourceKind.INVALID},
+			{"foo.com:65536", SourceKind.INVALID},
+			{"foo.com:99999999999", SourceKind.INVALID},
+			{"foo.com/a;b", SourceKind.INVALID},
+			{"foo.com?a", SourceKind.INVALID},
+			{"", SourceKind.INVALID},
+			{"   ", SourceKind.INVALID},
+			{null, SourceKind.INVALID},
+		};
+		for (Object[] c : cases) {
+			assertEquals(String.valueOf(c[0]), c[1], SourceLexer.classify((String) c[0]));
+		}
+	}
+
+	@Test
+	public void testHostComponents() {
+		String value = " https://*.foo.com:8443/bar ";
+		SourceComponents parts = new SourceComponents();
+		assertEquals(SourceKind.HOST, SourceLexer.lex(value, parts));
+		assertEquals("https", value.substring(parts.getStart(), parts.getSchemeEnd()));
+		assertEquals("*.foo.com", value.substring(parts.getHostStart(), parts.getHostEnd()));
+		assertEquals(8443, parts.getPort());
+		assertEquals("/bar", value.substring(parts.getPathStart(), parts.getEnd()));
+
+		assertEquals(SourceKind.HOST, SourceLexer.lex("foo.com:*", parts));
+		assertEquals(-1, parts.getSchemeEnd());
+		assertEquals(SourceComponents.PORT_WILDCARD, parts.getPort());
+		assertEquals(-1, parts.getPathStart());
+
+		assertEquals(SourceKind.INVALID, SourceLexer.lex("foo.com:x", parts));
+		assertEquals(-1, parts.getHostStart());
+	}
+
+	@Test
+	public void testQuotedComponents() {
+		SourceComponents parts = new SourceComponents();
+		String hash = "'SHA384-QUFB'";
+		assertEquals(SourceKind.HASH, SourceLexer.lex(hash, parts));
+		assertEquals("sha384", parts.getHashAlgorithm());
+		assertEquals("QUFB", hash.substring(parts.getValueStart(), parts.getValueEnd()));
+
+		assertEquals(SourceKind.KEYWORD, SourceLexer.lex("'Self'", parts));
+		assertSame(Validator.SRC_KEY_SELF, parts.getKeyword());
+		assertNull(parts.getHashAlgorithm());
+		assertNull(SourceLexer.keyword("self"));
+	}
+}
@@ -0,0 +1,82 @@
+package tophersmith.security.headers.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SourceListMinimizerTest {
+
+	private static List<SourceExpression> parse(String... values) {
+		List<SourceExpression> list = new ArrayList<SourceExpression>();
+		for (String value : values) {
+			list.add(SourceExpression.parse(value));
+		}
+		return list;
+	}
+
+	private static List<String> minimize(boolean hasOtherSources, String... values) {
+		List<SourceExpression> list = parse(values);
+		SourceListMinimizer.minimize(list, hasOtherSources);
+		List<String> texts = new ArrayList<String>();
+		for (SourceExpression source : list) {
+			texts.add(source.getText());
+		}
+		return texts;
+	}
+
+	@Test
+	public void testDuplicates() {
+		assertEquals(Arrays.asList("'self'", "http://foo.com"), 
+				minimize(false, "'self'", "http://foo.com", "'self'"));
+	}
+
+	@Test
+	public void testNone() {
+		assertEquals(Arrays.asList("'none'"), minimize(false, "'none'", "'none'"));
+		assertEquals(Arrays.asList("'self'"), minimize(false, "'none'", "'self'"));
+		assertEquals(Arrays.asList(), minimize(true, "'none'"));
+	}
+
+	@Test
+	public void testWildcard() {
+		assertEquals(Arrays.asList("*", "data:", "'self'", "ftp://foo.com"), 
+				minimize(false, "https://foo.com", "*", "data:", "'self'", "foo.com", "https:", "ftp://foo.com"));
+		assertEquals(Arrays.asList("*.foo.com", "https://*:8080"), 
+				minimize(false, "*.foo.com", "https://*:8080"));
+	}
+
+	@Test
+	public void testSchemeSubsumesHosts() {
+		assertEquals(Arrays.asList("HTTPS:", "foo.com", "http://bar.com"), 
+				minimize(false, "HTTPS:", "foo.com", "https://foo.com/path", "http://bar.com", "https://bar.com:8443"));
+	}
+
+	@Test
+	public void testDefaultPorts() {
+		assertEquals(Arrays.asList("https://foo.com/a", "wss://foo.com", "http://foo.com:80", "foo.com:443"), 
+				minimize(false, "https://foo.com:443/a", "wss://foo.com:443", "http://foo.com:80", "foo.com:443"));
+		assertEquals(Arrays.asList("https://foo.com"), minimize(false, "https://foo.com:443", "https://foo.com"));
+	}
+
+	@Test
+	public void testWildcardHosts() {
+		assertEquals(Arrays.asList("https://*.foo.com", "*.foo.com:*", "http://a.foo.com", "b.com"), 
+				minimize(false, "https://a.foo.com", "https://*.foo.com", "https://*.b.foo.com:443", 
+						"*.foo.com:*", "c.foo.com:8080", "http://a.foo.com", "b.com", "B.com"));
+	}
+
+	@Test
+	public void testUnchanged() {
+		List<SourceExpression> values = parse("'self'", "https://foo.com", "'unsafe-inline'");
+		assertFalse(SourceListMinimizer.minimize(values, false));
+		values.add(SourceExpression.parse("'self'"));
+		assertTrue(SourceListMinimizer.minimize(values, false));
+		assertEquals(3, values.size());
+	}
+}